@@ -1,18 +1,14 @@
 package winsome.client;
 
-import com.google.common.reflect.TypeToken;
 import com.google.gson.Gson;
 import winsome.client.mainFrame.MainFrame;
 import winsome.common.Console;
-import winsome.common.WinsomeTransaction;
 import winsome.server.requestHandler.WSRequest;
 import winsome.server.requestHandler.WSResponse;
 
 import javax.swing.*;
 import java.io.IOException;
-import java.lang.reflect.Type;
 import java.net.*;
-import java.util.LinkedList;
 
 public class MulticastClient extends Thread {
     private String address;
@@ -66,19 +62,20 @@ public class MulticastClient extends Thread {
                 Console.log(s);
 
                 if (s.equals("REWARD-CALCULATED")) {
-                    //richiesta al server per ricevere quanti coins ho
-                    serviceManager.submitRequest(new WSRequest(WSRequest.WS_OPERATIONS.GET_TRANSACTIONS));
+                    //richiesta al server per ricevere quanti coins ho e le transazioni successive all ultima che ho già.
+                    //Il cursore è la data dell ultima transazione più il numero di transazioni con quella data già
+                    //ricevute: le ricompense dello stesso millisecondo non vengono perse
+                    long since = Pages.PROFILE_PAGE.getLastTransactionTimestamp();
+                    int seen = Pages.PROFILE_PAGE.countTransactionsAt(since);
+                    serviceManager.submitRequest(new WSRequest(WSRequest.WS_OPERATIONS.GET_TRANSACTIONS, since, seen, 0));
                     WSResponse response = serviceManager.getResponse();
                     if (response.code() != WSResponse.CODES.OK) {
                         MainFrame.showErrorMessage(response.getBody());
                         return;
                     }
 
-                    Type type = new TypeToken<LinkedList<WinsomeTransaction>>() {
-                    }.getType();
-                    LinkedList<WinsomeTransaction> transactions = gson.fromJson(response.getBody(), type);
-                    Pages.PROFILE_PAGE.setTransactions(transactions);
-                    Pages.PROFILE_PAGE.setWinsomeCoins(transactions.getLast().getCoins());
+                    WrapperWallet wallet = gson.fromJson(response.getBody(), WrapperWallet.class);
+                    Pages.PROFILE_PAGE.addTransactions(wallet.TRANSACTIONS, wallet.BALANCE);
 
                     JOptionPane.showMessageDialog(null, "Hai ricevuto dei nuovi Winsome Coins!\n" +
                             "Vai nel tuo profilo e controlla le tue transizioni :)");
@@ -1,21 +1,17 @@
 package winsome.client.UI.banners;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-
 public class CommentBanner extends PostBanner {
     private final String id;
-    private final String date;
+    private final long timestamp;
 
-    private CommentBanner(String id, String author_name, String title, String content, String date, boolean deletable) {
-        super(id, author_name, title, content, date, deletable, false);
+    private CommentBanner(String id, String author_name, String title, String content, long timestamp, boolean deletable) {
+        super(id, author_name, title, content, timestamp, deletable, false);
         this.id = id;
-        this.date = date;
+        this.timestamp = timestamp;
     }
 
-    public CommentBanner(String id, String author, String content, String date) {
-        this(id, author, author, content, date, false);
+    public CommentBanner(String id, String author, String content, long timestamp) {
+        this(id, author, author, content, timestamp, false);
     }
 
     @Override
@@ -23,17 +19,7 @@ public class CommentBanner extends PostBanner {
         if (!(o instanceof CommentBanner c)) return 0;
         if (id.equals(c.getID())) return 0;
 
-        SimpleDateFormat format = new SimpleDateFormat("dd/MM/yy - HH:mm:ss");
-        try {
-            Date d1 = format.parse(this.date);
-            Date d2 = format.parse(c.getDate());
-            int compare = d1.compareTo(d2);
-
-            return compare == 0 ? 1 : compare;
-        } catch (ParseException e) {
-            e.printStackTrace();
-        }
-
-        return -1;
+        int compare = Long.compare(timestamp, c.getTimestamp());
+        return compare != 0 ? compare : id.compareTo(c.getID());
     }
 }
@@ -4,6 +4,7 @@ import winsome.client.UI.components.LinkLabel;
 import winsome.client.mainFrame.ACTIONS;
 import winsome.client.mainFrame.ActionPipe;
 import winsome.common.SimplePost;
+import winsome.common.WinsomeDate;
 
 import javax.swing.*;
 import javax.swing.border.Border;
@@ -20,14 +21,17 @@ public class PostBanner extends JPanel implements Comparable<PostBanner> {
     private LinkLabel retweet;
     private JTextArea placeholder;
     private JLabel info;
+    private JLabel counters; // like, dislike, commenti e rewin del post
     private JPanel optionPanel;
-    private String date;
+    private long timestamp;
+    private String date; // data già formattata per l interfaccia
     private SimplePost attached_post;
     private String rewin;
 
-    protected PostBanner(String id, String author_name, String title, String content, String date, boolean deletable, boolean mouseClick) {
+    protected PostBanner(String id, String author_name, String title, String content, long timestamp, boolean deletable, boolean mouseClick) {
         this.author = author_name;
-        this.date = date;
+        this.timestamp = timestamp;
+        this.date = WinsomeDate.format(timestamp);
         this.id = id;
 
         setLayout(new BorderLayout());
@@ -79,13 +83,28 @@ public class PostBanner extends JPanel implements Comparable<PostBanner> {
     }
 
     public PostBanner(SimplePost p) {
-        this(p.getId(), p.getAuthor(), p.getTitle(), p.getContent(), p.getDate(), false, true);
+        this(p.getId(), p.getAuthor(), p.getTitle(), p.getContent(), p.getTimestamp(), false, true);
         this.attached_post = p;
+        showCounters(p);
     }
 
     public PostBanner(SimplePost p, boolean deletable) {
-        this(p.getId(), p.getAuthor(), p.getTitle(), p.getContent(), p.getDate(), deletable, true);
+        this(p.getId(), p.getAuthor(), p.getTitle(), p.getContent(), p.getTimestamp(), deletable, true);
         this.attached_post = p;
+        showCounters(p);
+    }
+
+    // mostra i contatori del post accanto alle opzioni del banner
+    public void showCounters(SimplePost p) {
+        if (counters == null) {
+            counters = new JLabel();
+            counters.setFont(new Font("Arial", Font.PLAIN, 14));
+            counters.setForeground(Color.GRAY);
+            counters.setBorder(BorderFactory.createEmptyBorder(0, 0, 0, 7));
+            optionPanel.add(counters, 0);
+        }
+
+        counters.setText(String.format("%d like  %d dislike  %d commenti  %d rewin", p.getLikes(), p.getDislikes(), p.getComments(), p.getRewins()));
     }
 
     public void setDeletable() {
@@ -106,8 +125,8 @@ public class PostBanner extends JPanel implements Comparable<PostBanner> {
         return id;
     }
 
-    public String getDate() {
-        return date;
+    public long getTimestamp() {
+        return timestamp;
     }
 
     public String getRewin() {
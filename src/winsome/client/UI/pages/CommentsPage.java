@@ -18,6 +18,7 @@ public class CommentsPage extends JFrame {
     private TextInputField inputField;
     private PostPage parent;
     private TreeSet<CommentBanner> comments;
+    private volatile String nextCursor;
 
     public CommentsPage(PostPage parent) {
         this.parent = parent;
@@ -26,6 +27,9 @@ public class CommentsPage extends JFrame {
         setTitle("Commenti");
         JScrollPane scrollPane = HomePage.createScrollableBannerLayout(10);
         rootPanel = (HomePage.BannerLayout) scrollPane.getViewport().getView();
+        HomePage.setOnScrollEnd(scrollPane, () -> {
+            if (nextCursor != null) ActionPipe.performAction(ACTIONS.LOAD_NEXT_PAGE, this);
+        });
 
         inputField = new TextInputField("Inserisci commento..");
         BlueButton button = new BlueButton("Pubblica");
@@ -56,7 +60,7 @@ public class CommentsPage extends JFrame {
         if (set.isEmpty()) return;
 
         for (SimpleComment c : set) {
-            comments.add(new CommentBanner(c.getId(), c.getAuthor(), c.getContent(), c.getDate()));
+            comments.add(new CommentBanner(c.getId(), c.getAuthor(), c.getContent(), c.getTimestamp()));
         }
 
         rootPanel.removeAll();
@@ -64,6 +68,15 @@ public class CommentsPage extends JFrame {
             rootPanel.placeComponent(banner);
     }
 
+    // cursore della pagina successiva, null se non ci sono altre pagine (o se la pagina è già stata richiesta)
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
     public String getInputText() {
         return inputField.getText();
     }
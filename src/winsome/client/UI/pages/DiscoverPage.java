@@ -19,6 +19,7 @@ public class DiscoverPage extends JPanel {
     private GridBagConstraints gbc;
     private int offset;
     private LinkedHashSet<UserBanner> banners;
+    private volatile String nextCursor;
 
     public DiscoverPage(ArrayList<UserBanner> banners) {
         super(new BorderLayout());
@@ -53,6 +54,9 @@ public class DiscoverPage extends JPanel {
         JScrollPane scrollPane = new JScrollPane(panel);
         scrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED);
         scrollPane.getVerticalScrollBar().setUnitIncrement(15);
+        HomePage.setOnScrollEnd(scrollPane, () -> {
+            if (nextCursor != null) ActionPipe.performAction(ACTIONS.LOAD_NEXT_PAGE, this);
+        });
 
         add(topBarPanel, BorderLayout.NORTH);
         add(scrollPane, BorderLayout.CENTER);
@@ -120,6 +124,16 @@ public class DiscoverPage extends JPanel {
             panel.remove(banner);
 
         banners.clear();
+        nextCursor = null;
+    }
+
+    // cursore della pagina successiva, null se non ci sono altre pagine (o se la pagina è già stata richiesta)
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
     }
 
     private void placeFiller() {
@@ -1,5 +1,6 @@
 package winsome.client.UI.pages;
 
+import winsome.common.WinsomeDate;
 import winsome.common.WinsomeTransaction;
 
 import javax.swing.*;
@@ -15,7 +16,7 @@ public class HistoryWallet extends JFrame {
         JList<String> transactions = new JList<>(model);
 
         for (WinsomeTransaction transaction : list) {
-            model.addElement(String.format("%s > %s", transaction.getCoins(), transaction.getDate()));
+            model.addElement(String.format("%s > %s", transaction.getCoins(), WinsomeDate.format(transaction.getTimestamp())));
         }
 
         setTitle("Cronologia Incrementi");
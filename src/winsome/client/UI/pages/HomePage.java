@@ -8,6 +8,8 @@ import winsome.client.mainFrame.ActionPipe;
 import javax.imageio.ImageIO;
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.AdjustmentEvent;
+import java.awt.event.AdjustmentListener;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
@@ -21,6 +23,7 @@ public class HomePage extends JPanel {
     private final BannerLayout gridPanel;
     private JLabel tagLabel;
     private TreeSet<PostBanner> banners;
+    private volatile String nextCursor;
 
     public HomePage(ArrayList<String> tags) {
         super(new BorderLayout(), true);
@@ -30,6 +33,9 @@ public class HomePage extends JPanel {
         JScrollPane scrollPane = createScrollableBannerLayout(15);
         gridPanel = (BannerLayout) scrollPane.getViewport().getView();
         gridPanel.showBackground();
+        setOnScrollEnd(scrollPane, () -> {
+            if (nextCursor != null) ActionPipe.performAction(ACTIONS.LOAD_NEXT_PAGE, this);
+        });
 
         JPanel topBarPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
         topBarPanel.setPreferredSize(new Dimension(35, 35));
@@ -71,6 +77,24 @@ public class HomePage extends JPanel {
         return scrollPane;
     }
 
+    // esegue action quando la barra di scorrimento arriva in fondo (usato per caricare la pagina successiva).
+    // action viene eseguita solo nel momento in cui si arriva in fondo e non ad ogni movimento successivo
+    public static void setOnScrollEnd(JScrollPane scrollPane, Runnable action) {
+        JScrollBar bar = scrollPane.getVerticalScrollBar();
+        bar.addAdjustmentListener(new AdjustmentListener() {
+            private boolean atEnd = false;
+
+            @Override
+            public void adjustmentValueChanged(AdjustmentEvent e) {
+                boolean end = bar.getMaximum() > bar.getVisibleAmount()
+                        && bar.getValue() + bar.getVisibleAmount() >= bar.getMaximum() - 50;
+
+                if (end && !atEnd) action.run();
+                atEnd = end;
+            }
+        });
+    }
+
     public void setTags(ArrayList<String> tags) {
         StringBuilder base = new StringBuilder("<html><div style='text-align: center;'>");
         for (String tag : tags) {
@@ -124,10 +148,20 @@ public class HomePage extends JPanel {
         }
 
         banners.clear();
+        nextCursor = null;
         gridPanel.resetCounter();
         gridPanel.showBackground();
     }
 
+    // cursore della pagina successiva, null se non ci sono altre pagine (o se la pagina è già stata richiesta)
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
     public Set<PostBanner> getBanners() {
         return banners;
     }
@@ -23,6 +23,7 @@ public class PostPage extends JPanel {
     private CommentsPage commentsPage;
     private String id;
     private String author;
+    private String rewin; // utente che ha rewinnato il post, null se il post è stato aperto dal suo autore
 
     public PostPage(String id, String author, String title, String content) {
         super(new BorderLayout());
@@ -190,6 +191,18 @@ public class PostPage extends JPanel {
         commentsPage.addComment(postBanner);
     }
 
+    public void setNextCommentsCursor(String cursor) {
+        commentsPage.setNextCursor(cursor);
+    }
+
+    public String getRewin() {
+        return rewin;
+    }
+
+    public void setRewin(String rewin) {
+        this.rewin = rewin;
+    }
+
     public String getTitle() {
         return title;
     }
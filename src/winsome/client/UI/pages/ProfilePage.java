@@ -12,6 +12,7 @@ import winsome.common.WinsomeTransaction;
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import java.awt.*;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.function.Predicate;
@@ -29,6 +30,7 @@ public class ProfilePage extends JPanel {
     private LinkedList<WinsomeTransaction> transactions;
     private RandomORG randomORG;
     private float winsomeCoins = 0;
+    private volatile String nextCursor;
 
     public ProfilePage(String username) {
         super(new BorderLayout());
@@ -38,6 +40,9 @@ public class ProfilePage extends JPanel {
         JPanel topPanel = initTopPanel(username);
         JScrollPane bannerLayout = HomePage.createScrollableBannerLayout(10);
         postLayout = (HomePage.BannerLayout) bannerLayout.getViewport().getView();
+        HomePage.setOnScrollEnd(bannerLayout, () -> {
+            if (nextCursor != null) ActionPipe.performAction(ACTIONS.LOAD_NEXT_PAGE, this);
+        });
 
         JSplitPane splitPane = new JSplitPane(JSplitPane.VERTICAL_SPLIT);
         splitPane.setDividerLocation(516);
@@ -208,6 +213,15 @@ public class ProfilePage extends JPanel {
         usernameLabel.setText(username);
     }
 
+    // cursore della pagina successiva, null se non ci sono altre pagine (o se la pagina è già stata richiesta)
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
     public boolean containsPost() {
         return !banners.isEmpty();
     }
@@ -216,16 +230,44 @@ public class ProfilePage extends JPanel {
         winsomeCoinsLabel.setText(n + " WinsomeCoins");
     }
 
-    public void setTransactions(LinkedList<WinsomeTransaction> transactions) {
+    // il saldo arriva già calcolato dal server, quindi non dipende da quante transazioni sono state scaricate
+    public void setTransactions(LinkedList<WinsomeTransaction> transactions, String balance) {
         this.transactions = transactions;
+        setBalance(balance);
+    }
+
+    // aggiunge in coda le transazioni arrivate dopo l ultima scaricata
+    public void addTransactions(LinkedList<WinsomeTransaction> newTransactions, String balance) {
+        transactions.addAll(newTransactions);
+        setBalance(balance);
+    }
 
-        float n = 0;
-        for (WinsomeTransaction transaction : transactions) {
-            n += Float.parseFloat(transaction.getCoins());
+    // data dell ultima transazione scaricata (0 se non ce ne sono)
+    public long getLastTransactionTimestamp() {
+        if (transactions == null || transactions.isEmpty()) return 0;
+
+        return transactions.getLast().getTimestamp();
+    }
+
+    // numero di transazioni scaricate con data timestamp (sono in fondo alla lista, che è ordinata per data)
+    public int countTransactionsAt(long timestamp) {
+        if (transactions == null) return 0;
+
+        int count = 0;
+        Iterator<WinsomeTransaction> it = transactions.descendingIterator();
+        while (it.hasNext() && it.next().getTimestamp() == timestamp) count++;
+
+        return count;
+    }
+
+    private void setBalance(String balance) {
+        try {
+            this.winsomeCoins = Float.parseFloat(balance);
+        } catch (NumberFormatException | NullPointerException e) {
+            e.printStackTrace();
         }
 
-        this.winsomeCoins = n;
-        winsomeCoinsLabel.setText(n + " WinsomeCoins");
+        setWinsomeCoins(balance);
     }
 
     public void clear() {
@@ -234,11 +276,13 @@ public class ProfilePage extends JPanel {
         }
 
         banners.clear();
+        nextCursor = null;
         postLayout.resetCounter();
         setWinsomeCoins("0");
         bitcoinslabel.setText("0 Bitcoins");
         setUsername(null);
         transactions.clear();
+        winsomeCoins = 0;
         titleInput.clear();
         postContentInput.clear();
     }
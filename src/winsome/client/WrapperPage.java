@@ -0,0 +1,21 @@
+package winsome.client;
+
+import winsome.common.SimplePost;
+
+import java.util.List;
+
+/*
+    Classe d appoggio per la ricezione di una pagina di post (home e profilo) o di utenti (discover).
+    Il Server risponde con un JSON del tipo:
+    {
+        POSTS: [ post1, post2, ... ],       (oppure USERS: [ utente1, utente2, ... ])
+        CURSOR: "cursore"
+    }
+
+    CURSOR va rispedito così com è per ricevere la pagina successiva, se è null non ci sono altre pagine
+ */
+public class WrapperPage {
+    public List<SimplePost> POSTS;
+    public List<String> USERS;
+    public String CURSOR;
+}
@@ -2,8 +2,9 @@ package winsome.client;
 
 import com.google.gson.annotations.SerializedName;
 
+import winsome.common.SimpleComment;
+
 import java.util.List;
-import java.util.Map;
 
 /*
     Classe d appoggio per la ricezione di un Post singolo.
@@ -15,11 +16,12 @@ import java.util.Map;
         DISLIKES: 3
         COMMENTS: [
             {
-                autore1: "commento1",
+                id: "id1", author: "autore1", content: "commento1", timestamp: 1650000000000
             },{
-                autore2: "commento2"
+                id: "id2", author: "autore2", content: "commento2", timestamp: 1650000001000
             }
         ]
+        CURSOR: "cursore"   (cursore della pagina successiva di commenti, null se non ce ne sono altri)
 
         Quindi, per non usare una HashMap, è stata optata questa soluzione più elegante
  */
@@ -28,5 +30,6 @@ public class WrapperPost {
     public String CONTENT;
     public double LIKES;
     public double DISLIKES;
-    public List<Map<String, String>> COMMENTS;
+    public List<SimpleComment> COMMENTS;
+    public String CURSOR;
 }
@@ -0,0 +1,21 @@
+package winsome.client;
+
+import winsome.common.WinsomeTransaction;
+
+import java.util.LinkedList;
+
+/*
+    Classe d appoggio per la ricezione del portafoglio.
+    Il Server risponde con un JSON del tipo:
+    {
+        BALANCE: "saldo",
+        TRANSACTIONS: [ transazione1, transazione2, ... ]
+    }
+
+    Il saldo è calcolato dal database su tutte le transazioni, anche quelle che non sono state inviate,
+    mentre le transazioni sono ordinate dalla più vecchia alla più recente
+ */
+public class WrapperWallet {
+    public String BALANCE;
+    public LinkedList<WinsomeTransaction> TRANSACTIONS;
+}
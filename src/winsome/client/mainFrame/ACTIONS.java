@@ -19,6 +19,7 @@ public enum ACTIONS {
     VIEW_POST_ACTION,
     RETWEET_ACTION,
     SWITCH_PAGE,
+    LOAD_NEXT_PAGE,         //voglio caricare la pagina successiva (home, profilo, discover o commenti)
     NONE,                   //non fare niente
     GET_LATEST_COMMENTS, UPDATE_HOME, CLOSE_ACTION           //chiusura della ActionPipe
 
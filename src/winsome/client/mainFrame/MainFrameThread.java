@@ -24,8 +24,6 @@ import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.*;
 
 import static winsome.client.mainFrame.MainFrame.showErrorMessage;
@@ -36,6 +34,9 @@ import static winsome.client.mainFrame.MainFrame.showSuccessMessage;
     Qua vengono fatte la maggior parte delle richieste al Server (di cui molte in modo asincrono)
  */
 public class MainFrameThread extends Thread {
+    private static final int PAGE_SIZE = 20; // numero di elementi richiesti per ogni pagina (post, utenti, commenti)
+    private static final String FIRST_PAGE = "0"; // cursore della prima pagina
+    private static final int HISTORY_SIZE = 50; // numero di transazioni scaricate al login
     private final MainFrame frame; // riferimento al MainFrame per il cambio pagina
     private final Gson gson;
     private FollowersService followersService; // interfaccia per la registrazione al servizio di follow
@@ -59,7 +60,7 @@ public class MainFrameThread extends Thread {
         this.serviceManager = new ServiceManager(socket);
         serviceManager.start();
 
-        gson = new GsonBuilder().setDateFormat("dd/MM/yy - HH:mm:ss").create();
+        gson = new GsonBuilder().create();
 
         frame.addWindowListener(new WindowAdapter() {
             @Override
@@ -112,6 +113,7 @@ public class MainFrameThread extends Thread {
                 case VIEW_POST_ACTION -> performViewPost();
                 case GET_LATEST_COMMENTS -> performGetLatestComments();
                 case RETWEET_ACTION -> performRewin();
+                case LOAD_NEXT_PAGE -> performLoadNextPage();
                 case CLOSE_ACTION -> interrupt();
             }
         }
@@ -126,11 +128,11 @@ public class MainFrameThread extends Thread {
             CommentsPage commentsPage = (CommentsPage) ActionPipe.getParameter();
 
             String id = page.getId();
-            String date;
+            long date;
             try {
-                date = commentsPage.getComments().first().getDate();
+                date = commentsPage.getComments().first().getTimestamp();
             } catch (NoSuchElementException e) {
-                date = "0";
+                date = 0;
             }
 
             WSRequest request = new WSRequest(WSRequest.WS_OPERATIONS.GET_COMMENTS_FROM_DATE, id, date);
@@ -239,7 +241,7 @@ public class MainFrameThread extends Thread {
         String json = response.getBody();
         SimpleComment c = gson.fromJson(json, SimpleComment.class);
 
-        page.addComment(new CommentBanner(c.getId(), c.getAuthor(), c.getContent(), c.getDate()));
+        page.addComment(new CommentBanner(c.getId(), c.getAuthor(), c.getContent(), c.getTimestamp()));
     }
 
     // metodo per visualizzare un Post che sta nella home o nel profilo
@@ -254,7 +256,7 @@ public class MainFrameThread extends Thread {
         }
 
         String id = banner.getID();
-        WSRequest request = new WSRequest(WSRequest.WS_OPERATIONS.GET_POST, id);
+        WSRequest request = new WSRequest(WSRequest.WS_OPERATIONS.GET_POST, id, PAGE_SIZE, FIRST_PAGE);
         serviceManager.submitRequest(request);
         WSResponse response = serviceManager.getResponse();
 
@@ -271,9 +273,10 @@ public class MainFrameThread extends Thread {
         page.setLikes((int) post.LIKES);
         page.setDislikes((int) post.DISLIKES);
 
-        for (Map<String, String> c : post.COMMENTS) {
-            page.addComment(new CommentBanner(c.get("id"), c.get("author"), c.get("content"), c.get("date")));
+        for (SimpleComment c : post.COMMENTS) {
+            page.addComment(new CommentBanner(c.getId(), c.getAuthor(), c.getContent(), c.getTimestamp()));
         }
+        page.setNextCommentsCursor(post.CURSOR);
 
         frame.switchPage(page);
     }
@@ -283,7 +286,7 @@ public class MainFrameThread extends Thread {
     private void performOpenRewin(PostBanner banner) {
         String id = banner.getID();
         String author = banner.getRewin();
-        WSRequest request = new WSRequest(WSRequest.WS_OPERATIONS.OPEN_REWIN, author, id);
+        WSRequest request = new WSRequest(WSRequest.WS_OPERATIONS.OPEN_REWIN, author, id, PAGE_SIZE, FIRST_PAGE);
         serviceManager.submitRequest(request);
         WSResponse response = serviceManager.getResponse();
 
@@ -299,9 +302,11 @@ public class MainFrameThread extends Thread {
         PostPage page = Pages.newPostPage(id, banner.getAuthor(), post.TITLE, post.CONTENT);
         page.setLikes((int) post.LIKES);
         page.setDislikes((int) post.DISLIKES);
-        for (Map<String, String> c : post.COMMENTS) {
-            page.addComment(new CommentBanner(c.get("id"), c.get("author"), c.get("content"), c.get("date")));
+        page.setRewin(author);
+        for (SimpleComment c : post.COMMENTS) {
+            page.addComment(new CommentBanner(c.getId(), c.getAuthor(), c.getContent(), c.getTimestamp()));
         }
+        page.setNextCommentsCursor(post.CURSOR);
 
         frame.switchPage(page);
     }
@@ -506,7 +511,7 @@ public class MainFrameThread extends Thread {
     // la richiesta è ovviamente asincrona in quanto se gli utenti non vengono visualizzati (causa magari connessione lenta)
     // l utente deve essere comunque in grado di poter tornare nella home
     private void performDiscover() {
-        WSRequest request = new WSRequest(WSRequest.WS_OPERATIONS.GET_FRIENDS_BY_TAG);
+        WSRequest request = new WSRequest(WSRequest.WS_OPERATIONS.GET_FRIENDS_BY_TAG, PAGE_SIZE, FIRST_PAGE);
         serviceManager.submitRequest(request, response -> {
             if(!(frame.getCurrentPage() instanceof DiscoverPage)) return;
 
@@ -515,28 +520,111 @@ public class MainFrameThread extends Thread {
                 return;
             }
 
-            Type type = new TypeToken<ArrayList<String>>() {
-            }.getType();
-            ArrayList<String> friends = gson.fromJson(response.getBody(), type);
-            Console.log("Discover", friends);
+            WrapperPage page = gson.fromJson(response.getBody(), WrapperPage.class);
+            Console.log("Discover", page.USERS);
 
-            // Converto la lista di utenti in una lista di Banners
-            // A quel punto, la aggiungo alla DiscoverPage
-            ArrayList<UserBanner> banners = new ArrayList<>();
-            ArrayList<String> following = storage.getFollowing();
+            addDiscoverUsers(page.USERS);
+            Pages.DISCOVER_PAGE.setNextCursor(page.CURSOR);
+        });
 
-            for (String s : friends) {
-                UserBanner banner = new UserBanner(s);
-                if (following.contains(s))
-                    banner.setUnfollow();
+        frame.switchPage(Pages.DISCOVER_PAGE);
+    }
 
-                banners.add(banner);
-            }
+    // Converto la lista di utenti in una lista di Banners
+    // A quel punto, la aggiungo alla DiscoverPage
+    private void addDiscoverUsers(List<String> users) {
+        ArrayList<UserBanner> banners = new ArrayList<>();
+        ArrayList<String> following = storage.getFollowing();
 
-            Pages.DISCOVER_PAGE.addAll(banners);
-        });
+        for (String s : users) {
+            UserBanner banner = new UserBanner(s);
+            if (following.contains(s))
+                banner.setUnfollow();
 
-        frame.switchPage(Pages.DISCOVER_PAGE);
+            banners.add(banner);
+        }
+
+        Pages.DISCOVER_PAGE.addAll(banners);
+    }
+
+    // metodo per caricare la pagina successiva quando l utente arriva in fondo alla home, al profilo, alla discover
+    // o ai commenti di un post. La richiesta è asincrona e, finchè non arriva la risposta, il cursore della pagina
+    // viene messo a null così che scorrendo ancora la stessa pagina non venga richiesta più volte
+    private void performLoadNextPage() {
+        Object parameter = ActionPipe.getParameter();
+
+        if (parameter instanceof HomePage home) {
+            String cursor = home.getNextCursor();
+            if (cursor == null) return;
+
+            home.setNextCursor(null);
+            WSRequest request = new WSRequest(WSRequest.WS_OPERATIONS.GET_FRIENDS_POSTS, PAGE_SIZE, cursor);
+            serviceManager.submitRequest(request, response -> {
+                if (response.code() != WSResponse.CODES.OK) {
+                    showErrorMessage(response.getBody());
+                    return;
+                }
+
+                WrapperPage page = gson.fromJson(response.getBody(), WrapperPage.class);
+                addHomePosts(page.POSTS);
+                home.setNextCursor(page.CURSOR);
+            });
+        } else if (parameter instanceof ProfilePage profile) {
+            String cursor = profile.getNextCursor();
+            if (cursor == null) return;
+
+            profile.setNextCursor(null);
+            WSRequest request = new WSRequest(WSRequest.WS_OPERATIONS.GET_MY_POSTS, PAGE_SIZE, cursor);
+            serviceManager.submitRequest(request, response -> {
+                if (response.code() != WSResponse.CODES.OK) {
+                    showErrorMessage(response.getBody());
+                    return;
+                }
+
+                WrapperPage page = gson.fromJson(response.getBody(), WrapperPage.class);
+                addMyPosts(page.POSTS);
+                profile.setNextCursor(page.CURSOR);
+            });
+        } else if (parameter instanceof DiscoverPage discover) {
+            String cursor = discover.getNextCursor();
+            if (cursor == null) return;
+
+            discover.setNextCursor(null);
+            WSRequest request = new WSRequest(WSRequest.WS_OPERATIONS.GET_FRIENDS_BY_TAG, PAGE_SIZE, cursor);
+            serviceManager.submitRequest(request, response -> {
+                if (response.code() != WSResponse.CODES.OK) {
+                    showErrorMessage(response.getBody());
+                    return;
+                }
+
+                WrapperPage page = gson.fromJson(response.getBody(), WrapperPage.class);
+                addDiscoverUsers(page.USERS);
+                discover.setNextCursor(page.CURSOR);
+            });
+        } else if (parameter instanceof CommentsPage comments) {
+            String cursor = comments.getNextCursor();
+            if (cursor == null) return;
+
+            // se il post è stato aperto come rewin, i commenti vanno chiesti tramite il rewin
+            PostPage post = comments.getPost();
+            WSRequest request = post.getRewin() == null
+                    ? new WSRequest(WSRequest.WS_OPERATIONS.GET_POST, post.getId(), PAGE_SIZE, cursor)
+                    : new WSRequest(WSRequest.WS_OPERATIONS.OPEN_REWIN, post.getRewin(), post.getId(), PAGE_SIZE, cursor);
+
+            comments.setNextCursor(null);
+            serviceManager.submitRequest(request, response -> {
+                if (response.code() != WSResponse.CODES.OK) {
+                    showErrorMessage(response.getBody());
+                    return;
+                }
+
+                WrapperPost page = gson.fromJson(response.getBody(), WrapperPost.class);
+                for (SimpleComment c : page.COMMENTS) {
+                    comments.addComment(new CommentBanner(c.getId(), c.getAuthor(), c.getContent(), c.getTimestamp()));
+                }
+                comments.setNextCursor(page.CURSOR);
+            });
+        }
     }
 
     private void registerToFollowersService(String username) {
@@ -638,7 +726,8 @@ public class MainFrameThread extends Thread {
     }
 
     private void downloadTransactions() {
-        WSRequest transactionsRequest = new WSRequest(WSRequest.WS_OPERATIONS.GET_TRANSACTIONS);
+        // scarico solo le ultime transazioni, il saldo arriva comunque calcolato su tutto il portafoglio
+        WSRequest transactionsRequest = new WSRequest(WSRequest.WS_OPERATIONS.GET_TRANSACTIONS, 0, 0, HISTORY_SIZE);
         serviceManager.submitRequest(transactionsRequest);
         WSResponse response = serviceManager.getResponse();
         if (response.code() != WSResponse.CODES.OK) {
@@ -646,10 +735,8 @@ public class MainFrameThread extends Thread {
             return;
         }
 
-        Type type = new TypeToken<LinkedList<WinsomeTransaction>>() {
-        }.getType();
-        LinkedList<WinsomeTransaction> transactions = gson.fromJson(response.getBody(), type);
-        Pages.PROFILE_PAGE.setTransactions(transactions);
+        WrapperWallet wallet = gson.fromJson(response.getBody(), WrapperWallet.class);
+        Pages.PROFILE_PAGE.setTransactions(wallet.TRANSACTIONS, wallet.BALANCE);
     }
 
     // Metodo per settare i follow
@@ -676,58 +763,66 @@ public class MainFrameThread extends Thread {
 
     // metodi per il download dei post che vanno nella home e nel profilo
     // entrambe le richieste sono asincrone
+    // viene scaricata solo la prima pagina, le successive vengono richieste quando si scorre fino in fondo
     private void downloadPosts() {
-        WSRequest request = new WSRequest(WSRequest.WS_OPERATIONS.GET_FRIENDS_POSTS);
+        WSRequest request = new WSRequest(WSRequest.WS_OPERATIONS.GET_FRIENDS_POSTS, PAGE_SIZE, FIRST_PAGE);
         serviceManager.submitRequest(request, response -> {
-            Type type = new TypeToken<ArrayList<SimplePost>>() {
-            }.getType();
-            ArrayList<SimplePost> posts = gson.fromJson(response.getBody(), type);
+            WrapperPage page = gson.fromJson(response.getBody(), WrapperPage.class);
             HomePage home = Pages.HOME_PAGE;
             if (home.containsPosts())
                 home.clear();
 
-            Console.log("Post degli amici: " + posts);
-            for (SimplePost p : posts) {
-                PostBanner banner = new PostBanner(p);
-                banner.setRewinnable(true);
-                if (p.isRewinned()) {
-                    banner.setAsRewin(p.getRewin());
-                    banner.setRewinnable(false);
-                }
-
-                if (rewinnedPosts.contains(p.getId())) {
-                    banner.setRewinnable(false);
-                }
-
-                home.addPost(banner);
-            }
+            Console.log("Post degli amici: " + page.POSTS);
+            addHomePosts(page.POSTS);
+            home.setNextCursor(page.CURSOR);
         });
     }
 
     private void downloadMyPosts() {
-        WSRequest request = new WSRequest(WSRequest.WS_OPERATIONS.GET_MY_POSTS);
+        WSRequest request = new WSRequest(WSRequest.WS_OPERATIONS.GET_MY_POSTS, PAGE_SIZE, FIRST_PAGE);
         serviceManager.submitRequest(request, response -> {
-            Type type = new TypeToken<ArrayList<SimplePost>>() {
-            }.getType();
-            ArrayList<SimplePost> posts = gson.fromJson(response.getBody(), type);
-            ProfilePage profile = Pages.PROFILE_PAGE;
-
-            Console.log("Post miei ricevuti: " + posts);
-            for (SimplePost p : posts) {
-                PostBanner banner = new PostBanner(p);
-                if (p.isRewinned()) {
-                    banner.setAsRewin(storage.getCurrentUsername());
-                    rewinnedPosts.add(p.getId());
-                }
+            WrapperPage page = gson.fromJson(response.getBody(), WrapperPage.class);
 
-                banner.setDeletable();
-                profile.addPost(banner);
-            }
+            Console.log("Post miei ricevuti: " + page.POSTS);
+            addMyPosts(page.POSTS);
+            Pages.PROFILE_PAGE.setNextCursor(page.CURSOR);
         });
     }
 
+    private void addHomePosts(List<SimplePost> posts) {
+        HomePage home = Pages.HOME_PAGE;
+        for (SimplePost p : posts) {
+            PostBanner banner = new PostBanner(p);
+            banner.setRewinnable(true);
+            if (p.isRewinned()) {
+                banner.setAsRewin(p.getRewin());
+                banner.setRewinnable(false);
+            }
+
+            if (rewinnedPosts.contains(p.getId())) {
+                banner.setRewinnable(false);
+            }
+
+            home.addPost(banner);
+        }
+    }
+
+    private void addMyPosts(List<SimplePost> posts) {
+        ProfilePage profile = Pages.PROFILE_PAGE;
+        for (SimplePost p : posts) {
+            PostBanner banner = new PostBanner(p);
+            if (p.isRewinned()) {
+                banner.setAsRewin(storage.getCurrentUsername());
+                rewinnedPosts.add(p.getId());
+            }
+
+            banner.setDeletable();
+            profile.addPost(banner);
+        }
+    }
+
     private void downloadLatestPosts() {
-        HashMap<String, String> dateMap = getDateMap();
+        HashMap<String, Long> dateMap = getDateMap();
         if (dateMap == null) return;
 
         Console.log("DateMap: " + dateMap);
@@ -766,8 +861,8 @@ public class MainFrameThread extends Thread {
     // metodo per scaricare tutti i post di un utente
     // viene chiamato nel momento in cui comincio a seguire un nuovo utente
     private void downloadPostsOf(String username) {
-        HashMap<String, String> dateMap = new HashMap<>();
-        dateMap.put(username, "0");
+        HashMap<String, Long> dateMap = new HashMap<>();
+        dateMap.put(username, 0L);
 
         WSRequest request = new WSRequest(WSRequest.WS_OPERATIONS.GET_FRIENDS_POST_FROM_DATE, gson.toJson(dateMap));
 
@@ -807,12 +902,14 @@ public class MainFrameThread extends Thread {
     // di base, voglio tutti post di tutti gli utenti (per questo il primo for dove metto 0)
     // ciclo sui post nella home e aggiorno lo 0 con la data dell ultimo post ricevuto da quell utente specifico
     // future implementazioni, possono migliorare anche la ricezione dei rewin
-    private HashMap<String, String> getDateMap() {
+    // Se la home ha ancora pagine da scaricare, i follow senza post nella home non ricevono tutta la loro storia
+    // (quella arriva scorrendo la home), ma solo i post più recenti del post più vecchio già caricato
+    private HashMap<String, Long> getDateMap() {
         Set<PostBanner> banners = Pages.HOME_PAGE.getBanners();
-        HashMap<String, String> dateMap = new HashMap<>();
+        HashMap<String, Long> dateMap = new HashMap<>();
 
         for (String follow : storage.getFollowing()) {
-            dateMap.put(follow, "0");
+            dateMap.put(follow, 0L);
         }
 
         if (banners.isEmpty() && storage.getFollowing().isEmpty())
@@ -822,26 +919,19 @@ public class MainFrameThread extends Thread {
             return dateMap;
         }
 
-        SimpleDateFormat sdf = new SimpleDateFormat("dd/MM/yy - HH:mm:ss");
-
+        long oldest = Long.MAX_VALUE;
         for (PostBanner p : banners) {
             if (p.isRewin()) continue;
 
-            String previousDate = dateMap.get(p.getAuthor());
-            if (previousDate.equals("0")) {
-                dateMap.put(p.getAuthor(), p.getDate());
-                continue;
-            }
+            oldest = Math.min(oldest, p.getTimestamp());
+            dateMap.computeIfPresent(p.getAuthor(), (author, previous) -> Math.max(previous, p.getTimestamp()));
+        }
 
-            try {
-                Date d1 = sdf.parse(p.getDate());
-                Date d2 = sdf.parse(previousDate);
-                if (d2.before(d1))
-                    dateMap.put(p.getAuthor(), p.getDate());
-            } catch (ParseException e) {
-                e.printStackTrace();
+        if (oldest != Long.MAX_VALUE && Pages.HOME_PAGE.getNextCursor() != null) {
+            for (Map.Entry<String, Long> entry : dateMap.entrySet()) {
+                if (entry.getValue() == 0)
+                    entry.setValue(oldest);
             }
-
         }
 
         return dateMap;
@@ -1,9 +1,6 @@
 package winsome.common;
 
 import java.io.Serializable;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
 /*
     Versione ridotta della classe Comment del DB
  */
@@ -11,13 +8,13 @@ public class SimpleComment implements Comparable<SimpleComment>, Serializable {
     private final String id;
     private final String author;
     private final String content;
-    private final String date;
+    private final long timestamp; // data del commento in millisecondi
 
-    public SimpleComment(String id, String author, String content, String date) {
+    public SimpleComment(String id, String author, String content, long timestamp) {
         this.id = id;
         this.author = author;
         this.content = content;
-        this.date = date;
+        this.timestamp = timestamp;
     }
 
     public String getAuthor() {
@@ -28,8 +25,8 @@ public class SimpleComment implements Comparable<SimpleComment>, Serializable {
         return content;
     }
 
-    public String getDate() {
-        return date;
+    public long getTimestamp() {
+        return timestamp;
     }
 
     public String getId() {
@@ -38,16 +35,9 @@ public class SimpleComment implements Comparable<SimpleComment>, Serializable {
 
     @Override
     public int compareTo(SimpleComment o) {
-        SimpleDateFormat sdf = new SimpleDateFormat("dd/MM/yy - HH:mm:ss");
-        try {
-            Date d1 = sdf.parse(date);
-            Date d2 = sdf.parse(o.getDate());
+        int compare = Long.compare(timestamp, o.timestamp);
 
-            return d1.compareTo(d2);
-        } catch (ParseException e) {
-            e.printStackTrace();
-        }
-
-        return -1;
+        // 2 commenti scritti nello stesso istante sono comunque diversi
+        return compare != 0 ? compare : id.compareTo(o.id);
     }
 }
@@ -1,9 +1,6 @@
 package winsome.common;
 
 import java.io.Serializable;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
 import java.util.Objects;
 
 /*
@@ -14,15 +11,20 @@ public class SimplePost implements Comparable<SimplePost>, Serializable {
     private String author;
     private String title;
     private String content;
-    private String date;
+    private long timestamp; // data di pubblicazione in millisecondi
     private String rewin;
+    // contatori del post al momento della richiesta
+    private int likes;
+    private int dislikes;
+    private int comments;
+    private int rewins;
 
-    public SimplePost(String id, String author, String title, String content, String date) {
+    public SimplePost(String id, String author, String title, String content, long timestamp) {
         this.id = id;
         this.author = author;
         this.title = title;
         this.content = content;
-        this.date = date;
+        this.timestamp = timestamp;
         this.rewin = null;
 
         int CONTENT_MAX_LENGHT = 100;
@@ -47,8 +49,31 @@ public class SimplePost implements Comparable<SimplePost>, Serializable {
         return content;
     }
 
-    public String getDate() {
-        return date;
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setCounters(int likes, int dislikes, int comments, int rewins) {
+        this.likes = likes;
+        this.dislikes = dislikes;
+        this.comments = comments;
+        this.rewins = rewins;
+    }
+
+    public int getLikes() {
+        return likes;
+    }
+
+    public int getDislikes() {
+        return dislikes;
+    }
+
+    public int getComments() {
+        return comments;
+    }
+
+    public int getRewins() {
+        return rewins;
     }
 
     public String getRewin() {
@@ -73,23 +98,22 @@ public class SimplePost implements Comparable<SimplePost>, Serializable {
 
     @Override
     public int hashCode() {
-        return Objects.hash(id, title, content, date, rewin);
+        return Objects.hash(id, title, content, timestamp, rewin);
     }
 
     @Override
     public int compareTo(SimplePost o) {
-        SimpleDateFormat format = new SimpleDateFormat("dd/MM/yy - HH:mm:ss");
-        try {
-            Date d1 = format.parse(date);
-            Date d2 = format.parse(o.getDate());
-            int compare = d1.compareTo(d2);
-
-            return compare == 0 ? 1 : compare;
-        } catch (ParseException e) {
-            e.printStackTrace();
-        }
+        int compare = Long.compare(timestamp, o.timestamp);
+        if (compare != 0) return compare;
+
+        // a parità di data (ad esempio lo stesso post rewinnato da più utenti) ordino per id e poi per rewin
+        compare = id.compareTo(o.id);
+        if (compare != 0) return compare;
 
-        return -1;
+        if (Objects.equals(rewin, o.rewin)) return 0;
+        if (rewin == null) return -1;
+        if (o.rewin == null) return 1;
+        return rewin.compareTo(o.rewin);
     }
 
     @Override
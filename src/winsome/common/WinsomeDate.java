@@ -0,0 +1,32 @@
+package winsome.common;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/*
+    Le date (post, commenti, transazioni) viaggiano e vengono salvate come millisecondi dal 1/1/1970 (long):
+    ordinamenti e confronti sono semplici confronti tra long.
+    Le date vengono convertite in stringa solo per essere mostrate nell interfaccia (format) e la stringa viene
+    riconvertita solo per leggere i file salvati con il vecchio formato "dd/MM/yy - HH:mm:ss" (parseLegacy)
+ */
+public class WinsomeDate {
+    public static final String FORMAT = "dd/MM/yy - HH:mm:ss";
+    private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern(FORMAT);
+
+    public static String format(long timestamp) {
+        return formatter.format(Instant.ofEpochMilli(timestamp).atZone(ZoneId.systemDefault()));
+    }
+
+    // converte una data nel vecchio formato in millisecondi. Restituisce 0 se la data non è valida
+    public static long parseLegacy(String date) {
+        try {
+            return LocalDateTime.parse(date, formatter).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (DateTimeParseException | NullPointerException e) {
+            e.printStackTrace();
+            return 0;
+        }
+    }
+}
@@ -1,9 +1,6 @@
 package winsome.common;
 
 import java.io.Serializable;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
 
 /*
     Classe che rappresenta una transazione.
@@ -12,33 +9,31 @@ import java.util.Date;
  */
 public class WinsomeTransaction implements Comparable<WinsomeTransaction>, Serializable {
     private String coins; // viene usato il tipo string perchè più facile da gestire con i socket
-    private String date;
+    private long timestamp; // data della transazione in millisecondi
+    private String date; // data nel vecchio formato, presente solo nelle transazioni lette da file salvati prima dei timestamp
 
-    public WinsomeTransaction(String coins, String date) {
+    public WinsomeTransaction(String coins, long timestamp) {
         this.coins = coins;
-        this.date = date;
+        this.timestamp = timestamp;
     }
 
     public String getCoins() {
         return coins;
     }
 
-    public String getDate() {
-        return date;
+    // le transazioni caricate con Gson da un file vecchio hanno solo la data in formato stringa:
+    // viene convertita una sola volta e al salvataggio successivo la transazione viene scritta con il timestamp
+    public long getTimestamp() {
+        if (timestamp == 0 && date != null) {
+            timestamp = WinsomeDate.parseLegacy(date);
+            date = null;
+        }
+
+        return timestamp;
     }
 
     @Override
     public int compareTo(WinsomeTransaction o) {
-        SimpleDateFormat sdf = new SimpleDateFormat("dd/MM/yy - HH:mm:ss");
-        try {
-            Date d1 = sdf.parse(date);
-            Date d2 = sdf.parse(o.getDate());
-
-            return d1.compareTo(d2);
-        } catch (ParseException e) {
-            e.printStackTrace();
-        }
-
-        return -1;
+        return Long.compare(getTimestamp(), o.getTimestamp());
     }
 }
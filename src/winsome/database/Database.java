@@ -5,60 +5,88 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.stream.JsonReader;
 import winsome.common.SimpleComment;
-import winsome.database.graph.GraphSaver;
+import winsome.common.SimplePost;
 import winsome.database.graph.WinsomeGraph;
 import winsome.database.graph.graphNodes.GraphNode;
 import winsome.database.graph.graphNodes.GroupNode;
 import winsome.database.graph.graphNodes.Node;
+import winsome.database.log.*;
 import winsome.database.tables.Comment;
 import winsome.database.tables.Like;
 import winsome.database.tables.Post;
+import winsome.database.tables.TableStore;
 import winsome.database.tables.User;
-import winsome.database.utility.EntriesStorage;
-import winsome.database.utility.PriorityAsyncSaver;
-import winsome.utility.StandardPriority;
+import winsome.database.utility.*;
 
 import java.io.*;
 import java.lang.reflect.Type;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 public class Database implements WinsomeDatabase, Closeable {
+    public static final int PAGE_SIZE = 20; // dimensione di default di una pagina (home, profilo, commenti, discover)
+    public static final int MAX_PAGE_SIZE = 100; // dimensione massima di una pagina
+    private static final int FOLLOW_LOCKS = 64; // numero di lock per follow e unfollow (potenza di 2)
     private WinsomeGraph graph; // grafo
-    private GraphSaver graphSaver; // oggetto adibito al salvataggio del grafo
+    private WriteAheadLog log; // write-ahead log: ogni modifica al grafo viene scritta qui (vedi LogLoader per il riavvio)
     private ConcurrentHashMap<String, User> tableUsers; // tabella degli utenti
     private ConcurrentHashMap<UUID, Post> tablePosts; // tabella dei post
+    private TableStore store; // salvataggio incrementale delle tabelle: ogni modifica ad una riga va segnalata qui
     private EntriesStorage entries; // oggetto adibito al tracciamento degli oggetti (like, commenti ecc) su cui calcolare le ricompense
+    private TagIndex tagIndex; // indice tag -> utenti, usato per il discover
+    private final Object[] followLocks; // lock (a strisce) per follow, unfollow e rewin, vedi followLockOf()
+    private int homeSize; // numero di post di una home materializzata. Se 0, la home viene costruita ad ogni richiesta
     private Gson gson;
-    private PriorityAsyncSaver saver; // executor asincrono. Viene utilizzao to principalmente con GraphSaver
+    private PriorityAsyncSaver saver; // executor asincrono. Salva periodicamente le tabelle
+    private LogCompactor compactor; // compattazione del log in background, null se disattivata
 
     public Database() {
-        gson = new GsonBuilder().setPrettyPrinting().setDateFormat(getDateFormat().toString()).create();
+        gson = new GsonBuilder().setPrettyPrinting().create();
         this.entries = new EntriesStorage(this);
+        this.tagIndex = new TagIndex();
+        this.followLocks = new Object[FOLLOW_LOCKS];
+        for (int i = 0; i < FOLLOW_LOCKS; i++) {
+            followLocks[i] = new Object();
+        }
 
+        // tempi delle fasi del caricamento, stampati alla fine (vedi anche LogLoader.report())
+        long t1 = System.currentTimeMillis();
         try {
             loadTables();
         } catch (IOException e) {
             e.printStackTrace();
         }
+        long t2 = System.currentTimeMillis();
 
-        try {
-            Objects.requireNonNull(tableUsers);
-            Objects.requireNonNull(tablePosts);
-        } catch (NullPointerException e) {
-            tableUsers = new ConcurrentHashMap<>();
-            tablePosts = new ConcurrentHashMap<>();
+        File dbFolder = new File(getName());
+        if (!dbFolder.exists() && !dbFolder.mkdir()) {
+            System.err.println("Errore nella creazione della cartella del database");
+            System.exit(-1);
         }
 
-        graph = new WinsomeGraph(this);
-        graphSaver = new GraphSaver();
-    }
+        graph = new WinsomeGraph();
+        try {
+            log = new WriteAheadLog(getName() + File.separator + "wal");
 
-    public static DatabaseDate getDateFormat() {
-        return new DatabaseDate();
+            // primo avvio dopo il passaggio al log: i file del vecchio formato vengono convertiti una volta sola
+            if (log.isEmpty() && LegacyImporter.hasLegacyData()) {
+                int records = new LegacyImporter(this, log).importAll();
+                System.out.println("Convertiti " + records + " record del vecchio formato nel log");
+            }
+            long t3 = System.currentTimeMillis();
+
+            LogLoader loader = new LogLoader(this, graph);
+            loader.load(log);
+            long t4 = System.currentTimeMillis();
+
+            System.out.println("Caricamento: tabelle " + (t2 - t1) + " ms | conversione " + (t3 - t2) + " ms | "
+                    + loader.report() + " | totale " + (t4 - t1) + " ms");
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.err.println("Impossibile leggere il log del database");
+            System.exit(-1);
+        }
     }
 
     public static String getName() {
@@ -78,6 +106,35 @@ public class Database implements WinsomeDatabase, Closeable {
         System.out.println("Saver Avviato");
     }
 
+    // da qui in poi il log viene scritto a gruppi, con la politica di fsync passata (vedi WriteAheadLog)
+    public void startGroupCommit(FsyncPolicy policy) {
+        log.startGroupCommit(policy);
+    }
+
+    // avvia la compattazione del log in background, che legge e scrive al più budget byte al secondo (vedi LogCompactor)
+    public void startCompaction(long budget) {
+        if (budget <= 0 || compactor != null) return;
+
+        compactor = new LogCompactor(log, budget);
+        compactor.start();
+    }
+
+    public LogMetrics getLogMetrics() {
+        return log.getMetrics();
+    }
+
+    // usato solo dalla migrazione del vecchio formato (vedi MigrationMain)
+    WriteAheadLog getLog() {
+        return log;
+    }
+
+    // attiva le home materializzate: ogni home contiene al più size post e viene aggiornata ad ogni
+    // nuovo post, rewin, follow e unfollow (fan-out on write). Se non viene chiamato, la home viene costruita
+    // ad ogni richiesta a partire dai post dei follow (fan-out on read)
+    public void enableHomeTimelines(int size) {
+        this.homeSize = Math.max(size, 0);
+    }
+
     // metodo per creare un nodo utente nel grafo e attaccarci i tag passati come parametro.
     // i tag vengono controllati sul Server
     @Override
@@ -91,7 +148,10 @@ public class Database implements WinsomeDatabase, Closeable {
         }
 
         User u = new User(username, password, tagsCopy);
+        // il record viene scritto prima che l utente diventi visibile, così nel log viene prima di ogni record che lo riguarda
+        log.logUser(u);
         tableUsers.put(username, u);
+        store.userChanged(u);
 
         GraphNode<String> node = new GraphNode<>(username);
 
@@ -109,9 +169,10 @@ public class Database implements WinsomeDatabase, Closeable {
             graph.putEdge(tagsGroup, tagNode);
         }
 
+        tagIndex.add(username, tagsCopy);
+
         u.setPostsGroupNode(postsGroup);
         u.setTagsGroupNode(tagsGroup);
-        graphSaver.saveUser(username);  // viene creato il file sul disco. Essendo un operazione semplice, questo viene fatto subito
 
         return "200";
     }
@@ -147,21 +208,30 @@ public class Database implements WinsomeDatabase, Closeable {
         }
     }
 
-    // metodo che restituisce gli utenti che hanno in comune al più un tag con l'utente passato come parametro.
-    // Per ogni tag dell'utente, vengono presi i nodi vicini
+    // metodo che restituisce gli utenti che hanno in comune almeno un tag con l'utente passato come parametro.
+    // Gli utenti vengono presi dall indice dei tag e sono ordinati per numero di tag in comune.
+    // Il cursore è la posizione nella classifica dell ultimo utente restituito (tag in comune, id nell indice)
     @Override
-    public Set<Node> getUsersByTag(String username) {
+    public Page<String> getUsersByTag(String username, int limit, String cursor) {
         try {
             User u = Objects.requireNonNull(tableUsers.get(username));
-            HashSet<Node> result = new HashSet<>();
+            limit = pageLimit(limit);
+
+            String[] parts = Page.decodeCursor(cursor, 2);
+            int shared = parts == null ? Integer.MAX_VALUE : Integer.parseInt(parts[0]);
+            int after = parts == null ? -1 : Integer.parseInt(parts[1]);
+            if (shared < 1 || after < -1) throw new IllegalArgumentException("Cursore non valido: " + cursor);
+
+            List<TagIndex.Match> matches = tagIndex.rankedUsers(username, new LinkedHashSet<>(u.getTags()), shared, after, limit + 1);
+            Page<TagIndex.Match> page = Page.of(matches, limit,
+                    m -> Page.encodeCursor(String.valueOf(m.shared()), String.valueOf(m.id())));
 
-            for (String tag : u.getTags()) {
-                GraphNode<String> tagNode = new GraphNode<>(tag);
-                Set<Node> set = graph.adjacentNodes(tagNode);
-                result.addAll(set);
+            ArrayList<String> users = new ArrayList<>(page.getItems().size());
+            for (TagIndex.Match m : page.getItems()) {
+                users.add(m.username());
             }
 
-            return Collections.unmodifiableSet(result);
+            return new Page<>(users, page.getCursor());
         } catch (NullPointerException e) {
             return null;
         }
@@ -172,7 +242,7 @@ public class Database implements WinsomeDatabase, Closeable {
         try {
             User u = Objects.requireNonNull(tableUsers.get(username));
 
-            return Collections.unmodifiableSet(u.getFollowers());
+            return u.getFollowers();
         } catch (NullPointerException e) {
             return null;
         }
@@ -182,7 +252,7 @@ public class Database implements WinsomeDatabase, Closeable {
     public Set<String> getFollowingOf(String username) {
         try {
             User u = Objects.requireNonNull(tableUsers.get(username));
-            return Collections.unmodifiableSet(u.getFollowing());
+            return u.getFollowing();
         } catch (NullPointerException e) {
             return null;
         }
@@ -194,8 +264,28 @@ public class Database implements WinsomeDatabase, Closeable {
             User user1 = Objects.requireNonNull(tableUsers.get(u1));
             User user2 = Objects.requireNonNull(tableUsers.get(u2));
 
-            boolean b1 = user1.addFollow(u2);
-            boolean b2 = user2.addFollowers(u1);
+            // il lock di user1 rende follow e unfollow della stessa coppia atomici:
+            // i 2 insiemi (following di user1 e followers di user2) non possono restare disallineati.
+            // Anche la home viene aggiornata con il lock preso, altrimenti un unfollow concorrente potrebbe
+            // togliere i post di user2 prima che vengano aggiunti.
+            // Il record va nel log prima che il follow sia visibile (fanOut, checkValidity): solo chi tiene il lock
+            // di user1 cambia i suoi following, quindi tra il controllo e il record nessuno può aggiungere lo stesso follow
+            boolean b1, b2;
+            synchronized (followLockOf(u1)) {
+                if (user1.getFollowing().contains(user2.getUsername())) return "202";
+                log.logFollow(u1, u2);
+
+                b1 = user1.addFollow(user2.getUsername());
+                b2 = user2.addFollowers(user1.getUsername());
+
+                HomeTimeline home = user1.getHome();
+                if (b1 && home != null) {
+                    home.addNewest(timelinePage(user2, null, homeSize), homeSize);
+                }
+            }
+            if (b1) store.userChanged(user1);
+            if (b2) store.userChanged(user2);
+
             return b1 && b2 ? "200" : "202"; // 200 = successo, 202 = utente già seguito
         } catch (NullPointerException ignored) {
         }
@@ -209,8 +299,22 @@ public class Database implements WinsomeDatabase, Closeable {
             User user1 = Objects.requireNonNull(tableUsers.get(u1));
             User user2 = Objects.requireNonNull(tableUsers.get(u2));
 
-            boolean b1 = user1.removeFollow(u2);
-            boolean b2 = user2.removeFollowers(u1);
+            boolean b1, b2;
+            synchronized (followLockOf(u1)) {
+                if (!user1.getFollowing().contains(u2)) return "202";
+                log.logUnfollow(u1, u2);
+
+                b1 = user1.removeFollow(u2);
+                b2 = user2.removeFollowers(u1);
+
+                HomeTimeline home = user1.getHome();
+                if (home != null) {
+                    home.removeFollow(u2);
+                }
+            }
+            if (b1) store.userChanged(user1);
+            if (b2) store.userChanged(user2);
+
             return b1 && b2 ? "200" : "202";
         } catch (NullPointerException ignored) {
         }
@@ -218,6 +322,13 @@ public class Database implements WinsomeDatabase, Closeable {
         return "207";
     }
 
+    // lock usato per follow, unfollow e rewin di username: le operazioni dello stesso utente sono serializzate,
+    // mentre quelle di utenti diversi (quasi sempre) procedono in parallelo
+    private Object followLockOf(String username) {
+        int h = username.hashCode();
+        return followLocks[(h ^ (h >>> 16)) & (FOLLOW_LOCKS - 1)];
+    }
+
     // metodo che aggiunge un nodo Post al grafo.
     // Il post viene aggiunto anche nella tabella dei post e gli viene appeso un commentsGroupNode e un likesGroupNode
     @Override
@@ -227,7 +338,10 @@ public class Database implements WinsomeDatabase, Closeable {
             GroupNode postsGroup = u.getPostsGroupNode();
 
             Post p = new Post(author, title, content);
+            // come per gli utenti, il post va nel log prima di essere visibile (e quindi commentabile)
+            log.logPost(p);
             tablePosts.put(p.getId(), p);
+            store.postChanged(p);
 
             GraphNode<UUID> postNode = new GraphNode<>(p.getId());
             graph.putEdge(postsGroup, postNode);
@@ -241,11 +355,14 @@ public class Database implements WinsomeDatabase, Closeable {
             graph.putEdge(postNode, comments);
             graph.putEdge(postNode, likes);
 
+            p.setPostNode(postNode);
             p.setCommentsGroupNode(comments);
             p.setLikesGroupNode(likes);
 
-            if (saver != null)
-                saver.asyncSave(() -> graphSaver.savePost(p), StandardPriority.VERY_HIGH);
+            long time = p.getTimestamp();
+            u.getTimeline().add(p.getId(), postNode, time);
+            fanOut(u, postNode, time);
+
             return p;
         } catch (NullPointerException e) {
             return null;
@@ -255,8 +372,9 @@ public class Database implements WinsomeDatabase, Closeable {
     // metodo per reperire un post dal database.
     // se username segue l autore del post denominato da idPost, il post viene restituito.
     // un Post può essere restituito sse l utente segue l autore del Post o se l utente è l autore del Post.
+    // I commenti del post vengono restituiti a pagine (vedi postToMap())
     @Override
-    public HashMap<String, Object> viewFriendPost(String username, UUID idPost) {
+    public HashMap<String, Object> viewFriendPost(String username, UUID idPost, int limit, String cursor) {
         Post p = getPost(idPost);
         User u = getUser(username);
         if (p != null && u != null) {
@@ -267,7 +385,7 @@ public class Database implements WinsomeDatabase, Closeable {
                 return new HashMap<>(0);
             }
 
-            return postToMap(p);
+            return postToMap(p, limit, cursor);
         }
 
         return null;
@@ -276,63 +394,79 @@ public class Database implements WinsomeDatabase, Closeable {
     // metodo per stabilire se un rewin esiste ancora oppure no.
     // Se esiste, restituisce il post originale, altrimenti null.
     @Override
-    public HashMap<String, Object> openRewin(String rewinAuthor, UUID idPost) {
+    public HashMap<String, Object> openRewin(String rewinAuthor, UUID idPost, int limit, String cursor) {
         User u = getUser(rewinAuthor);
-        if (u != null) {
+        Post p = getPost(idPost);
+        if (u != null && p != null) {
             GroupNode posts = u.getPostsGroupNode();
-            if (!graph.adjacentNodes(posts).contains(new GraphNode<>(idPost))) {
+            if (!graph.hasEdgeConnecting(posts, p.getPostNode())) {
                 return new HashMap<>(0);
             }
 
-            return postToMap(getPost(idPost));
+            return postToMap(p, limit, cursor);
         }
 
         return null;
     }
 
-    // metodo per convertire un Post in un HashMap
-    private HashMap<String, Object> postToMap(Post p) {
-        HashMap<String, Object> post = new HashMap<>();
+    // metodo per reperire il riepilogo di un post (autore, titolo, data e contatori) senza like e commenti.
+    // Il post deve essere visibile a username: è suo, è di un suo follow oppure è stato rewinnato da un suo follow.
+    // Restituisce null se il post o l utente non esistono o se il post non è visibile
+    @Override
+    public SimplePost getPostSummary(String username, UUID idPost) {
+        User u = getUser(username);
+        Post p = getPost(idPost);
+        if (u == null || p == null) return null;
+
+        if (!u.getUsername().equals(p.getAuthor()) && !checkValidity(u, p)) return null;
+
+        return p.toSimplePost();
+    }
+
+    // metodo per convertire un Post in un HashMap.
+    // Dei like vengono restituiti solo i conteggi (presi dai contatori del post), mentre i commenti vengono presi dalla timeline del post,
+    // dal più recente al più vecchio, a partire dal cursore. CURSOR è null se non ci sono altri commenti
+    private HashMap<String, Object> postToMap(Post p, int limit, String cursor) {
+        limit = pageLimit(limit);
+        String[] parts = Page.decodeCursor(cursor, 2);
 
-        GroupNode comments = p.getCommentsGroupNode();
-        GroupNode likes = p.getLikesGroupNode();
+        Timeline<Comment> timeline = p.getCommentsTimeline();
+        List<Timeline.Entry<Comment>> entries = parts == null ? timeline.newest(limit + 1)
+                : timeline.before(Long.parseLong(parts[0]), UUID.fromString(parts[1]), false, limit + 1);
 
+        Page<Timeline.Entry<Comment>> comments = Page.of(entries, limit,
+                e -> Page.encodeCursor(String.valueOf(e.time()), e.id().toString()));
+
+        ArrayList<Comment> list = new ArrayList<>(comments.getItems().size());
+        for (Timeline.Entry<Comment> e : comments.getItems()) {
+            list.add(e.value());
+        }
+
+        int[] votes = p.getCounters().getVotes();
+
+        HashMap<String, Object> post = new HashMap<>();
         post.put("TITLE", p.getTitle());
         post.put("CONTENT", p.getContent());
-        post.put("LIKES", graph.adjacentNodes(likes));
-        post.put("COMMENTS", graph.adjacentNodes(comments));
+        post.put("LIKES", votes[0]);
+        post.put("DISLIKES", votes[1]);
+        post.put("COMMENTS", list);
+        post.put("CURSOR", comments.getCursor());
 
         return post;
     }
 
-    // metodo per restituire tutti i commenti dopo una certa dota.
+    // metodo per restituire tutti i commenti dopo una certa dota (in millisecondi).
     // Se date è 0, allora vengono restituiti tutti i commenti.
-    // I commenti corrispondono ai nodi vicini al nodo commentsGroupNode del post.
-    public Set<SimpleComment> getCommentsFromDate(UUID idPost, String date) throws ParseException {
+    // I commenti vengono presi dalla timeline del post, ordinata per data: si parte direttamente dal primo commento
+    // più recente di date
+    public Set<SimpleComment> getCommentsFromDate(UUID idPost, long date) {
         Post p = tablePosts.get(idPost);
         if (p != null) {
-            GroupNode commentsGroupNode = p.getCommentsGroupNode();
-            Set<Node> comments = graph.adjacentNodes(commentsGroupNode);
-
-            HashSet<SimpleComment> set = new HashSet<>();
-            if (date.equals("0")) {
-                for (Node n : comments) {
-                    if (n instanceof GraphNode<?> g && g.getValue() instanceof Comment c) {
-                        set.add(c.toSimpleComment());
-                    }
-                }
+            List<Comment> comments = date == 0 ? p.getCommentsTimeline().all() : p.getCommentsTimeline().since(date);
 
-                return set;
-            }
-
-            SimpleDateFormat format = Database.getDateFormat().getSimpleDateFormat();
-            Date d = format.parse(date);
-            for (Node n : comments) {
-                if (n instanceof GraphNode<?> g && g.getValue() instanceof Comment c) {
-                    if (format.parse(c.getDate()).after(d)) {
-                        set.add(c.toSimpleComment());
-                    }
-                }
+            HashSet<SimpleComment> set = new HashSet<>(comments.size() * 2);
+            for (Comment c : comments) {
+                set.add(c.toSimpleComment());
             }
 
             return set;
@@ -341,83 +475,117 @@ public class Database implements WinsomeDatabase, Closeable {
         return null;
     }
 
-    // metodo per restituire tutti i post di un utente.
-    // I post corrispondono ai nodi vicini al nodo postsGroupNode dell utente.
+    // metodo per restituire i post (e i rewin) di un utente, dal più recente al più vecchio, a pagine.
+    // I post vengono presi dalla timeline dell utente
     @Override
-    public Set<Node> getAllPostsOf(String username) {
+    public Page<FeedEntry> getAllPostsOf(String username, int limit, String cursor) {
         try {
             User u = Objects.requireNonNull(tableUsers.get(username));
-            return graph.adjacentNodes(u.getPostsGroupNode());
+            limit = pageLimit(limit);
+
+            List<FeedEntry> entries = timelinePage(u, FeedEntry.fromCursor(cursor), limit + 1);
+            return Page.of(entries, limit, FeedEntry::toCursor);
         } catch (NullPointerException e) {
             return null;
         }
     }
 
-    // metodo che restituisce tutti i post dei follow di username.
+    // metodo che restituisce i post dei follow di username, dal più recente al più vecchio, a pagine.
     // Di fatto, ritorna quella che è la home di username.
+    // Se le home materializzate sono attive, la pagina viene copiata dalla home; altrimenti (o se la pagina va
+    // oltre le entry che la home conserva) vengono presi al più limit + 1 post dalla timeline di ogni follow
+    // e vengono fusi, tenendo i primi limit
     @Override
-    public Map<String, Set<Node>> getFriendsPostsOf(String username) {
+    public Page<FeedEntry> getFriendsPostsOf(String username, int limit, String cursor) {
         try {
             User u = Objects.requireNonNull(tableUsers.get(username));
-            HashMap<String, Set<Node>> result = new HashMap<>(u.getFollowing().size());
+            limit = pageLimit(limit);
+            FeedEntry after = FeedEntry.fromCursor(cursor);
 
+            if (homeSize > 0) {
+                List<FeedEntry> page = homeOf(u).page(after, limit + 1);
+                if (page != null) return Page.of(page, limit, FeedEntry::toCursor);
+            }
+
+            ArrayList<FeedEntry> entries = new ArrayList<>();
             for (String follow : u.getFollowing()) {
                 User friend = tableUsers.get(follow);
-                result.put(follow, graph.adjacentNodes(friend.getPostsGroupNode()));
+                if (friend == null) continue;
+
+                entries.addAll(timelinePage(friend, after, limit + 1));
+            }
+
+            Collections.sort(entries);
+            if (entries.size() > limit + 1) {
+                entries.subList(limit + 1, entries.size()).clear();
             }
 
-            return Collections.unmodifiableMap(result);
+            return Page.of(entries, limit, FeedEntry::toCursor);
         } catch (NullPointerException e) {
             return null;
         }
     }
 
+    // restituisce al più limit entry della timeline di u successive ad after (dalla più recente se after è null)
+    private List<FeedEntry> timelinePage(User u, FeedEntry after, int limit) {
+        String follow = u.getUsername();
+        Timeline<GraphNode<UUID>> timeline = u.getTimeline();
+
+        // a parità di data e post, le entry sono ordinate per follow (decrescente): l entry di u va restituita
+        // anche se si trova nella stessa posizione del cursore, purché il suo follow venga dopo quello del cursore
+        List<Timeline.Entry<GraphNode<UUID>>> entries = after == null ? timeline.newest(limit)
+                : timeline.before(after.getTime(), after.getIdPost(), follow.compareTo(after.getFollow()) < 0, limit);
+
+        ArrayList<FeedEntry> result = new ArrayList<>(entries.size());
+        for (Timeline.Entry<GraphNode<UUID>> e : entries) {
+            result.add(new FeedEntry(follow, e.value(), e.time()));
+        }
+
+        return result;
+    }
+
+    private static int pageLimit(int limit) {
+        if (limit <= 0) return PAGE_SIZE;
+
+        return Math.min(limit, MAX_PAGE_SIZE);
+    }
+
     // metodo che prende in input una dateMap e restituisce tutti i post dei follow di username basandosi sulla dateMap.
     // Esempio:
-    // dateMap = A | "08/08/2020 - 5.30" -> restituisce tutti i post di A che sono stati pubblicati dopo il 08/08/2020 - 5-30 (vale anche l ora non solo il giorno)
-    // dateMap = B | "0" -> restituisce tutti i post di B
+    // dateMap = A | 1596857400000 -> restituisce tutti i post di A che sono stati pubblicati dopo quell istante (in millisecondi)
+    // dateMap = B | 0 -> restituisce tutti i post di B
 
-    // Per ogni follow di username nella dateMap, controllo se è effettivamente un follow e poi prendi i post dopo quella data
+    // Per ogni follow di username nella dateMap, controllo se è effettivamente un follow e poi prendo i post dopo quella data.
+    // I post vengono presi dalla timeline del follow, che è ordinata per data: si parte direttamente dal primo post
+    // più recente di date, quindi il costo dipende dal numero di post nuovi e non da tutti i post del follow.
+    // I rewin sono nella timeline con la data in cui sono stati fatti, quindi vengono restituiti i rewin fatti dopo date
     @Override
-    public Map<String, Set<Node>> getLatestFriendsPostsOf(String username, Map<String, String> dateMap) {
+    public Map<String, Set<Node>> getLatestFriendsPostsOf(String username, Map<String, Long> dateMap) {
         User me = tableUsers.get(username);
         if (me == null) return null;
 
         HashMap<String, Set<Node>> result = new HashMap<>();
-        SimpleDateFormat format = Database.getDateFormat().getSimpleDateFormat();
 
         /*
             key=username || value=date
          */
-        for (Map.Entry<String, String> entry : dateMap.entrySet()) {
+        for (Map.Entry<String, Long> entry : dateMap.entrySet()) {
             String follow = entry.getKey();
-            String date = entry.getValue();
+            long date = entry.getValue() != null ? entry.getValue() : 0;
             if (!me.getFollowing().contains(follow)) continue;
 
             try {
                 User friend = Objects.requireNonNull(tableUsers.get(follow));
 
-                if (date.equals("0")) {
+                if (date == 0) {
                     Set<Node> nodes = graph.adjacentNodes(friend.getPostsGroupNode());
                     result.put(follow, nodes);
                     continue;
                 }
 
-                Date d;
-                try {
-                    d = format.parse(date);
-                } catch (ParseException e) {
-                    return null;
-                }
-
-                for (Node n : graph.adjacentNodes(friend.getPostsGroupNode())) {
-                    if (n instanceof GraphNode<?> g && g.getValue() instanceof UUID id) {
-                        Post p = tablePosts.get(id);
-                        if (!p.getAuthor().equals(follow) || p.date().toDate().after(d)) {
-                            result.putIfAbsent(follow, new HashSet<>());
-                            result.get(follow).add(n);
-                        }
-                    }
+                List<GraphNode<UUID>> nodes = friend.getTimeline().since(date);
+                if (!nodes.isEmpty()) {
+                    result.put(follow, new HashSet<>(nodes));
                 }
 
             } catch (NullPointerException e) {
@@ -437,19 +605,24 @@ public class Database implements WinsomeDatabase, Closeable {
             if (!u.getFollowing().contains(p.getAuthor())) return "205";
 
             GroupNode posts = u.getPostsGroupNode();
-            try {
-                // Se il post è già stato rewinnato, ritorna un errore
-                if (graph.adjacentNodes(posts).contains(new GraphNode<>(idPost))) return "209";
-            } catch (NullPointerException e) {
-                e.printStackTrace();
-                return "208"; // Se non ci sono post adiacebti al nodo postsGroupNode, ritorna un errore
-            }
+            // rewin e rimozioni dello stesso utente sono serializzati dal suo lock: l arco è l unico controllo
+            // (2 rewin contemporanei dello stesso post non passano entrambi) e i record arrivano nel log nello
+            // stesso ordine in cui cambia il grafo. Il record va nel log prima che il rewin compaia in timeline e home
+            synchronized (followLockOf(username)) {
+                if (!graph.putEdge(posts, p.getPostNode())) return "209"; // post già rewinnato
 
-            GraphNode<UUID> rewinNode = new GraphNode<>(idPost);
-            graph.putEdge(posts, rewinNode);
+                long time = System.currentTimeMillis();
+                try {
+                    log.logRewin(username, idPost, time);
+                } catch (UncheckedIOException e) {
+                    graph.removeEdge(posts, p.getPostNode());
+                    throw e;
+                }
 
-            if (saver != null)
-                saver.asyncSave(() -> graphSaver.saveRewin(u, idPost), StandardPriority.HIGH);
+                p.addRewinner(username);
+                u.getTimeline().add(idPost, p.getPostNode(), time);
+                fanOut(u, p.getPostNode(), time);
+            }
 
             return "200";
         } catch (NullPointerException ignored) {
@@ -466,12 +639,22 @@ public class Database implements WinsomeDatabase, Closeable {
             if (!u.getFollowing().contains(p.getAuthor())) return "205";
 
             GroupNode posts = u.getPostsGroupNode();
-            GraphNode<UUID> rewinNode = new GraphNode<>(idPost);
+            synchronized (followLockOf(username)) {
+                // se il post non era rewinnato non c'è niente da togliere, né da scrivere nel log
+                if (!graph.removeEdge(posts, p.getPostNode())) return "200";
 
-            graph.removeEdge(posts, rewinNode);
+                try {
+                    log.logRewinRemoved(username, idPost);
+                } catch (UncheckedIOException e) {
+                    graph.putEdge(posts, p.getPostNode());
+                    throw e;
+                }
+
+                p.removeRewinner(username);
+                u.getTimeline().remove(idPost);
+                trimHomes(u, idPost);
+            }
 
-            if (saver != null)
-                saver.asyncSave(() -> graphSaver.removeRewinFromFile(username, idPost), StandardPriority.LOW);
             return "200";
         }
 
@@ -496,12 +679,17 @@ public class Database implements WinsomeDatabase, Closeable {
 
             Comment c = new Comment(idPost, author, content);
 
+            // il record va nel log prima che il commento sia visibile e, soprattutto, prima che entri nell entries
+            // storage: il suo ENTRY_CONSUMED (scritto quando le ricompense lo prendono) non può precedere il COMMENT.
+            // Se la scrittura fallisce il commento non è mai esistito
+            log.logComment(c);
+
             GraphNode<Comment> commentNode = new GraphNode<>(c);
-            GroupNode commentsGroup = tablePosts.get(idPost).getCommentsGroupNode();
+            GroupNode commentsGroup = p.getCommentsGroupNode();
 
             graph.putEdge(commentsGroup, commentNode);
+            p.addComment(c);
             entries.add(c);
-            saver.asyncSave(() -> graphSaver.saveComment(tablePosts.get(idPost).getAuthor(), c), StandardPriority.NORMAL);
             return c;
         }
 
@@ -522,13 +710,20 @@ public class Database implements WinsomeDatabase, Closeable {
         // Se sto agendo su un post di un mio follow, ok
         if (u.getFollowing().contains(p.getAuthor())) {
             return true;
-        } else { // se sto agendo su un rewin, non per forza seguo l autore del post originale..
-            for (String f1 : u.getFollowing()) {
-                User followOfF1 = tableUsers.get(f1);
-                // ..quindi guardo se tra tutti i miei follow, c'è qualcuno che ha rewinnato il post
-                if (graph.hasEdgeConnecting(followOfF1.getPostsGroupNode(), new GraphNode<>(p.getId()))) {
-                    return true;
-                }
+        }
+
+        // se sto agendo su un rewin, non per forza seguo l autore del post originale,
+        // quindi guardo se tra tutti i miei follow c'è qualcuno che ha rewinnato il post.
+        // Il Post tiene l insieme di chi lo ha rewinnato: scorro il più piccolo dei 2 insiemi e cerco nell altro
+        Set<String> rewinners = p.getRewinners();
+        Set<String> following = u.getFollowing();
+        if (rewinners.size() <= following.size()) {
+            for (String r : rewinners) {
+                if (following.contains(r)) return true;
+            }
+        } else {
+            for (String f : following) {
+                if (rewinners.contains(f)) return true;
             }
         }
 
@@ -556,60 +751,52 @@ public class Database implements WinsomeDatabase, Closeable {
 
         GroupNode likesGroup = post.getLikesGroupNode();
 
-        Set<Node> likes = graph.adjacentNodes(likesGroup);
+        // Il Post tiene un indice username -> like, quindi per sapere se l utente ha già votato
+        // non serve scorrere tutti i like del post.
+        // putLikeIfAbsent è atomica: se 2 voti dello stesso utente arrivano insieme, solo uno viene inserito
+        Like like = post.getLikeOf(username);
+        if (like == null) {
+            Like newLike = new Like(idPost, type, username);
+            // il record del nuovo voto va scritto tenendo il lock del like: un cambio di voto contemporaneo
+            // (che prende lo stesso lock) finisce nel log sicuramente dopo
+            synchronized (newLike) {
+                like = post.putLikeIfAbsent(newLike);
+                if (like == null) log.logVote(newLike);
+            }
 
-        // Eseguo un for per controllare se il like è già stato inserito.
-        // Non posso usare la set.contains() perchè l hash viene fatto sull id del like (che viene assegnato quando viene creato).
-        // Siccome la classe Set non permette di reperire elementi, non posso reperire l id del like già assegnato.
-        // Un idea sarebbe togliere il nodo e rimetterlo,
-        // ma non potendo, appunto, reperire l id del like originale non posso accedere al file sul disco per la modifica.
+            if (like == null) {
+                GraphNode<Like> likeNode = new GraphNode<>(newLike);
 
-        // Se il cambio da like a dislike (o viceverse) viene eseguito, il calcolo delle ricompense viene fatto
-        // sul nuovo like e non più su quello vecchio
-        for (Node n : likes) {
-            if (n instanceof GraphNode<?> g && g.getValue() instanceof Like l) {
-                if (l.getUsername().equals(username)) {
-                    if (l.getType() != type) {
-                        if (l.getType() == Like.TYPE.LIKE) {
-                            entries.changeLikeToDislike(l);
-                        } else {
-                            entries.chageDislikeToLike(l);
-                        }
-
-                        l.setType(type);
-                        if (saver != null)
-                            saver.asyncSave(() -> graphSaver.saveLike(username, l), StandardPriority.NORMAL);
-                        return "0"; //like cambiato
-                    } else if (l.getType() == type)
-                        return "212";
-                }
+                graph.putEdge(likesGroup, likeNode);
+                entries.add(newLike);
+                return "200";
             }
         }
 
-//  Semplice controllo se il like è stato messo (alternativa al cambio Like)
-//  In questo caso, like/dislike già messo = errore
-//        for (Node n : likes) {
-//            if (n instanceof GraphNode<?> g && g.getValue() instanceof Like l) {
-//                if (l.getUsername().equals(username))
-//                    return "212";
-//            }
-//        }
+        // Se il cambio da like a dislike (o viceverse) viene eseguito, il calcolo delle ricompense viene fatto
+        // sul nuovo like e non più su quello vecchio
+        Like l = like;
+        synchronized (l) {
+            if (l.getType() == type) return "212";
+
+            if (l.getType() == Like.TYPE.LIKE) {
+                entries.changeLikeToDislike(l);
+            } else {
+                entries.chageDislikeToLike(l);
+            }
 
-        Like like = new Like(idPost, type, username);
-        GraphNode<Like> likeNode = new GraphNode<>(like);
+            post.changeLikeType(l, type);
+            log.logVote(l);
+        }
 
-        graph.putEdge(likesGroup, likeNode);
-        entries.add(like);
-        if (saver != null)
-            saver.asyncSave(() -> graphSaver.saveLike(post.getAuthor(), like), StandardPriority.NORMAL);
-        return "200";
+        return "0"; //like cambiato
     }
 
 
     // username vuole cancellare un post con id=idPost
     // il post può essere cancellato solo se si è l autore di esso
 
-    // vengono rimossi tutti i commenti e like (file compresi -> vedi graphSaver.removePost())
+    // vengono rimossi tutti i commenti e like (nel log basta il record POST_REMOVED -> vedi LogLoader)
     @Override
     public String removePost(String username, UUID idPost) {
         Post p = tablePosts.remove(idPost);
@@ -619,57 +806,126 @@ public class Database implements WinsomeDatabase, Closeable {
             GroupNode commentsGroup = p.getCommentsGroupNode();
             GroupNode likesGroup = p.getLikesGroupNode();
 
-            Set<Node> commentSet = graph.adjacentNodes(commentsGroup);
-            Set<Node> likeSet = graph.adjacentNodes(likesGroup);
+            // gli insiemi restituiti dal grafo sono snapshot immutabili, quindi posso rimuovere i nodi
+            // mentre li scorro senza doverne fare una copia
+            Set<Node> commentsSet = graph.adjacentNodes(commentsGroup);
+            Set<Node> likesSet = graph.adjacentNodes(likesGroup);
+            ArrayList<UUID> interactions = new ArrayList<>(); // id di commenti e like, per la compattazione del log
 
-            Set<Node> commentsSet = new HashSet<>(commentSet);
             for (Node node : commentsSet) {
                 if (node instanceof GraphNode<?> g && g.getValue() instanceof UUID) continue;
+                if (node instanceof GraphNode<?> g && g.getValue() instanceof Comment c) interactions.add(c.getId());
 
                 graph.removeNode(node);
             }
 
-            Set<Node> likesSet = new HashSet<>(likeSet);
             for (Node node : likesSet) {
                 if (node instanceof GraphNode<?> g && g.getValue() instanceof UUID) continue;
+                if (node instanceof GraphNode<?> g && g.getValue() instanceof Like l) interactions.add(l.getId());
 
                 graph.removeNode(node);
             }
 
+            // il post va tolto dalla timeline dell autore e da quella di chi lo ha rewinnato
+            // (e dalle home dei loro follower)
+            User author = tableUsers.get(username);
+            if (author != null) {
+                author.getTimeline().remove(idPost);
+                trimHomes(author, idPost);
+            }
+
+            for (String rewinner : p.getRewinners()) {
+                User u = tableUsers.get(rewinner);
+                if (u != null) {
+                    u.getTimeline().remove(idPost);
+                    trimHomes(u, idPost);
+                }
+            }
+
+            Set<String> rewinners = p.getRewinners();
+            p.clearLikes();
+            p.clearComments();
             entries.remove(p.getId());
-            if (saver != null)
-                saver.asyncSave(() -> graphSaver.removePost(p, commentsSet, likesSet), StandardPriority.LOW);
+            log.logPostRemoved(idPost, interactions, rewinners);
+            store.postRemoved(idPost);
             graph.removeNode(commentsGroup);
             graph.removeNode(likesGroup);
-            graph.removeNode(new GraphNode<>(p.getId()));
+            graph.removeNode(p.getPostNode());
             return "200";
         }
 
         return "208";
     }
 
+    // restituisce la home materializzata di u. La home viene creata alla prima richiesta prendendo i post più recenti
+    // di ogni follow: fino a quel momento il fan-out non la aggiorna (non esiste), quindi non si perde nessun post.
+    // La home viene riempita tenendo il suo lock, così chi la legge (o la aggiorna) aspetta che sia completa
+    private HomeTimeline homeOf(User u) {
+        HomeTimeline home = u.getHome();
+        if (home != null) return home;
+
+        HomeTimeline newHome = new HomeTimeline(homeSize);
+        synchronized (newHome) {
+            if (!u.setHomeIfAbsent(newHome)) return u.getHome();
+
+            for (String follow : u.getFollowing()) {
+                User friend = tableUsers.get(follow);
+                if (friend == null) continue;
+
+                newHome.addNewest(timelinePage(friend, null, homeSize), homeSize);
+            }
+        }
+
+        return newHome;
+    }
+
+    // aggiunge il post (o rewin) di u alle home (già create) dei suoi follower.
+    // I follower sono quelli dell inizio dell iterazione: se uno smette di seguire u nel frattempo, il suo unfollow
+    // può svuotare la home prima che il post venga aggiunto, quindi dopo l aggiunta si controlla di nuovo il follow
+    private void fanOut(User u, GraphNode<UUID> postNode, long time) {
+        if (homeSize <= 0) return;
+
+        for (String follower : u.getFollowers()) {
+            User f = tableUsers.get(follower);
+            if (f == null) continue;
+
+            HomeTimeline home = f.getHome();
+            if (home != null && home.add(new FeedEntry(u.getUsername(), postNode, time))
+                    && !f.getFollowing().contains(u.getUsername())) {
+                home.remove(u.getUsername(), postNode.getValue());
+            }
+        }
+    }
+
+    // rimuove il post (o rewin) di u dalle home dei suoi follower
+    private void trimHomes(User u, UUID idPost) {
+        if (homeSize <= 0) return;
+
+        for (String follower : u.getFollowers()) {
+            User f = tableUsers.get(follower);
+            if (f == null) continue;
+
+            HomeTimeline home = f.getHome();
+            if (home != null) home.remove(u.getUsername(), idPost);
+        }
+    }
+
     // metodo per reperire le entry su cui eseguire il calcolo delle ricompense
     @Override
     public ArrayList<EntriesStorage.Entry> pullNewEntries() {
         ArrayList<EntriesStorage.Entry> entries = this.entries.pull();
+        // i like e i commenti presi vengono segnati nel log, così al riavvio non vengono ricompensati di nuovo
+        ArrayList<UUID> consumed = new ArrayList<>();
         for (EntriesStorage.Entry e : entries) {
-
-            //Questi 2 for annidati, in realtà, sono come un for che cicla su tutti i commenti nuovi
-            for (ArrayList<Comment> comments : e.COMMENTS.values()) {
-                for (Comment c : comments) {
-                    saver.asyncSave(() -> graphSaver.removeEntry(tablePosts.get(c.getIdPost()).getAuthor(), c), StandardPriority.LOW);
-                }
+            for (Comment c : e.getNewComments()) {
+                consumed.add(c.getId());
             }
 
-            for (Like l : e.LIKES) {
-                saver.asyncSave(() -> graphSaver.removeEntry(tablePosts.get(l.getIdPost()).getAuthor(), l), StandardPriority.LOW);
+            for (Like l : e.getNewVotes()) {
+                consumed.add(l.getId());
             }
-
-            for (Like l : e.DISLIKES) {
-                saver.asyncSave(() -> graphSaver.removeEntry(tablePosts.get(l.getIdPost()).getAuthor(), l), StandardPriority.LOW);
-            }
-
         }
+        log.logEntriesConsumed(consumed);
 
         return entries;
     }
@@ -678,36 +934,70 @@ public class Database implements WinsomeDatabase, Closeable {
         return entries;
     }
 
-    // metodo per salvare le 2 tabelle (tablePosts e tableUsers)
-    public void save() {
-        saveUsers();
-        savePosts();
+    public TagIndex getTagIndex() {
+        return tagIndex;
     }
 
-    private void saveUsers() {
-        try {
-            String s = gson.toJson(tableUsers);
-            BufferedWriter out = new BufferedWriter(new PrintWriter(getName() + File.separator + "users.json"));
-            out.write(s);
-            out.close();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+    // le tabelle vengono usate direttamente solo dal LogLoader, per ricreare le righe che esistono solo nel log
+    public ConcurrentHashMap<String, User> getTableUsers() {
+        return tableUsers;
+    }
+
+    public ConcurrentHashMap<UUID, Post> getTablePosts() {
+        return tablePosts;
+    }
+
+    // aggiunge una ricompensa al portafoglio dell utente (amount in virgola fissa, vedi WalletLedger).
+    // Il record va nel log prima: se la scrittura fallisce la transazione non viene aggiunta
+    public void addTransaction(User u, long amount, long date) {
+        log.logTransaction(u.getUsername(), date, amount);
+        u.addTransaction(amount, date);
+        store.userChanged(u);
+    }
+
+    // chi modifica una riga delle tabelle fuori dal Database (interazioni, LogLoader) lo segnala qui
+    public void userChanged(User u) {
+        store.userChanged(u);
+    }
+
+    public void postChanged(Post p) {
+        store.postChanged(p);
+    }
+
+    public void postRemoved(UUID idPost) {
+        store.postRemoved(idPost);
     }
 
-    private void savePosts() {
+    // metodo per salvare le 2 tabelle (tablePosts e tableUsers): vengono scritte solo le righe modificate
+    // dall ultimo salvataggio (vedi TableStore)
+    public void save() {
         try {
-            String s = gson.toJson(tablePosts);
-            BufferedWriter out = new BufferedWriter(new PrintWriter(getName() + File.separator + "posts.json"));
-            out.write(s);
-            out.close();
+            System.out.println(store.save(tableUsers, tablePosts));
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
-    // metodo per ricreare, mediante Gson, le 2 hashmap che contengono tutti gli utenti e i post
+    // metodo per ricreare le 2 hashmap che contengono tutti gli utenti e i post.
+    // Se la cartella tables non contiene ancora una base, vengono letti users.json e posts.json del vecchio formato:
+    // il primo salvataggio scriverà una base completa
     private void loadTables() throws IOException {
+        tableUsers = new ConcurrentHashMap<>();
+        tablePosts = new ConcurrentHashMap<>();
+        store = new TableStore(getName() + File.separator + "tables", gson);
+        if (!store.load(tableUsers, tablePosts)) loadLegacyTables();
+
+        // converto subito le date e le transazioni dei file salvati con il vecchio formato,
+        // così ordinamenti e risposte usano solo i timestamp e il portafoglio
+        for (Post p : tablePosts.values()) {
+            p.getTimestamp();
+        }
+        for (User u : tableUsers.values()) {
+            u.getWallet();
+        }
+    }
+
+    private void loadLegacyTables() throws IOException {
         String usersPath = getName() + File.separator + "users.json";
         String postsPath = getName() + File.separator + "posts.json";
 
@@ -722,11 +1012,14 @@ public class Database implements WinsomeDatabase, Closeable {
         Type tablePostsType = new TypeToken<ConcurrentHashMap<UUID, Post>>() {
         }.getType();
 
-        tableUsers = gson.fromJson(usersReader, tableUsersType);
-        tablePosts = gson.fromJson(postsReader, tablePostsType);
+        ConcurrentHashMap<String, User> users = gson.fromJson(usersReader, tableUsersType);
+        ConcurrentHashMap<UUID, Post> posts = gson.fromJson(postsReader, tablePostsType);
 
         usersReader.close();
         postsReader.close();
+
+        if (users != null) tableUsers = users;
+        if (posts != null) tablePosts = posts;
     }
 
     public WinsomeGraph getGraph() {
@@ -743,23 +1036,17 @@ public class Database implements WinsomeDatabase, Closeable {
                 e.printStackTrace();
             }
         }
-    }
-
-    public static class DatabaseDate {
-        private final String dateS;
-        private final SimpleDateFormat dateSDF;
-
-        public DatabaseDate() {
-            dateS = "dd/MM/yy - HH:mm:ss";
-            dateSDF = new SimpleDateFormat("dd/MM/yy - HH:mm:ss");
-        }
 
-        public String toString() {
-            return dateS;
+        if (compactor != null) {
+            compactor.interrupt();
+            try {
+                compactor.join();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+            System.out.println(compactor.report());
         }
 
-        public SimpleDateFormat getSimpleDateFormat() {
-            return dateSDF;
-        }
+        log.close();
     }
 }
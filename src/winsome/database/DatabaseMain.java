@@ -1,5 +1,6 @@
 package winsome.database;
 
+import winsome.database.log.FsyncPolicy;
 import winsome.database.requestHandler.Packet;
 import winsome.database.requestHandler.RequestReader;
 import winsome.database.requestHandler.RequestWriter;
@@ -36,6 +37,15 @@ public class DatabaseMain {
     private static boolean running = true;
     private static String delay = "5m";
 
+    // dimensione delle home materializzate (0 = home costruita ad ogni richiesta)
+    private static int homeSize = 0;
+
+    // quando il write-ahead log viene forzato sul disco (vedi FsyncPolicy)
+    private static FsyncPolicy fsyncPolicy = FsyncPolicy.BATCH;
+
+    // byte al secondo che la compattazione del log può leggere e scrivere (0 = compattazione disattivata)
+    private static long compactionBudget = 4L << 20;
+
     // thread che viene eseguito nella fase di chiusura forzata del Database.
     // Se viene invocato il metodo safeClose(), il thread non viene fatto partire
     private static Thread closingThread;
@@ -45,6 +55,16 @@ public class DatabaseMain {
         database = new Database();
         System.out.println("Delay salvataggio: " + delay);
         database.startSaving(delay);
+        database.startGroupCommit(fsyncPolicy);
+        System.out.println("Fsync del log: " + fsyncPolicy);
+        if (compactionBudget > 0) {
+            database.startCompaction(compactionBudget);
+            System.out.println("Compattazione del log: " + compactionBudget / 1024 + " KB/s");
+        }
+        if (homeSize > 0) {
+            database.enableHomeTimelines(homeSize);
+            System.out.println("Home materializzate: " + homeSize + " post per utente");
+        }
 
         try {
             ServerSocketChannel server = ServerSocketChannel.open();
@@ -140,6 +160,36 @@ public class DatabaseMain {
                     }
 
                     case "delay" -> delay = entry.getValue().toString();
+                    case "home_size" -> {
+                        String insertedSize = "";
+                        try {
+                            insertedSize = entry.getValue().toString();
+                            homeSize = Integer.parseInt(insertedSize);
+                        } catch (NumberFormatException e) {
+                            System.err.println(insertedSize + ": non è una dimensione valida");
+                            System.err.println("Le home verranno costruite ad ogni richiesta");
+                        }
+                    }
+                    case "compaction" -> {
+                        String value = entry.getValue().toString().trim().toLowerCase();
+                        if (value.equals("off")) {
+                            compactionBudget = 0;
+                        } else if (value.matches("^[0-9]+(kb|mb)/s$")) {
+                            long n = Long.parseLong(value.substring(0, value.length() - 4));
+                            compactionBudget = value.startsWith("kb", value.length() - 4) ? n << 10 : n << 20;
+                        } else {
+                            System.err.println(value + ": non è un budget di compattazione valido");
+                            System.err.println("Verrà usato il valore di default");
+                        }
+                    }
+                    case "fsync" -> {
+                        try {
+                            fsyncPolicy = FsyncPolicy.parse(entry.getValue().toString());
+                        } catch (IllegalArgumentException e) {
+                            System.err.println(e.getMessage());
+                            System.err.println("Verrà usato il valore di default");
+                        }
+                    }
                 }
 
             }
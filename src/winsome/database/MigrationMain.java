@@ -0,0 +1,54 @@
+package winsome.database;
+
+import winsome.database.log.LegacyImporter;
+
+import java.io.IOException;
+import java.util.List;
+
+/*
+    Conversione offline del vecchio formato del database (un file per utente, un file json per ogni commento e like
+    nella cartella jsons e il file rewins) nel write-ahead log.
+    Va avviato nella cartella che contiene graphDB, a database spento:
+    java -cp WinsomeDatabase.jar winsome.database.MigrationMain [--delete]
+
+    La conversione è la stessa fatta dal database al primo avvio (vedi LegacyImporter), poi vengono salvate le tabelle
+    e ogni commento e like del vecchio formato viene cercato nel log per id.
+    Con --delete, se tutti i record sono nel log, i vecchi file vengono cancellati: con milioni di commenti e like
+    la cartella jsons può esaurire gli inode del disco
+ */
+public class MigrationMain {
+    public static void main(String[] args) {
+        boolean delete = args.length > 0 && args[0].equals("--delete");
+        if (!LegacyImporter.hasLegacyData()) {
+            System.out.println("Nessun file del vecchio formato in " + Database.getName());
+            return;
+        }
+
+        long t1 = System.currentTimeMillis();
+        Database database = new Database();
+        database.save();
+
+        List<String> missing;
+        try {
+            missing = new LegacyImporter(database, database.getLog()).missing();
+            database.close(); // il log viene forzato sul disco prima di cancellare qualsiasi file
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.err.println("Impossibile verificare la conversione, i vecchi file non vengono cancellati");
+            return;
+        }
+
+        if (!missing.isEmpty()) {
+            System.err.println(missing.size() + " commenti/like non si trovano nel log, i vecchi file non vengono cancellati:");
+            missing.stream().limit(20).forEach(id -> System.err.println("  " + id));
+            return;
+        }
+
+        System.out.println("Conversione verificata (" + (System.currentTimeMillis() - t1) + " ms)");
+        if (delete) {
+            System.out.println("Cancellati " + LegacyImporter.deleteLegacyFiles() + " file del vecchio formato");
+        } else {
+            System.out.println("I vecchi file possono essere cancellati con --delete");
+        }
+    }
+}
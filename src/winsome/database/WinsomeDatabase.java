@@ -1,10 +1,13 @@
 package winsome.database;
 
+import winsome.common.SimplePost;
 import winsome.database.graph.graphNodes.Node;
 import winsome.database.tables.Comment;
 import winsome.database.tables.Post;
 import winsome.database.tables.User;
 import winsome.database.utility.EntriesStorage;
+import winsome.database.utility.FeedEntry;
+import winsome.database.utility.Page;
 
 import java.util.*;
 
@@ -15,7 +18,7 @@ public interface WinsomeDatabase {
 
     Set<Node> getTagsIf(String username, String password);
 
-    Set<Node> getUsersByTag(String username);
+    Page<String> getUsersByTag(String username, int limit, String cursor);
 
     Set<String> getFollowersOf(String username);
 
@@ -27,15 +30,17 @@ public interface WinsomeDatabase {
 
     Post createPost(String author, String title, String content);
 
-    HashMap<String, Object> viewFriendPost(String author, UUID idPost);
+    HashMap<String, Object> viewFriendPost(String author, UUID idPost, int limit, String cursor);
 
-    HashMap<String, Object> openRewin(String author, UUID idPost);
+    HashMap<String, Object> openRewin(String author, UUID idPost, int limit, String cursor);
 
-    Set<Node> getAllPostsOf(String username);
+    SimplePost getPostSummary(String username, UUID idPost);
 
-    Map<String, Set<Node>> getFriendsPostsOf(String username);
+    Page<FeedEntry> getAllPostsOf(String username, int limit, String cursor);
 
-    Map<String, Set<Node>> getLatestFriendsPostsOf(String username, Map<String, String> dateMap);
+    Page<FeedEntry> getFriendsPostsOf(String username, int limit, String cursor);
+
+    Map<String, Set<Node>> getLatestFriendsPostsOf(String username, Map<String, Long> dateMap);
 
     String rewinFriendsPost(String username, UUID idPost);
 
@@ -0,0 +1,205 @@
+package winsome.database.graph;
+
+import com.google.common.graph.GraphBuilder;
+import com.google.common.graph.MutableGraph;
+import winsome.database.graph.graphNodes.GraphNode;
+import winsome.database.graph.graphNodes.GroupNode;
+import winsome.database.graph.graphNodes.Node;
+
+import java.lang.ref.Reference;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*
+    Misure del grafo da avviare a mano (non fanno parte del database):
+    java -cp WinsomeDatabase.jar winsome.database.graph.GraphBenchMain contention [secondi]
+    java -Xmx4g -cp WinsomeDatabase.jar winsome.database.graph.GraphBenchMain footprint [post]
+
+    contention: ogni thread mette like (90%) e legge i like (10%) sui post dei suoi utenti, quindi i thread non toccano
+    mai gli stessi nodi. Il grafo attuale (WinsomeGraph, lock per stripe) viene confrontato con quello che c'era prima:
+    un MutableGraph di Guava protetto da un unico ReentrantReadWriteLock. Con il lock globale le scritture sono
+    serializzate e le operazioni al secondo non crescono con i thread
+
+    footprint: memoria occupata dalla struttura del grafo con la forma che gli dà il Database (1 milione di post
+    di default, ognuno con i gruppi COMMENTS e LIKES e 2 like, 100 post per utente). I nodi vengono creati prima
+    della misura e sono gli stessi per i 2 grafi, quindi la differenza di heap è solo quella delle liste di adiacenza
+ */
+public class GraphBenchMain {
+    private static final int POSTS_PER_THREAD = 1_000;
+    private static final int WARMUP_SECONDS = 1;
+    private static final int POSTS_PER_USER = 100;
+    private static final int LIKES_PER_POST = 2;
+
+    private static volatile boolean measuring; // le operazioni vengono contate solo dopo il riscaldamento
+
+    public static void main(String[] args) throws InterruptedException {
+        String mode = args.length > 0 ? args[0] : "contention";
+
+        switch (mode) {
+            case "contention" -> contention(args.length > 1 ? Integer.parseInt(args[1]) : 3);
+            case "footprint" -> footprint(args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000);
+            default -> System.err.println("Uso: GraphBenchMain contention [secondi] | footprint [post]");
+        }
+    }
+
+    private static void contention(int seconds) throws InterruptedException {
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.println("Contesa sul grafo: 90% like, 10% letture, " + cores + " core, " + seconds + " s per misura");
+        System.out.printf("%8s %18s %18s%n", "thread", "lock globale op/s", "stripe op/s");
+
+        for (int threads = 1; threads <= Math.max(cores, 1) * 2; threads *= 2) {
+            long global = run(new GlobalLockGraph(), threads, seconds);
+            long striped = run(new StripedGraph(), threads, seconds);
+            System.out.printf("%8d %18d %18d%n", threads, global, striped);
+        }
+    }
+
+    // restituisce le operazioni al secondo, misurate dopo un secondo di riscaldamento
+    private static long run(BenchGraph graph, int threads, int seconds) throws InterruptedException {
+        LongAdder ops = new LongAdder();
+        Thread[] workers = new Thread[threads];
+
+        for (int t = 0; t < threads; t++) {
+            GroupNode[] likes = new GroupNode[POSTS_PER_THREAD];
+            for (int i = 0; i < likes.length; i++) {
+                GraphNode<UUID> post = new GraphNode<>(new UUID(t, i));
+                likes[i] = new GroupNode("LIKES", post);
+                graph.putEdge(post, likes[i]);
+            }
+
+            workers[t] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long done = 0;
+                while (!Thread.currentThread().isInterrupted()) {
+                    GroupNode group = likes[random.nextInt(likes.length)];
+                    if (random.nextInt(10) == 0) {
+                        graph.degree(group);
+                    } else {
+                        graph.putEdge(group, new GraphNode<>(new UUID(random.nextLong(), random.nextLong())));
+                    }
+
+                    if ((++done & 1023) == 0 && measuring) ops.add(1024);
+                }
+            });
+        }
+
+        for (Thread w : workers) w.start();
+        Thread.sleep(WARMUP_SECONDS * 1000L);
+        measuring = true;
+        Thread.sleep(seconds * 1000L);
+        measuring = false;
+
+        for (Thread w : workers) w.interrupt();
+        for (Thread w : workers) w.join();
+
+        return ops.sum() / seconds;
+    }
+
+    private static void footprint(int posts) {
+        // archi (from[i], to[i]) nello stesso ordine in cui li aggiunge il Database
+        int edges = posts * (3 + LIKES_PER_POST);
+        Node[] from = new Node[edges];
+        Node[] to = new Node[edges];
+        int e = 0;
+
+        GroupNode postsGroup = null;
+        for (int i = 0; i < posts; i++) {
+            if (i % POSTS_PER_USER == 0) postsGroup = new GroupNode("POSTS", new GraphNode<>("user" + i / POSTS_PER_USER));
+
+            GraphNode<UUID> post = new GraphNode<>(new UUID(1, i));
+            GroupNode likes = new GroupNode("LIKES", post);
+            from[e] = postsGroup; to[e++] = post;
+            from[e] = post; to[e++] = new GroupNode("COMMENTS", post);
+            from[e] = post; to[e++] = likes;
+            for (int l = 0; l < LIKES_PER_POST; l++) {
+                from[e] = likes; to[e++] = new GraphNode<>(new UUID(2, (long) i * LIKES_PER_POST + l));
+            }
+        }
+
+        System.out.println("Heap della struttura del grafo: " + posts + " post, " + edges + " archi");
+
+        long base = usedHeap();
+        BenchGraph global = new GlobalLockGraph();
+        for (int i = 0; i < edges; i++) global.putEdge(from[i], to[i]);
+        long globalBytes = usedHeap() - base;
+        System.out.printf("lock globale (Guava): %,d MB (%d byte per arco)%n", globalBytes >> 20, globalBytes / edges);
+        global = null;
+
+        base = usedHeap();
+        BenchGraph striped = new StripedGraph();
+        for (int i = 0; i < edges; i++) striped.putEdge(from[i], to[i]);
+        long stripedBytes = usedHeap() - base;
+        System.out.printf("stripe (blocchi di int): %,d MB (%d byte per arco)%n", stripedBytes >> 20, stripedBytes / edges);
+
+        // il grafo e i nodi devono restare raggiungibili fino alla fine della misura
+        Reference.reachabilityFence(striped);
+        Reference.reachabilityFence(from);
+        Reference.reachabilityFence(to);
+    }
+
+    // heap occupato dopo alcune garbage collection (quelle richieste con System.gc() non sono garantite)
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+
+        return used;
+    }
+
+    private interface BenchGraph {
+        void putEdge(Node n1, Node n2);
+
+        int degree(Node n);
+    }
+
+    private static final class StripedGraph implements BenchGraph {
+        private final WinsomeGraph graph = new WinsomeGraph();
+
+        @Override
+        public void putEdge(Node n1, Node n2) {
+            graph.putEdge(n1, n2);
+        }
+
+        @Override
+        public int degree(Node n) {
+            int degree = 0;
+            for (Node ignored : graph.adjacentNodes(n)) degree++;
+
+            return degree;
+        }
+    }
+
+    // il grafo com era prima degli stripe: tutte le scritture prendono lo stesso lock
+    private static final class GlobalLockGraph implements BenchGraph {
+        private final MutableGraph<Node> graph = GraphBuilder.undirected().allowsSelfLoops(false).build();
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+        @Override
+        public void putEdge(Node n1, Node n2) {
+            lock.writeLock().lock();
+            try {
+                graph.putEdge(n1, n2);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        @Override
+        public int degree(Node n) {
+            lock.readLock().lock();
+            try {
+                int degree = 0;
+                for (Node ignored : graph.adjacentNodes(n)) degree++;
+
+                return degree;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+    }
+}
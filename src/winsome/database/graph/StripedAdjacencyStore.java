@@ -0,0 +1,452 @@
+package winsome.database.graph;
+
+import winsome.database.utility.IntHashSet;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*
+    Struttura che contiene le liste di adiacenza di un grafo non orientato.
+
+    Ogni nodo viene "internato" in un id intero denso (0, 1, 2 ...): la tabella ids associa un nodo al suo id,
+    mentre i chunk associano un id al nodo e alla sua lista di adiacenza.
+    La lista di adiacenza di un nodo è un semplice int[] (block) così organizzato:
+    block[0] = numero di vicini, block[1..n] = id dei vicini
+    In questo modo un arco costa 2 interi (uno per ogni verso) e la ricerca di un nodo non alloca nulla.
+    Gli id non vengono riutilizzati: un id di un nodo rimosso resta libero (costa pochi byte nel chunk).
+
+    I block vengono trattati in modo append-only:
+    - un aggiunta scrive oltre il numero di vicini già pubblicato e poi lo aggiorna (oppure crea un block più grande)
+    - una rimozione crea sempre un nuovo block (copy-on-write). Le rimozioni sono molto più rare delle aggiunte
+    Quindi la coppia (block, numero di vicini) letta in un certo istante non cambia mai: la lettura dei vicini
+    restituisce uno snapshot immutabile e non richiede lock.
+
+    Le scritture invece sono sincronizzate con dei lock, detti stripe, scelti in base all id del nodo.
+    Un operazione su un arco blocca solo gli stripe dei suoi 2 estremi, quindi, ad esempio, un like su un post
+    non blocca la lettura dei post di un altro utente.
+    Per evitare deadlock, quando servono più stripe, questi vengono sempre acquisiti in ordine crescente di indice
+    (gli stripe sono 64, quindi un insieme di stripe è rappresentabile con una maschera long)
+ */
+class StripedAdjacencyStore<N> {
+    private static final int STRIPES = 64;
+    private static final int CHUNK_BITS = 12;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    // sopra questa soglia, la ricerca di un vicino usa un IntHashSet al posto di scorrere il block
+    private static final int INDEX_THRESHOLD = 16;
+
+    // accessi con semantica acquire/release alle celle degli array condivisi con i lettori
+    private static final VarHandle INTS = MethodHandles.arrayElementVarHandle(int[].class);
+    private static final VarHandle BLOCKS = MethodHandles.arrayElementVarHandle(int[][].class);
+    private static final VarHandle NODES = MethodHandles.arrayElementVarHandle(Object[].class);
+
+    private final ConcurrentHashMap<N, Integer> ids; // nodo -> id
+    private final ReentrantReadWriteLock[] stripes;
+    private volatile Chunk[] chunks; // id -> nodo e lista di adiacenza, a blocchi di CHUNK_SIZE id
+    private int nextId;
+
+    StripedAdjacencyStore() {
+        ids = new ConcurrentHashMap<>();
+        chunks = new Chunk[0];
+        stripes = new ReentrantReadWriteLock[STRIPES];
+
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantReadWriteLock();
+        }
+    }
+
+    boolean putEdge(N n1, N n2) {
+        if (n1.equals(n2)) throw new IllegalArgumentException("Self loop non consentiti: " + n1);
+
+        while (true) {
+            int id1 = intern(n1);
+            int id2 = intern(n2);
+
+            long mask = maskOf(id1) | maskOf(id2);
+            lockWrite(mask);
+            try {
+                // se nel frattempo uno dei 2 nodi è stato rimosso, il suo id non è più valido: riprovo
+                if (nodeOf(id1) == null || nodeOf(id2) == null) continue;
+
+                boolean inserted = append(id1, id2);
+                append(id2, id1);
+
+                return inserted;
+            } finally {
+                unlockWrite(mask);
+            }
+        }
+    }
+
+    // aggiunge gli archi (from[i], to[i]) prendendo i lock una volta sola per tutto il gruppo.
+    // Usato al caricamento, quando gli archi arrivano a migliaia: un arco con un nodo rimosso nel frattempo
+    // viene aggiunto alla fine con putEdge()
+    void putEdges(List<N> from, List<N> to) {
+        int n = from.size();
+        int[] ids1 = new int[n];
+        int[] ids2 = new int[n];
+        long mask = 0;
+        for (int i = 0; i < n; i++) {
+            if (from.get(i).equals(to.get(i))) throw new IllegalArgumentException("Self loop non consentiti: " + from.get(i));
+
+            ids1[i] = intern(from.get(i));
+            ids2[i] = intern(to.get(i));
+            mask |= maskOf(ids1[i]) | maskOf(ids2[i]);
+        }
+
+        ArrayList<Integer> retry = new ArrayList<>(0);
+        lockWrite(mask);
+        try {
+            for (int i = 0; i < n; i++) {
+                if (nodeOf(ids1[i]) == null || nodeOf(ids2[i]) == null) {
+                    retry.add(i);
+                    continue;
+                }
+
+                append(ids1[i], ids2[i]);
+                append(ids2[i], ids1[i]);
+            }
+        } finally {
+            unlockWrite(mask);
+        }
+
+        for (int i : retry) {
+            putEdge(from.get(i), to.get(i));
+        }
+    }
+
+    boolean removeEdge(N n1, N n2) {
+        Integer id1 = ids.get(n1);
+        Integer id2 = ids.get(n2);
+        if (id1 == null || id2 == null) return false;
+
+        long mask = maskOf(id1) | maskOf(id2);
+        lockWrite(mask);
+        try {
+            delete(id2, id1);
+            return delete(id1, id2);
+        } finally {
+            unlockWrite(mask);
+        }
+    }
+
+    // Per rimuovere un nodo devo bloccare il suo stripe e quelli di tutti i suoi vicini.
+    // I vicini vengono letti prima di prendere i lock, quindi, una volta acquisiti, controllo che nel frattempo
+    // non sia stato aggiunto un vicino appartenente ad uno stripe non bloccato (in quel caso riprovo)
+    boolean removeNode(N n) {
+        Integer boxedId = ids.get(n);
+        if (boxedId == null) return false;
+        int id = boxedId;
+
+        while (true) {
+            long mask = maskOf(id) | neighborsMask(id);
+
+            lockWrite(mask);
+            try {
+                if (nodeOf(id) == null) return false;
+                if ((mask | neighborsMask(id)) != mask) continue;
+
+                int[] block = blockOf(id);
+                if (block != null) {
+                    for (int i = 1; i <= block[0]; i++) {
+                        delete(block[i], id);
+                    }
+                }
+
+                Chunk chunk = chunkOf(id);
+                int offset = id & (CHUNK_SIZE - 1);
+                BLOCKS.setRelease(chunk.blocks, offset, (int[]) null);
+                NODES.setRelease(chunk.nodes, offset, null);
+                chunk.indexes[offset] = null;
+                ids.remove(n);
+
+                return true;
+            } finally {
+                unlockWrite(mask);
+            }
+        }
+    }
+
+    // Restituisce lo snapshot corrente dei vicini, senza prendere lock.
+    // Se il nodo non esiste, viene restituito un Set vuoto
+    Set<N> adjacentNodes(N n) {
+        Integer id = ids.get(n);
+        if (id == null) return Collections.emptySet();
+
+        int[] block = blockOf(id);
+        if (block == null) return Collections.emptySet();
+
+        return new NodeSet(id, block, (int) INTS.getAcquire(block, 0));
+    }
+
+    boolean hasEdgeConnecting(N n1, N n2) {
+        Integer id1 = ids.get(n1);
+        Integer id2 = ids.get(n2);
+        if (id1 == null || id2 == null) return false;
+
+        ReentrantReadWriteLock.ReadLock lock = stripes[stripeOf(id1)].readLock();
+        lock.lock();
+        try {
+            return contains(id1, id2);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // restituisce l id del nodo, creandolo se non esiste
+    private int intern(N n) {
+        Integer id = ids.get(n);
+        if (id != null) return id;
+
+        return ids.computeIfAbsent(n, this::allocate);
+    }
+
+    private synchronized int allocate(N n) {
+        int id = nextId++;
+        int c = id >>> CHUNK_BITS;
+
+        Chunk[] current = chunks;
+        if (c >= current.length) {
+            // il nuovo array viene pubblicato tramite il campo volatile, insieme al nuovo chunk
+            Chunk[] grown = Arrays.copyOf(current, Math.max(4, current.length * 2));
+            grown[c] = new Chunk();
+            chunks = grown;
+        } else if (current[c] == null) {
+            current = Arrays.copyOf(current, current.length);
+            current[c] = new Chunk();
+            chunks = current;
+        }
+
+        NODES.setRelease(chunkOf(id).nodes, id & (CHUNK_SIZE - 1), n);
+        return id;
+    }
+
+    // aggiunge "neighbor" alla lista di id. Va chiamato tenendo il lock dello stripe di id
+    private boolean append(int id, int neighbor) {
+        if (contains(id, neighbor)) return false;
+
+        Chunk chunk = chunkOf(id);
+        int offset = id & (CHUNK_SIZE - 1);
+        int[] block = chunk.blocks[offset];
+
+        if (block == null || block[0] + 1 == block.length) {
+            int size = block == null ? 0 : block[0];
+            int[] grown = new int[Math.max(4, (size + 1) * 2)];
+            if (block != null) System.arraycopy(block, 0, grown, 0, size + 1);
+
+            grown[size + 1] = neighbor;
+            grown[0] = size + 1;
+            BLOCKS.setRelease(chunk.blocks, offset, grown);
+            block = grown;
+        } else {
+            int size = block[0];
+            block[size + 1] = neighbor;
+            INTS.setRelease(block, 0, size + 1);
+        }
+
+        IntHashSet index = chunk.indexes[offset];
+        if (index != null) {
+            index.add(neighbor);
+        } else if (block[0] > INDEX_THRESHOLD) {
+            index = new IntHashSet(block[0] * 2);
+            for (int i = 1; i <= block[0]; i++) {
+                index.add(block[i]);
+            }
+            chunk.indexes[offset] = index;
+        }
+
+        return true;
+    }
+
+    // rimuove "neighbor" dalla lista di id creando un nuovo block. Va chiamato tenendo il lock dello stripe di id
+    private boolean delete(int id, int neighbor) {
+        Chunk chunk = chunkOf(id);
+        int offset = id & (CHUNK_SIZE - 1);
+        int[] block = chunk.blocks[offset];
+        if (block == null) return false;
+
+        IntHashSet index = chunk.indexes[offset];
+        if (index != null && !index.remove(neighbor)) return false;
+
+        int size = block[0];
+        int pos = 1;
+        while (pos <= size && block[pos] != neighbor) pos++;
+        if (pos > size) return false;
+
+        int[] copy = new int[block.length];
+        System.arraycopy(block, 1, copy, 1, pos - 1);
+        System.arraycopy(block, pos + 1, copy, pos, size - pos);
+        copy[0] = size - 1;
+
+        BLOCKS.setRelease(chunk.blocks, offset, copy);
+        return true;
+    }
+
+    // va chiamato tenendo il lock (in lettura o scrittura) dello stripe di id
+    private boolean contains(int id, int neighbor) {
+        Chunk chunk = chunkOf(id);
+        int offset = id & (CHUNK_SIZE - 1);
+
+        IntHashSet index = chunk.indexes[offset];
+        if (index != null) return index.contains(neighbor);
+
+        int[] block = chunk.blocks[offset];
+        if (block == null) return false;
+
+        for (int i = 1; i <= block[0]; i++) {
+            if (block[i] == neighbor) return true;
+        }
+
+        return false;
+    }
+
+    private long neighborsMask(int id) {
+        int[] block = blockOf(id);
+        if (block == null) return 0;
+
+        long mask = 0;
+        int size = (int) INTS.getAcquire(block, 0);
+        for (int i = 1; i <= size; i++) {
+            mask |= maskOf(block[i]);
+        }
+
+        return mask;
+    }
+
+    private Chunk chunkOf(int id) {
+        return chunks[id >>> CHUNK_BITS];
+    }
+
+    private int[] blockOf(int id) {
+        return (int[]) BLOCKS.getAcquire(chunkOf(id).blocks, id & (CHUNK_SIZE - 1));
+    }
+
+    @SuppressWarnings("unchecked")
+    private N nodeOf(int id) {
+        return (N) NODES.getAcquire(chunkOf(id).nodes, id & (CHUNK_SIZE - 1));
+    }
+
+    private int stripeOf(int id) {
+        return id & (STRIPES - 1);
+    }
+
+    private long maskOf(int id) {
+        return 1L << stripeOf(id);
+    }
+
+    // i lock vengono presi in ordine crescente di indice..
+    private void lockWrite(long mask) {
+        for (long m = mask; m != 0; m &= m - 1) {
+            stripes[Long.numberOfTrailingZeros(m)].writeLock().lock();
+        }
+    }
+
+    // ..e rilasciati in ordine inverso
+    private void unlockWrite(long mask) {
+        for (long m = mask; m != 0; m &= ~Long.highestOneBit(m)) {
+            stripes[63 - Long.numberOfLeadingZeros(m)].writeLock().unlock();
+        }
+    }
+
+    private static final class Chunk {
+        private final Object[] nodes = new Object[CHUNK_SIZE];
+        private final int[][] blocks = new int[CHUNK_SIZE][];
+        private final IntHashSet[] indexes = new IntHashSet[CHUNK_SIZE];
+    }
+
+    // Vista immutabile dei vicini di un nodo in un certo istante.
+    // I nodi vengono ricavati dagli id solo durante l iterazione; un vicino rimosso nel frattempo dal grafo viene saltato.
+    // Gli id non vengono riutilizzati, quindi un vicino saltato non ricompare: size() e contains() seguono la stessa
+    // regola e sono sempre coerenti con un iterazione iniziata nello stesso momento
+    private final class NodeSet extends AbstractSet<N> {
+        private final int owner;
+        private final int[] block;
+        private final int size;
+
+        private NodeSet(int owner, int[] block, int size) {
+            this.owner = owner;
+            this.block = block;
+            this.size = size;
+        }
+
+        @Override
+        public Iterator<N> iterator() {
+            return new Iterator<>() {
+                private int i = 1;
+                private N next = advance();
+
+                private N advance() {
+                    while (i <= size) {
+                        N n = nodeOf(block[i++]);
+                        if (n != null) return n;
+                    }
+
+                    return null;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return next != null;
+                }
+
+                @Override
+                public N next() {
+                    if (next == null) throw new NoSuchElementException();
+
+                    N n = next;
+                    next = advance();
+                    return n;
+                }
+            };
+        }
+
+        // conta solo i vicini ancora presenti nel grafo, come l iterazione
+        @Override
+        public int size() {
+            int count = 0;
+            for (int i = 1; i <= size; i++) {
+                if (nodeOf(block[i]) != null) count++;
+            }
+
+            return count;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            for (int i = 1; i <= size; i++) {
+                if (nodeOf(block[i]) != null) return false;
+            }
+
+            return true;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            Integer boxedId = ids.get(o);
+            if (boxedId == null) return false;
+            int id = boxedId;
+            if (nodeOf(id) == null) return false;
+
+            // se lo snapshot coincide ancora con la lista corrente del nodo, basta l indice (se esiste).
+            // Altrimenti la lista è cambiata dopo lo snapshot e si scorre il block dello snapshot
+            ReentrantReadWriteLock.ReadLock lock = stripes[stripeOf(owner)].readLock();
+            lock.lock();
+            try {
+                Chunk chunk = chunkOf(owner);
+                int offset = owner & (CHUNK_SIZE - 1);
+                IntHashSet index = chunk.indexes[offset];
+                if (index != null && chunk.blocks[offset] == block && block[0] == size) return index.contains(id);
+            } finally {
+                lock.unlock();
+            }
+
+            for (int i = 1; i <= size; i++) {
+                if (block[i] == id) return true;
+            }
+
+            return false;
+        }
+    }
+}
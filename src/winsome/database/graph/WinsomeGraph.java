@@ -1,96 +1,70 @@
 package winsome.database.graph;
 
-import com.google.common.graph.GraphBuilder;
-import com.google.common.graph.MutableGraph;
-import winsome.database.Database;
 import winsome.database.graph.graphNodes.Node;
 
-import java.io.File;
-import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Set;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+/*
+    Grafo non orientato del database.
+    Le liste di adiacenza sono mantenute da uno StripedAdjacencyStore, che associa ad ogni nodo un id intero
+    e memorizza gli archi in array di interi.
+    La sincronizzazione non avviene con un lock globale, ma per gruppi di nodi (vedi StripedAdjacencyStore),
+    in modo che scritture su nodi diversi (ad esempio like su post di utenti diversi) possano avvenire in parallelo.
+    Il grafo non viene salvato: al riavvio viene ricreato dal LogLoader.
+ */
 public class WinsomeGraph {
-    private MutableGraph<Node> graph;
-    private ReentrantReadWriteLock rwlock;
+    private StripedAdjacencyStore<Node> graph;
 
-    public WinsomeGraph(Database db) {
-        graph = GraphBuilder.undirected().allowsSelfLoops(false).build();
-        rwlock = new ReentrantReadWriteLock();
-
-        File dbFolder = new File(Database.getName());
-        if (!dbFolder.exists()) {
-            if (!dbFolder.mkdir()) {
-                System.err.println("Errore nella creazione della cartella del grafo");
-                System.exit(-1);
-            }
-
-            File jsonsFolder = new File(Database.getName() + File.separator + "jsons");
-            if (!jsonsFolder.mkdir()) {
-                System.err.println("Errore nella creazione della cartella jsons");
-                System.exit(-1);
-            }
-        }
-        GraphLoader loader = new GraphLoader(db, this);
-        try {
-            loader.loadGraph();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+    public WinsomeGraph() {
+        graph = new StripedAdjacencyStore<>();
     }
 
     @SuppressWarnings("UnusedReturnValue")
     public boolean putEdge(Node n1, Node n2) {
-        rwlock.writeLock().lock();
-        boolean inserted = graph.putEdge(n1, n2);
-        rwlock.writeLock().unlock();
+        return graph.putEdge(n1, n2);
+    }
+
+    // aggiunge tutti gli archi del gruppo con una sola acquisizione dei lock e svuota il gruppo
+    public void putEdges(EdgeBatch batch) {
+        if (batch.from.isEmpty()) return;
 
-        return inserted;
+        graph.putEdges(batch.from, batch.to);
+        batch.from.clear();
+        batch.to.clear();
     }
 
     public Set<Node> adjacentNodes(Node n) {
-        rwlock.readLock().lock();
-        Set<Node> set = graph.adjacentNodes(n);
-        rwlock.readLock().unlock();
-
-        return set;
+        return graph.adjacentNodes(n);
     }
 
     @SuppressWarnings("UnusedReturnValue")
     public boolean removeNode(Node n) {
-        rwlock.writeLock().lock();
-        boolean deleted = graph.removeNode(n);
-        rwlock.writeLock().unlock();
-
-        return deleted;
+        return graph.removeNode(n);
     }
 
     @SuppressWarnings("UnusedReturnValue")
     public boolean removeEdge(Node n1, Node n2) {
-        rwlock.writeLock().lock();
-        boolean deleted = graph.removeEdge(n1, n2);
-        rwlock.writeLock().unlock();
-
-        return deleted;
+        return graph.removeEdge(n1, n2);
     }
 
     public boolean hasEdgeConnecting(Node n1, Node n2) {
-        rwlock.readLock().lock();
-        boolean ok = graph.hasEdgeConnecting(n1, n2);
-        rwlock.readLock().unlock();
-
-        return ok;
+        return graph.hasEdgeConnecting(n1, n2);
     }
 
-    public MutableGraph<Node> getGraph() {
-        return graph;
-    }
+    // archi raccolti per essere aggiunti tutti insieme con putEdges() (caricamento del database).
+    // Non è thread-safe: ogni thread usa il suo
+    public static class EdgeBatch {
+        private final ArrayList<Node> from = new ArrayList<>();
+        private final ArrayList<Node> to = new ArrayList<>();
 
-    private String pathof(String username) {
-        return "graphDB" + File.separator + username;
-    }
+        public void add(Node n1, Node n2) {
+            from.add(n1);
+            to.add(n2);
+        }
 
-    private String jsonPathOf(String filename) {
-        return "graphDB" + File.separator + "jsons" + File.separator + filename + ".json";
+        public int size() {
+            return from.size();
+        }
     }
 }
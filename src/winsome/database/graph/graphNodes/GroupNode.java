@@ -1,7 +1,5 @@
 package winsome.database.graph.graphNodes;
 
-import java.util.Objects;
-
 public class GroupNode implements Node {
     private String label;
     private Node parent;
@@ -17,14 +15,16 @@ public class GroupNode implements Node {
 
     @Override
     public int hashCode() {
-        if (parent == null) return Objects.hash(label);
+        // calcolato senza Objects.hash() per non allocare ad ogni ricerca nel grafo
+        if (parent == null) return label.hashCode();
 
-        return Objects.hash(parent.hashCode(), label);
+        return 31 * parent.hashCode() + label.hashCode();
     }
 
     @Override
     public boolean equals(Object obj) {
         if (obj instanceof GroupNode g) {
+            if (!label.equals(g.label)) return false;
             if (g.parent != null && parent == null) return false;
             if (g.parent == null && parent != null) return false;
             if (g.parent == null) return true;
@@ -0,0 +1,125 @@
+package winsome.database.log;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/*
+    DataInput che legge direttamente da un ByteBuffer (di solito una parte di un segmento mappato in memoria),
+    senza copiare i byte in un array: i record vengono decodificati dalla memoria del file.
+    Come DataInputStream, se i byte finiscono prima del valore richiesto viene lanciata EOFException
+ */
+class BufferInput implements DataInput {
+    private final ByteBuffer buffer;
+
+    BufferInput(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    @Override
+    public void readFully(byte[] b) throws IOException {
+        readFully(b, 0, b.length);
+    }
+
+    @Override
+    public void readFully(byte[] b, int off, int len) throws IOException {
+        need(len);
+        buffer.get(b, off, len);
+    }
+
+    @Override
+    public int skipBytes(int n) {
+        int skipped = Math.max(0, Math.min(n, buffer.remaining()));
+        buffer.position(buffer.position() + skipped);
+        return skipped;
+    }
+
+    @Override
+    public boolean readBoolean() throws IOException {
+        return readByte() != 0;
+    }
+
+    @Override
+    public byte readByte() throws IOException {
+        need(1);
+        return buffer.get();
+    }
+
+    @Override
+    public int readUnsignedByte() throws IOException {
+        return readByte() & 0xFF;
+    }
+
+    @Override
+    public short readShort() throws IOException {
+        need(2);
+        return buffer.getShort();
+    }
+
+    @Override
+    public int readUnsignedShort() throws IOException {
+        return readShort() & 0xFFFF;
+    }
+
+    @Override
+    public char readChar() throws IOException {
+        need(2);
+        return buffer.getChar();
+    }
+
+    @Override
+    public int readInt() throws IOException {
+        need(4);
+        return buffer.getInt();
+    }
+
+    @Override
+    public long readLong() throws IOException {
+        need(8);
+        return buffer.getLong();
+    }
+
+    @Override
+    public float readFloat() throws IOException {
+        need(4);
+        return buffer.getFloat();
+    }
+
+    @Override
+    public double readDouble() throws IOException {
+        need(8);
+        return buffer.getDouble();
+    }
+
+    // come DataInputStream.readLine(): ogni byte diventa un char, la riga finisce con \n, \r o \r\n
+    // (esclusi) e alla fine del buffer viene restituito null se non è stato letto niente
+    @Override
+    public String readLine() {
+        if (!buffer.hasRemaining()) return null;
+
+        StringBuilder line = new StringBuilder();
+        while (buffer.hasRemaining()) {
+            char c = (char) (buffer.get() & 0xFF);
+            if (c == '\n') break;
+            if (c == '\r') {
+                if (buffer.hasRemaining() && buffer.get(buffer.position()) == '\n') buffer.get();
+                break;
+            }
+
+            line.append(c);
+        }
+
+        return line.toString();
+    }
+
+    @Override
+    public String readUTF() throws IOException {
+        return DataInputStream.readUTF(this);
+    }
+
+    private void need(int n) throws EOFException {
+        if (buffer.remaining() < n) throw new EOFException();
+    }
+}
@@ -0,0 +1,64 @@
+package winsome.database.log;
+
+/*
+    Quando il log viene forzato sul disco (FileChannel.force()):
+    - NEVER: mai, ci pensa il sistema operativo. Un crash della macchina può perdere gli ultimi record
+    - BATCH: dopo ogni gruppo di record scritto. Chi scrive un record aspetta che il suo gruppo sia sul disco
+    - INTERVAL: al più ogni interval millisecondi. Chi scrive non aspetta e si possono perdere al più
+      gli ultimi interval millisecondi di modifiche
+
+    Nel file di configurazione del database: FSYNC=never, FSYNC=batch oppure FSYNC=<N>ms (ad esempio FSYNC=100ms)
+ */
+public class FsyncPolicy {
+    public enum TYPE {
+        NEVER,
+        BATCH,
+        INTERVAL
+    }
+
+    public static final FsyncPolicy NEVER = new FsyncPolicy(TYPE.NEVER, 0);
+    public static final FsyncPolicy BATCH = new FsyncPolicy(TYPE.BATCH, 0);
+
+    private final TYPE type;
+    private final long interval; // millisecondi, solo per INTERVAL
+
+    private FsyncPolicy(TYPE type, long interval) {
+        this.type = type;
+        this.interval = interval;
+    }
+
+    public static FsyncPolicy every(long millis) {
+        if (millis <= 0) throw new IllegalArgumentException("Intervallo non valido: " + millis);
+
+        return new FsyncPolicy(TYPE.INTERVAL, millis);
+    }
+
+    public static FsyncPolicy parse(String s) throws IllegalArgumentException {
+        String value = s.trim().toLowerCase();
+        switch (value) {
+            case "never" -> {
+                return NEVER;
+            }
+            case "batch" -> {
+                return BATCH;
+            }
+        }
+
+        if (!value.matches("^[0-9]+ms$")) throw new IllegalArgumentException("Politica di fsync non valida: " + s);
+
+        return every(Long.parseLong(value.substring(0, value.length() - 2)));
+    }
+
+    public TYPE getType() {
+        return type;
+    }
+
+    public long getInterval() {
+        return interval;
+    }
+
+    @Override
+    public String toString() {
+        return type == TYPE.INTERVAL ? interval + "ms" : type.name().toLowerCase();
+    }
+}
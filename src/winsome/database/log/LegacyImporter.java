@@ -0,0 +1,199 @@
+package winsome.database.log;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import winsome.database.Database;
+import winsome.database.tables.Comment;
+import winsome.database.tables.Like;
+import winsome.database.tables.Post;
+import winsome.database.tables.User;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/*
+    Conversione del vecchio formato del database nel write-ahead log.
+    Prima del log, il grafo era salvato in un file di testo per utente (righe POST;id, COMMENT;id;NEW_ENTRY
+    e LIKE;id;NEW_ENTRY, le righe cancellate iniziano con #), in un file json per ogni commento e like
+    (cartella jsons) e nel file rewins (righe username;idPost).
+
+    La conversione viene fatta una sola volta, al primo avvio con un log vuoto: ogni riga valida diventa un record
+    del log e poi il grafo viene ricreato dal LogLoader come per un qualsiasi riavvio.
+    I vecchi file non vengono cancellati, ma non vengono più letti
+ */
+public class LegacyImporter {
+    private final Database db;
+    private final WriteAheadLog log;
+    private final Gson gson;
+
+    public LegacyImporter(Database db, WriteAheadLog log) {
+        this.db = db;
+        this.log = log;
+        this.gson = new Gson();
+    }
+
+    // true se nella cartella del database c'è almeno un file utente del vecchio formato
+    public static boolean hasLegacyData() {
+        File[] users = legacyUserFiles();
+        return users != null && users.length > 0;
+    }
+
+    // restituisce il numero di record scritti nel log
+    public int importAll() throws IOException {
+        int[] records = new int[1];
+        forEachLine((username, type, id, newEntry) -> {
+            switch (type) {
+                case "POST" -> {
+                    Post p = db.getPost(UUID.fromString(id));
+                    if (p == null || !p.getAuthor().equals(username)) return;
+
+                    log.logPost(p);
+                }
+                case "COMMENT" -> {
+                    Comment c = readJson(id, Comment.class);
+                    if (c == null) return;
+
+                    log.logComment(c);
+                    if (!newEntry) log.logEntryConsumed(c.getId());
+                }
+                case "LIKE" -> {
+                    Like l = readJson(id, Like.class);
+                    if (l == null) return;
+
+                    log.logVote(l);
+                    if (!newEntry) log.logEntryConsumed(l.getId());
+                }
+                default -> {
+                    return;
+                }
+            }
+
+            records[0]++;
+        });
+
+        return records[0] + importRewins();
+    }
+
+    // id dei commenti e like delle righe valide dei file utente che non si trovano nel log
+    // (ad esempio perché il file json è rovinato). Se la lista è vuota i vecchi file possono essere cancellati
+    public List<String> missing() throws IOException {
+        ArrayList<String> missing = new ArrayList<>();
+        forEachLine((username, type, id, newEntry) -> {
+            if (!type.equals("COMMENT") && !type.equals("LIKE")) return;
+
+            if (!new File(jsonsFolder(), id + ".json").exists()) return; // già mancante nel vecchio formato
+            try {
+                if (!log.read(UUID.fromString(id), (t, in) -> {})) missing.add(id);
+            } catch (IllegalArgumentException e) {
+                missing.add(id);
+            }
+        });
+
+        return missing;
+    }
+
+    // cancella i file del vecchio formato: file utente, file dei rewin e cartella jsons.
+    // Restituisce il numero di file cancellati
+    public static int deleteLegacyFiles() {
+        int deleted = 0;
+        File[] users = legacyUserFiles();
+        if (users != null) {
+            for (File f : users) {
+                if (f.delete()) deleted++;
+            }
+        }
+
+        File rewins = new File(Database.getName() + File.separator + "rewins");
+        if (rewins.exists() && rewins.delete()) deleted++;
+
+        File[] jsons = jsonsFolder().listFiles(f -> f.isFile() && f.getName().endsWith(".json"));
+        if (jsons != null) {
+            for (File f : jsons) {
+                if (f.delete()) deleted++;
+            }
+        }
+        if (!jsonsFolder().delete() && jsonsFolder().exists()) {
+            System.err.println("Impossibile cancellare la cartella " + jsonsFolder());
+        }
+
+        return deleted;
+    }
+
+    // passa a visitor ogni riga valida dei file utente (username, tipo, id, NEW_ENTRY),
+    // saltando gli utenti che non esistono più nelle tabelle
+    private void forEachLine(LineVisitor visitor) throws IOException {
+        File[] users = legacyUserFiles();
+        if (users == null) return;
+
+        for (File file : users) {
+            String username = file.getName();
+            if (db.getUser(username) == null) continue;
+
+            try (BufferedReader in = new BufferedReader(new FileReader(file))) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (line.startsWith("#") || line.isBlank()) continue;
+
+                    String[] record = line.split(";", 3);
+                    if (record.length < 2) continue;
+
+                    // NEW_ENTRY se la ricompensa non è ancora stata calcolata, ######### altrimenti
+                    boolean newEntry = record.length == 3 && !record[2].startsWith("#") && !record[2].isBlank();
+                    visitor.line(username, record[0], record[1], newEntry);
+                }
+            }
+        }
+    }
+
+    // la data dei rewin non era salvata su file, quindi si usa quella del post
+    private int importRewins() throws IOException {
+        File f = new File(Database.getName() + File.separator + "rewins");
+        if (!f.exists()) return 0;
+
+        int records = 0;
+        try (BufferedReader in = new BufferedReader(new FileReader(f))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith("#") || line.isBlank()) continue;
+
+                String[] record = line.split(";", 2);
+                User u = db.getUser(record[0]);
+                Post p = db.getPost(UUID.fromString(record[1].trim()));
+                if (u == null || p == null) continue;
+
+                log.logRewin(u.getUsername(), p.getId(), p.getTimestamp());
+                records++;
+            }
+        }
+
+        return records;
+    }
+
+    private <T> T readJson(String id, Class<T> type) {
+        File f = new File(jsonsFolder(), id + ".json");
+        if (!f.exists()) return null;
+
+        try (JsonReader reader = new JsonReader(new FileReader(f))) {
+            return gson.fromJson(reader, type);
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private static File jsonsFolder() {
+        return new File(Database.getName() + File.separator + "jsons");
+    }
+
+    // i file utente sono tutti i file della cartella del database, tranne il file dei rewin e le tabelle
+    private static File[] legacyUserFiles() {
+        File dbFolder = new File(Database.getName());
+        return dbFolder.listFiles(f -> f.isFile() && !f.getName().equals("rewins") && !f.getName().endsWith(".json"));
+    }
+
+    private interface LineVisitor {
+        void line(String username, String type, String id, boolean newEntry) throws IOException;
+    }
+}
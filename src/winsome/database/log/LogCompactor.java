@@ -0,0 +1,324 @@
+package winsome.database.log;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.UUID;
+
+/*
+    Compattazione online del write-ahead log.
+    Il log cresce sempre: un post cancellato lascia nel log il suo POST con i suoi commenti, like e rewin, un like
+    cambiato lascia il VOTE precedente, un rewin tolto (o tolto e rifatto) lascia i suoi REWIN e REWIN_REMOVED,
+    un follow tolto lascia i suoi FOLLOW e UNFOLLOW.
+    Questo thread riscrive, mentre il database è in funzione, i segmenti chiusi (mai quello in cui si scrive) in cui
+    i record inutili occupano almeno MIN_GARBAGE dello spazio, partendo dal più frammentato. Restano solo i record che
+    servono ancora per ricreare il grafo (e i follow e i portafogli):
+    - USER: sempre
+    - POST: finché il post non viene cancellato (l ultimo record con il suo id non è un POST_REMOVED)
+    - COMMENT ed ENTRY_CONSUMED: finché esiste il post del commento o del like
+    - VOTE: finché esiste il post, e solo l ultimo record di ogni like
+    - REWIN: finché esiste il post, e solo se è l ultimo record della coppia (utente, post) (vedi LogRecord.key()):
+      un rewin tolto viene quindi tolto anche dal log e la ricerca nell indice costa O(log n), senza guardare il grafo
+    - REWIN_REMOVED: come REWIN, ma dal segmento più vecchio viene sempre tolto (non c'è più un REWIN da annullare).
+      Si può fare perché i rewin esistono solo nel log: i rewinners e i contatori del post non vengono salvati nelle
+      tabelle (sono transient in Post), quindi nessuna tabella può contenere un rewin che il log ha tolto
+    - FOLLOW e UNFOLLOW: solo l ultimo record della coppia (utente, seguito). A differenza di REWIN_REMOVED, un UNFOLLOW
+      resta anche nel segmento più vecchio: i follow sono anche nelle tabelle, che possono essere state salvate prima
+      dell unfollow
+    - TRANSACTION: sempre (il LogLoader le confronta con il portafoglio salvato, vedi LogLoader.loadTransactions())
+    - POST_REMOVED: viene tolto solo dal segmento più vecchio, insieme al POST che annulla (che è nello stesso segmento
+      o è già stato tolto). Commenti, like e rewin del post possono trovarsi in segmenti più recenti (scritti mentre
+      il post veniva cancellato, oppure post e cancellazione divisi da un cambio di segmento): restano senza il loro
+      post finché i loro segmenti non vengono compattati, e intanto il LogLoader li ignora perché il post non viene
+      mai caricato (vedi LogLoader.loadedPost())
+
+    Il segmento compattato viene scritto in un file temporaneo, forzato sul disco e rinominato come generazione
+    successiva dello stesso segmento (<numero>.<generazione>.log), con un suo indice (vedi LogIndex.replace()).
+    Il file vecchio non viene sovrascritto, perché può essere ancora mappato da un LogReader: viene ritirato e
+    cancellato appena possibile (vedi LogIndex.retire()). Un segmento che resta vuoto viene ritirato allo stesso modo.
+    Letture e scritture sono limitate a budget byte al secondo, per lasciare la banda del disco al database.
+
+    Un giro di compattazione parte ogni PAUSE millisecondi. I byte inutili di ogni segmento vengono misurati leggendo
+    i segmenti una volta sola, al primo giro; da lì in poi vengono contati man mano: il log segnala ogni record reso
+    inutile da un record nuovo (vedi WriteAheadLog.pollGarbage()) e la sua dimensione viene aggiunta al suo segmento.
+    Un giro costa quindi quanto i record scritti dal giro precedente, più i segmenti da riscrivere.
+    Il conto è una stima per eccesso e per difetto (gli ENTRY_CONSUMED di un post cancellato non vengono contati):
+    serve solo a scegliere i segmenti, la riscrittura decide record per record
+ */
+public class LogCompactor extends Thread {
+    private static final long PAUSE = 60_000;
+    private static final double MIN_GARBAGE = 0.3;
+    private static final int CHUNK = 64 << 10; // byte scritti con una sola write
+
+    private final WriteAheadLog log;
+    private final long budget; // byte al secondo
+    private final HashMap<Long, Long> garbage; // segmento -> byte inutili (stimati)
+    private boolean measured; // i segmenti sono già stati misurati (primo giro)
+    private final HashMap<UUID, Boolean> removedPosts; // post cancellati, solo per il giro corrente
+    private long spent; // byte letti e scritti nel giro corrente
+    private long roundStart;
+
+    // statistiche dall avvio
+    private long segments, reclaimed, dropped;
+
+    public LogCompactor(WriteAheadLog log, long budget) {
+        this.log = log;
+        this.budget = budget;
+        this.garbage = new HashMap<>();
+        this.removedPosts = new HashMap<>();
+        log.trackGarbage();
+        setName("LOG-COMPACTOR");
+        setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+        while (!isInterrupted()) {
+            try {
+                Thread.sleep(PAUSE);
+                compact();
+            } catch (InterruptedException | InterruptedIOException e) {
+                break;
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // spazio recuperato dall avvio del database
+    public synchronized String report() {
+        return String.format("Compattazione: %d segmenti riscritti, %d record tolti, %d KB recuperati",
+                segments, dropped, reclaimed / 1024);
+    }
+
+    // un giro di compattazione: vengono aggiornati i byte inutili di ogni segmento chiuso,
+    // poi vengono riscritti i segmenti abbastanza frammentati, dal più frammentato
+    private void compact() throws IOException {
+        log.getIndex().deleteRetired();
+        File[] all = log.segments();
+        File[] sealed = log.sealedSegments();
+        removedPosts.clear();
+        spent = 0;
+        roundStart = System.nanoTime();
+
+        if (!measured) {
+            measure(sealed, all);
+            measured = true;
+        } else {
+            collect(all);
+        }
+        if (sealed.length == 0) return;
+
+        long oldest = WriteAheadLog.numberOf(sealed[0]);
+        HashMap<Long, File> existing = new HashMap<>();
+        ArrayList<long[]> candidates = new ArrayList<>(); // {segmento, byte inutili, dimensione}
+        for (File f : sealed) {
+            long segment = WriteAheadLog.numberOf(f);
+            long size = f.length();
+            long bytes = garbage.getOrDefault(segment, 0L);
+            existing.put(segment, f);
+            if (bytes > 0 && bytes >= size * MIN_GARBAGE) candidates.add(new long[]{segment, bytes, size});
+        }
+        garbage.keySet().removeIf(segment -> !existing.containsKey(segment) && segment < WriteAheadLog.numberOf(all[all.length - 1]));
+        candidates.sort(Comparator.comparingDouble(c -> -(double) c[1] / c[2]));
+
+        for (long[] c : candidates) {
+            compact(existing.get(c[0]), c[0] == oldest, all);
+            garbage.remove(c[0]);
+        }
+    }
+
+    // primo giro: i byte inutili di ogni segmento chiuso vengono misurati leggendo il segmento.
+    // Le segnalazioni arrivate fin qui sono già comprese nella misura
+    private void measure(File[] sealed, File[] all) throws IOException {
+        log.clearGarbage();
+
+        long oldest = sealed.length > 0 ? WriteAheadLog.numberOf(sealed[0]) : -1;
+        for (File f : sealed) {
+            long segment = WriteAheadLog.numberOf(f);
+            long bytes = f.length() - rewrite(f, segment == oldest, all, null, null, new long[2]);
+            if (bytes > 0) garbage.put(segment, bytes);
+        }
+    }
+
+    // i record resi inutili dopo il giro precedente vengono contati nel segmento in cui si trovano.
+    // Sono solo ricerche negli indici e letture della lunghezza dei record, niente scansioni dei segmenti
+    private void collect(File[] all) throws IOException {
+        LogIndex index = log.getIndex();
+        WriteAheadLog.Garbage g;
+        while ((g = log.pollGarbage()) != null) {
+            long segment = g.segment();
+            int position = g.position();
+            if (position < 0) {
+                long[] found = index.locateBefore(g.key(), g.segment(), all);
+                if (found == null) continue; // il primo record con quella chiave (ad esempio un like nuovo)
+
+                segment = found[0];
+                position = (int) found[1];
+            }
+
+            int size = index.recordSize(segment, position, all);
+            if (size > 0) garbage.merge(segment, (long) size, Long::sum);
+        }
+    }
+
+    private void compact(File f, boolean oldest, File[] all) throws IOException {
+        long t1 = System.currentTimeMillis();
+        long segment = WriteAheadLog.numberOf(f);
+        long before = f.length();
+        File tmp = new File(f.getParentFile(), f.getName() + ".compact");
+        HashMap<UUID, Integer> positions = new HashMap<>();
+        long[] records = new long[2]; // {tenuti, tolti}
+
+        long after;
+        try {
+            try (FileChannel out = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                write(out, WriteAheadLog.header());
+                after = rewrite(f, oldest, all, new Output(out), positions, records);
+                out.force(true);
+            }
+
+            if (records[0] == 0) {
+                if (!tmp.delete()) tmp.deleteOnExit();
+                log.getIndex().remove(segment, f);
+                after = 0;
+            } else {
+                log.getIndex().replace(segment, f, tmp, positions);
+            }
+        } catch (IOException e) {
+            if (tmp.exists() && !tmp.delete()) tmp.deleteOnExit();
+            throw e;
+        }
+
+        synchronized (this) {
+            segments++;
+            dropped += records[1];
+            reclaimed += before - after;
+        }
+        System.out.printf("Compattazione: segmento %d da %d KB a %d KB (%d record tolti, %d ms) | %s%n",
+                segment, before / 1024, after / 1024, records[1], System.currentTimeMillis() - t1, report());
+    }
+
+    // passa tutti i record validi del segmento e, se out non è null, scrive quelli che servono ancora.
+    // Restituisce la dimensione (header compreso) del segmento compattato; in records conta i record tenuti e tolti
+    private long rewrite(File f, boolean oldest, File[] all, Output out, HashMap<UUID, Integer> positions, long[] records) throws IOException {
+        long segment = WriteAheadLog.numberOf(f);
+        long[] size = {WriteAheadLog.HEADER_SIZE};
+
+        try (LogReader reader = new LogReader(f)) {
+            reader.records((type, position, payload) -> {
+                int length = 9 + payload.remaining(); // lunghezza, crc e tipo
+                throttle(length);
+                if (!live(type, segment, position, payload, oldest, all)) {
+                    records[1]++;
+                    return;
+                }
+
+                if (out != null) {
+                    UUID key = LogRecord.key(type, payload);
+                    if (key != null) positions.put(key, (int) size[0]);
+                    out.write(reader.bytes(position, length));
+                    throttle(length);
+                }
+                records[0]++;
+                size[0] += length;
+            });
+        }
+
+        if (out != null) out.flush();
+        return size[0];
+    }
+
+    private boolean live(LogRecord.TYPE type, long segment, int position, ByteBuffer payload, boolean oldest, File[] all) throws IOException {
+        return switch (type) {
+            case USER, TRANSACTION -> true;
+            case POST -> !removed(idAt(payload, 0), all);
+            case COMMENT -> !removed(idAt(payload, 16), all);
+            case VOTE -> !removed(idAt(payload, 16), all) && latest(type, payload, segment, position, all);
+            case REWIN -> !removed(LogRecord.rewinPost(payload), all) && latest(type, payload, segment, position, all);
+            case REWIN_REMOVED -> !oldest && !removed(LogRecord.rewinPost(payload), all) && latest(type, payload, segment, position, all);
+            case ENTRY_CONSUMED -> {
+                ByteBuffer interaction = log.getIndex().find(idAt(payload, 0), all);
+                yield interaction != null && interaction.limit() >= 33
+                        && (interaction.get(0) == LogRecord.TYPE.COMMENT.getCode() || interaction.get(0) == LogRecord.TYPE.VOTE.getCode())
+                        && !removed(idAt(interaction, 17), all);
+            }
+            case FOLLOW, UNFOLLOW -> latest(type, payload, segment, position, all);
+            case POST_REMOVED -> !oldest;
+        };
+    }
+
+    // true se l ultimo record del post è il suo POST_REMOVED (o se il post non è più nel log)
+    private boolean removed(UUID idPost, File[] all) throws IOException {
+        Boolean removed = removedPosts.get(idPost);
+        if (removed != null) return removed;
+
+        ByteBuffer record = log.getIndex().find(idPost, all);
+        removed = record == null || record.get(0) == LogRecord.TYPE.POST_REMOVED.getCode();
+        removedPosts.put(idPost, removed);
+        return removed;
+    }
+
+    // true se il record è l ultimo del log con la sua chiave (gli altri sono stati sostituiti da questo)
+    private boolean latest(LogRecord.TYPE type, ByteBuffer payload, long segment, int position, File[] all) throws IOException {
+        UUID key = LogRecord.key(type, payload);
+        if (key == null) return true;
+
+        long[] last = log.getIndex().locate(key, all);
+        return last == null || last[0] == segment && last[1] == position;
+    }
+
+    private static UUID idAt(ByteBuffer b, int offset) {
+        return new UUID(b.getLong(offset), b.getLong(offset + 8));
+    }
+
+    // aspetta finché i byte letti e scritti nel giro restano sotto il budget
+    private void throttle(long bytes) throws InterruptedIOException {
+        spent += bytes;
+        long ahead = spent * 1000 / budget - (System.nanoTime() - roundStart) / 1_000_000;
+        if (ahead <= 0) return;
+
+        try {
+            Thread.sleep(ahead);
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Compattazione interrotta");
+        }
+    }
+
+    private static void write(FileChannel out, ByteBuffer b) throws IOException {
+        while (b.hasRemaining()) {
+            out.write(b);
+        }
+    }
+
+    // i record tenuti vengono raccolti in un buffer e scritti a blocchi di CHUNK byte
+    private static class Output {
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+
+        Output(FileChannel channel) {
+            this.channel = channel;
+            this.buffer = ByteBuffer.allocateDirect(CHUNK);
+        }
+
+        void write(ByteBuffer record) throws IOException {
+            if (record.remaining() > buffer.remaining()) flush();
+            if (record.remaining() > buffer.capacity()) {
+                LogCompactor.write(channel, record);
+                return;
+            }
+
+            buffer.put(record);
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            LogCompactor.write(channel, buffer);
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,407 @@
+package winsome.database.log;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+    Indice per id dei record del log: per ogni post, commento, like e coppia (utente, post) rewinnata (record con
+    LogRecord.TYPE.isKeyed(), vedi LogRecord.key()) la posizione dell ultimo record con quella chiave, così un record
+    può essere riletto senza scorrere il log (vedi WriteAheadLog.read()).
+
+    - segmento corrente: una mappa in memoria, aggiornata dal WriteAheadLog dopo ogni scrittura
+    - segmenti chiusi: un file .idx accanto al segmento, con lo stesso nome (<numero>.idx o <numero>.<generazione>.idx,
+      vedi WriteAheadLog.segmentFile()), scritto quando il segmento viene chiuso.
+      Il file contiene un header (MAGIC, numero di voci e dimensione del segmento indicizzato) e le voci
+      [msb (long)] [lsb (long)] [posizione (int)] ordinate per id: la ricerca è binaria sul file mappato in memoria
+      e l indice non occupa heap.
+      Se il file manca o non corrisponde al segmento (segmento scritto prima dell indice, crash prima di scriverlo,
+      segmento compattato) viene ricreato leggendo il segmento la prima volta che serve. Se non può essere scritto
+      (ad esempio su Windows un file mappato non può essere sostituito) l indice resta solo in memoria
+
+    La ricerca parte dal segmento più recente, quindi per un like cambiato più volte si trova l ultimo record,
+    per un post cancellato il suo POST_REMOVED e per un rewin tolto il suo REWIN_REMOVED.
+
+    Non ci sono lock: ogni segmento chiuso già letto ha un Sealed immutabile (indice e lettore del segmento, mappati
+    una volta sola e usati da tutte le ricerche) e un segmento compattato viene sostituito da un nuovo Sealed con
+    una sola put (vedi replace()). La versione compattata è un file nuovo (generazione successiva), quindi nessun
+    file mappato viene mai sostituito: il file vecchio e il suo indice vengono cancellati quando nessuno li ha più
+    mappati (vedi retire()). Chi cerca usa sempre indice e lettore dello stesso Sealed, quindi non vede mai un
+    segmento compattato con l indice vecchio. Letture e scritture di file (indici da ricreare, indice del segmento
+    appena chiuso) avvengono senza bloccare nessuno: il thread LOG-WRITER e le ricerche non aspettano la compattazione
+ */
+class LogIndex {
+    private static final int MAGIC = 0x5753_4932; // "WSI2": dalla versione 2 sono indicizzati anche i rewin
+    private static final int HEADER_SIZE = 16;
+    private static final int ENTRY_SIZE = 20;
+
+    private final File dir;
+    private volatile Current current; // null finché il log non ha aperto un segmento in cui scrivere
+    private final ConcurrentHashMap<Long, Sealed> sealed; // segmenti chiusi già letti
+    private final Set<Long> removed; // segmenti cancellati dalla compattazione (i numeri non vengono riusati)
+    private final Set<File> retired; // file sostituiti o svuotati dalla compattazione, non ancora cancellati
+
+    LogIndex(File dir) {
+        this.dir = dir;
+        this.sealed = new ConcurrentHashMap<>();
+        this.removed = ConcurrentHashMap.newKeySet();
+        this.retired = ConcurrentHashMap.newKeySet();
+    }
+
+    // il log riapre un segmento esistente per aggiungere record: le posizioni vengono lette dal segmento
+    void open(long segment, File f) throws IOException {
+        Current c = current;
+        if (c != null && c.segment == segment) return;
+
+        ConcurrentHashMap<UUID, Integer> positions = new ConcurrentHashMap<>();
+        try (LogReader reader = new LogReader(f)) {
+            scan(reader, positions::put);
+        }
+        current = new Current(segment, f, positions);
+        sealed.remove(segment); // letto come segmento chiuso prima che il log lo riaprisse
+    }
+
+    // il log inizia a scrivere in un nuovo segmento. Le posizioni del segmento appena chiuso restano in memoria
+    // finché il thread LOG-INDEX non ha scritto il suo indice su file, così il thread LOG-WRITER non aspetta
+    void create(long segment) throws IOException {
+        Current old = current;
+        if (old != null) {
+            Sealed s = new Sealed(null, old.positions, new LogReader(old.file));
+            sealed.put(old.segment, s); // prima di cambiare il segmento corrente: chi cerca trova sempre le posizioni
+
+            Thread t = new Thread(() -> persist(old.segment, s), "LOG-INDEX");
+            t.setDaemon(true);
+            t.start();
+        }
+
+        current = new Current(segment, WriteAheadLog.segmentFile(dir, segment), new ConcurrentHashMap<>());
+    }
+
+    // chiamato solo da chi scrive il log, dopo aver scritto il record con quella chiave in position.
+    // Restituisce la posizione del record precedente con la stessa chiave nel segmento corrente, null se non c'è
+    Integer add(UUID key, int position) {
+        return current.positions.put(key, position);
+    }
+
+    // restituisce {segmento, posizione} dell ultimo record con quell id, null se non c'è.
+    // segments sono i segmenti del log in ordine: l ultimo è il segmento corrente
+    long[] locate(UUID id, File[] segments) throws IOException {
+        return locateBefore(id, Long.MAX_VALUE, segments);
+    }
+
+    // come locate(), ma cerca solo nei segmenti con numero minore di before
+    long[] locateBefore(UUID id, long before, File[] segments) throws IOException {
+        Found found = lookup(id, before, segments);
+        return found == null ? null : new long[]{found.segment, found.position};
+    }
+
+    // tipo e payload dell ultimo record con quell id, null se non c'è
+    ByteBuffer find(UUID id, File[] segments) throws IOException {
+        for (int attempt = 0; attempt < 2; attempt++) {
+            Found found = lookup(id, Long.MAX_VALUE, segments);
+            if (found == null) return null;
+
+            ByteBuffer record = found.reader().record(found.position);
+            if (record != null && id.equals(LogRecord.key(LogRecord.TYPE.of(record.get(0)), record.slice(1, record.limit() - 1)))) {
+                return record;
+            }
+
+            // l indice non corrisponde al segmento: viene ricreato leggendo il segmento
+            if (found.sealed == null) return null;
+            System.err.println("Indice del segmento " + found.segment + " non valido, verrà ricreato");
+            Sealed rebuilt = new Sealed(build(found.sealed.reader), null, found.sealed.reader);
+            if (sealed.replace(found.segment, found.sealed, rebuilt)) write(indexFile(found.sealed.reader.file()), rebuilt.index);
+        }
+
+        return null;
+    }
+
+    // dimensione (header compreso) del record che inizia in position, 0 se il segmento o il record non ci sono più
+    int recordSize(long segment, int position, File[] segments) throws IOException {
+        Current c = current;
+        if (c != null && c.segment == segment) return c.reader(position).recordSize(position);
+
+        for (File f : segments) {
+            if (WriteAheadLog.numberOf(f) != segment) continue;
+
+            Sealed s = sealed(segment, f);
+            return s == null ? 0 : s.reader.recordSize(position);
+        }
+
+        return 0;
+    }
+
+    // il segmento (chiuso) f viene sostituito dalla sua versione compattata, con le nuove posizioni dei record.
+    // La versione compattata prende il nome della generazione successiva: f non viene sovrascritto (su Windows un file
+    // mappato non può essere sostituito) ma ritirato, e chi lo sta leggendo continua ad usare la sua mappatura
+    void replace(long segment, File f, File compacted, Map<UUID, Integer> positions) throws IOException {
+        File target = WriteAheadLog.segmentFile(dir, segment, WriteAheadLog.generationOf(f) + 1);
+        ByteBuffer index = build(positions, compacted.length());
+        Files.move(compacted.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+
+        Sealed s = new Sealed(index, null, new LogReader(target));
+        sealed.put(segment, s);
+        retire(f);
+        persist(segment, s);
+    }
+
+    // il segmento (chiuso) f non contiene più nessun record valido
+    void remove(long segment, File f) {
+        removed.add(segment);
+        sealed.remove(segment);
+        retire(f);
+    }
+
+    // il segmento e il suo indice non fanno più parte del log (vedi WriteAheadLog.segments()) e vengono cancellati
+    // appena possibile: la mappatura di un LogReader viene rilasciata solo dal garbage collector e finché esiste
+    // alcuni sistemi (Windows) non permettono di cancellare il file
+    private void retire(File f) {
+        retired.add(f);
+        retired.add(indexFile(f));
+        deleteRetired();
+    }
+
+    // riprova a cancellare i file ritirati (la compattazione lo chiama ad ogni giro)
+    void deleteRetired() {
+        for (File f : retired) {
+            if (!f.exists() || f.delete()) retired.remove(f);
+        }
+    }
+
+    boolean isRetired(File f) {
+        return retired.contains(f);
+    }
+
+    // ultimo record con quell id nei segmenti con numero minore di before, dal più recente
+    private Found lookup(UUID id, long before, File[] segments) throws IOException {
+        Current c = current;
+        if (c != null && c.segment < before) {
+            Integer position = c.positions.get(id);
+            if (position != null) return new Found(c.segment, position, c, null);
+        }
+
+        for (int i = segments.length - 1; i >= 0; i--) {
+            long segment = WriteAheadLog.numberOf(segments[i]);
+            if (segment >= before || c != null && segment >= c.segment) continue;
+
+            Sealed s = sealed(segment, segments[i]);
+            if (s == null) continue; // segmento cancellato dalla compattazione
+
+            int position = s.search(id);
+            if (position >= 0) return new Found(segment, position, null, s);
+        }
+
+        return null;
+    }
+
+    // Sealed del segmento chiuso, letto (o ricreato) la prima volta che serve. null se il segmento non esiste più
+    private Sealed sealed(long segment, File f) throws IOException {
+        Sealed s = sealed.get(segment);
+        if (s != null) return s;
+        if (removed.contains(segment) || !f.exists()) return null;
+
+        LogReader reader;
+        try {
+            reader = new LogReader(f);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+
+        File idx = indexFile(f);
+        ByteBuffer index = map(idx, reader.size());
+        if (index == null) {
+            index = build(reader);
+            if (write(idx, index)) {
+                ByteBuffer mapped = map(idx, reader.size());
+                if (mapped != null) index = mapped;
+            }
+        }
+
+        // se nel frattempo la compattazione ha sostituito (o cancellato) il segmento, vale il suo Sealed
+        s = new Sealed(index, null, reader);
+        Sealed previous = sealed.putIfAbsent(segment, s);
+        if (previous != null) return previous;
+        if (removed.contains(segment)) {
+            sealed.remove(segment, s);
+            return null;
+        }
+
+        return s;
+    }
+
+    // l indice viene scritto su file e da lì in poi viene usato il file mappato.
+    // Se non può essere scritto resta in memoria (e verrà ricreato al prossimo avvio)
+    private void persist(long segment, Sealed s) {
+        File idx = indexFile(s.reader.file());
+        ByteBuffer index = s.index != null ? s.index : build(s.positions, s.reader.size());
+        if (write(idx, index)) {
+            try {
+                ByteBuffer mapped = map(idx, s.reader.size());
+                if (mapped != null) index = mapped;
+            } catch (IOException e) {
+                System.err.println("Impossibile leggere l indice " + idx.getName() + ": " + e.getMessage());
+            }
+        }
+
+        if (index != s.index) sealed.replace(segment, s, new Sealed(index, null, s.reader));
+    }
+
+    // posizione del record con quell id, -1 se non c'è
+    private static int search(ByteBuffer index, UUID id) {
+        long msb = id.getMostSignificantBits();
+        long lsb = id.getLeastSignificantBits();
+        int low = 0;
+        int high = index.getInt(4) - 1;
+
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int at = HEADER_SIZE + mid * ENTRY_SIZE;
+            int cmp = Long.compare(index.getLong(at), msb);
+            if (cmp == 0) cmp = Long.compare(index.getLong(at + 8), lsb);
+
+            if (cmp < 0) low = mid + 1;
+            else if (cmp > 0) high = mid - 1;
+            else return index.getInt(at + 16);
+        }
+
+        return -1;
+    }
+
+    // null se il file non esiste o non è l indice di un segmento grande segmentSize
+    private static ByteBuffer map(File idx, long segmentSize) throws IOException {
+        if (!idx.exists()) return null;
+
+        try (FileChannel c = FileChannel.open(idx.toPath(), StandardOpenOption.READ)) {
+            long size = c.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) return null;
+
+            ByteBuffer index = c.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (index.getInt(0) != MAGIC || (long) HEADER_SIZE + (long) index.getInt(4) * ENTRY_SIZE != size
+                    || index.getLong(8) != segmentSize) {
+                return null;
+            }
+
+            return index;
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private static ByteBuffer build(LogReader reader) throws IOException {
+        HashMap<UUID, Integer> positions = new HashMap<>();
+        scan(reader, positions::put);
+        return build(positions, reader.size());
+    }
+
+    // indice in memoria, nello stesso formato del file
+    private static ByteBuffer build(Map<UUID, Integer> positions, long segmentSize) {
+        ArrayList<UUID> ids = new ArrayList<>(positions.keySet());
+        ids.sort(Comparator.comparingLong(UUID::getMostSignificantBits).thenComparingLong(UUID::getLeastSignificantBits));
+
+        ByteBuffer index = ByteBuffer.allocate(HEADER_SIZE + ids.size() * ENTRY_SIZE);
+        index.putInt(MAGIC).putInt(ids.size()).putLong(segmentSize);
+        for (UUID id : ids) {
+            index.putLong(id.getMostSignificantBits()).putLong(id.getLeastSignificantBits()).putInt(positions.get(id));
+        }
+
+        return index.flip();
+    }
+
+    // file temporaneo (con un nome diverso per ogni scrittura) rinominato alla fine: un file .idx è sempre completo.
+    // Un indice scritto da chi ha letto il segmento prima di una compattazione non corrisponde più alla dimensione
+    // del segmento e verrà ricreato (vedi map())
+    private boolean write(File idx, ByteBuffer index) {
+        File tmp = null;
+        try {
+            tmp = File.createTempFile(idx.getName() + ".", ".tmp", dir);
+            try (FileChannel c = FileChannel.open(tmp.toPath(), StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer b = index.duplicate();
+                while (b.hasRemaining()) {
+                    c.write(b);
+                }
+            }
+
+            Files.move(tmp.toPath(), idx.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Impossibile scrivere l indice " + idx.getName() + ": " + e.getMessage());
+            if (tmp != null && tmp.exists() && !tmp.delete()) tmp.deleteOnExit();
+            return false;
+        }
+    }
+
+    private static void scan(LogReader reader, Entries entries) throws IOException {
+        reader.records((type, position, payload) -> {
+            UUID key = LogRecord.key(type, payload);
+            if (key != null) entries.put(key, position);
+        });
+    }
+
+    // indice del segmento f: stesso nome, con .idx al posto di .log
+    static File indexFile(File f) {
+        String name = f.getName();
+        return new File(f.getParentFile(), name.substring(0, name.length() - ".log".length()) + ".idx");
+    }
+
+    private interface Entries {
+        void put(UUID id, int position);
+    }
+
+    // segmento in cui scrive il log. Il lettore viene rimappato quando un record cercato è oltre la fine della mappatura
+    private static class Current {
+        private final long segment;
+        private final File file;
+        private final ConcurrentHashMap<UUID, Integer> positions;
+        private volatile LogReader reader;
+
+        Current(long segment, File file, ConcurrentHashMap<UUID, Integer> positions) {
+            this.segment = segment;
+            this.file = file;
+            this.positions = positions;
+        }
+
+        LogReader reader(int position) throws IOException {
+            LogReader r = reader;
+            if (r == null || r.recordSize(position) == 0) {
+                r = new LogReader(file);
+                reader = r;
+            }
+
+            return r;
+        }
+    }
+
+    // segmento chiuso: il suo indice (file mappato o buffer in memoria) oppure, finché l indice non è stato scritto,
+    // le posizioni che aveva come segmento corrente. Il lettore è lo stesso per tutte le ricerche
+    private static class Sealed {
+        private final ByteBuffer index;
+        private final Map<UUID, Integer> positions;
+        private final LogReader reader;
+
+        Sealed(ByteBuffer index, Map<UUID, Integer> positions, LogReader reader) {
+            this.index = index;
+            this.positions = positions;
+            this.reader = reader;
+        }
+
+        int search(UUID id) {
+            if (index != null) return LogIndex.search(index, id);
+
+            Integer position = positions.get(id);
+            return position == null ? -1 : position;
+        }
+    }
+
+    // record trovato nel segmento corrente (current) o in un segmento chiuso (sealed)
+    private record Found(long segment, int position, Current current, Sealed sealed) {
+        LogReader reader() throws IOException {
+            return sealed != null ? sealed.reader : current.reader(position);
+        }
+    }
+}
@@ -0,0 +1,415 @@
+package winsome.database.log;
+
+import winsome.database.Database;
+import winsome.database.graph.WinsomeGraph;
+import winsome.database.graph.graphNodes.GraphNode;
+import winsome.database.graph.graphNodes.GroupNode;
+import winsome.database.graph.graphNodes.Node;
+import winsome.database.tables.Comment;
+import winsome.database.tables.Like;
+import winsome.database.tables.Post;
+import winsome.database.tables.User;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Oggetto che ricrea il grafo al riavvio del database rileggendo il write-ahead log.
+    Le tabelle (vedi TableStore) vengono caricate prima dal Database e contengono i dati degli utenti e dei post
+    (follow, portafoglio, interazioni): il log aggiunge quello che nelle tabelle non c'è.
+    I FOLLOW e UNFOLLOW vengono riapplicati nell ordine del log: l ultimo record di ogni coppia decide, anche se la
+    tabella era già aggiornata. Le transazioni invece si sommano, quindi vengono aggiunte solo quelle che mancano
+    nel portafoglio salvato (vedi loadTransactions())
+
+    1 utenti: vengono creati i nodi di tutti gli utenti della tabella, in parallelo (un gruppo di utenti per task)
+    2 log: i segmenti vengono letti e decodificati in parallelo (crc, UUID, stringhe, oggetti), mentre questo thread
+      applica i record nell ordine del log. Gli archi vengono aggiunti al grafo a gruppi (EdgeBatch), prendendo i lock
+      una volta per gruppo
+    3 rewin: vengono applicati alla fine, quando esistono tutti i post. Durante la lettura del log si tiene solo
+      l ultimo stato di ogni coppia (utente, post)
+    4 i like e i commenti che non sono ancora stati usati per le ricompense vengono messi nell entries storage,
+      le transazioni mancanti vengono aggiunte ai portafogli e i post della tabella che non compaiono nel log
+      (o che sono stati cancellati) vengono tolti dalla tabella
+
+    Al termine, report() restituisce il tempo di ogni fase.
+    Nota: un record che si riferisce ad un utente o un post che non esiste viene ignorato.
+ */
+public class LogLoader {
+    private static final int USERS_PER_TASK = 1024;
+    private static final int BATCH_SIZE = 4096; // archi per gruppo
+
+    private final Database db;
+    private final WinsomeGraph graph;
+    private final HashSet<UUID> loadedPosts; // post ricreati nel grafo
+    private final LinkedHashMap<UUID, Object> newEntries; // like e commenti non ancora usati per le ricompense
+    private final HashSet<UUID> consumed; // ENTRY_CONSUMED letti prima del loro like o commento (vedi loadVote())
+    private final LinkedHashMap<String, Rewin> rewins; // "username;idPost" -> ultimo rewin (non rimosso)
+    private final LinkedHashMap<Transaction, Integer> transactions; // transazione -> numero di record uguali nel log
+    private final WinsomeGraph.EdgeBatch edges;
+
+    // statistiche per il report
+    private long usersTime, logTime, applyTime, rewinsTime, entriesTime;
+    private int segments;
+    private long records;
+
+    public LogLoader(Database db, WinsomeGraph graph) {
+        this.db = db;
+        this.graph = graph;
+        this.loadedPosts = new HashSet<>();
+        this.newEntries = new LinkedHashMap<>();
+        this.consumed = new HashSet<>();
+        this.rewins = new LinkedHashMap<>();
+        this.transactions = new LinkedHashMap<>();
+        this.edges = new WinsomeGraph.EdgeBatch();
+    }
+
+    public void load(WriteAheadLog log) throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            long t1 = System.nanoTime();
+            loadUsers(pool);
+
+            long t2 = System.nanoTime();
+            log.replay(pool, threads, Segment::new, this::apply);
+            flush();
+
+            long t3 = System.nanoTime();
+            for (Rewin r : rewins.values()) {
+                loadRewin(r);
+            }
+            flush();
+
+            long t4 = System.nanoTime();
+            for (Object entry : newEntries.values()) {
+                if (entry instanceof Like l && loadedPosts.contains(l.getIdPost())) db.getEntriesStorage().add(l);
+                if (entry instanceof Comment c && loadedPosts.contains(c.getIdPost())) db.getEntriesStorage().add(c);
+            }
+
+            loadTransactions();
+
+            Iterator<UUID> it = db.getTablePosts().keySet().iterator();
+            while (it.hasNext()) {
+                UUID id = it.next();
+                if (loadedPosts.contains(id)) continue;
+
+                it.remove();
+                db.postRemoved(id);
+            }
+            long t5 = System.nanoTime();
+
+            usersTime = t2 - t1;
+            logTime = t3 - t2;
+            rewinsTime = t4 - t3;
+            entriesTime = t5 - t4;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // tempo di ogni fase del caricamento. Nella fase del log, la lettura dei segmenti avviene in parallelo
+    // all applicazione dei record, quindi viene riportato anche il tempo passato ad applicarli
+    public String report() {
+        return String.format("utenti %d ms | log %d ms (%d segmenti, %d record, applicazione %d ms) | rewin %d ms | entries %d ms",
+                ms(usersTime), ms(logTime), segments, records, ms(applyTime), ms(rewinsTime), ms(entriesTime));
+    }
+
+    private static long ms(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    // i nodi degli utenti non dipendono l uno dall altro: ogni task crea quelli di un gruppo di utenti
+    // e aggiunge i loro archi con un solo EdgeBatch
+    private void loadUsers(ForkJoinPool pool) {
+        ArrayList<User> users = new ArrayList<>(db.getTableUsers().values());
+        ArrayList<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (int from = 0; from < users.size(); from += USERS_PER_TASK) {
+            List<User> group = users.subList(from, Math.min(from + USERS_PER_TASK, users.size()));
+            tasks.add(pool.submit(() -> {
+                WinsomeGraph.EdgeBatch batch = new WinsomeGraph.EdgeBatch();
+                for (User u : group) {
+                    loadUser(u, batch);
+                }
+                graph.putEdges(batch);
+            }));
+        }
+
+        for (ForkJoinTask<?> t : tasks) {
+            t.join();
+        }
+    }
+
+    // applica i record decodificati di un segmento, nell ordine in cui sono stati scritti
+    private void apply(Segment s) {
+        long t = System.nanoTime();
+        for (int i = 0; i < s.types.size(); i++) {
+            Object value = s.values.get(i);
+            switch (s.types.get(i)) {
+                case USER -> {
+                    User u = (User) value;
+                    if (db.getUser(u.getUsername()) == null) {
+                        db.getTableUsers().put(u.getUsername(), u);
+                        db.userChanged(u);
+                        loadUser(u, edges);
+                    }
+                }
+                case POST -> loadPost((Post) value);
+                case POST_REMOVED -> removePost((UUID) value);
+                case COMMENT -> loadComment((Comment) value);
+                case VOTE -> loadVote((Like) value);
+                case REWIN -> {
+                    Rewin r = (Rewin) value;
+                    rewins.remove(r.key());
+                    rewins.put(r.key(), r);
+                }
+                case REWIN_REMOVED -> rewins.remove(((Rewin) value).key());
+                case ENTRY_CONSUMED -> {
+                    if (newEntries.remove((UUID) value) == null) consumed.add((UUID) value);
+                }
+                case FOLLOW -> loadFollow((Follow) value, true);
+                case UNFOLLOW -> loadFollow((Follow) value, false);
+                case TRANSACTION -> transactions.merge((Transaction) value, 1, Integer::sum);
+            }
+
+            if (edges.size() >= BATCH_SIZE) flush();
+        }
+
+        segments++;
+        records += s.types.size();
+        applyTime += System.nanoTime() - t;
+    }
+
+    private void flush() {
+        graph.putEdges(edges);
+    }
+
+    // Viene creato un nodo utente, i relativi tagsGroup e postsGroup e i tag vengono appesi al nodo tagsGroup
+    private void loadUser(User u, WinsomeGraph.EdgeBatch batch) {
+        GraphNode<String> node = new GraphNode<>(u.getUsername());
+
+        String TAGS_LABEL = "TAGS";
+        GroupNode tagsGroup = new GroupNode(TAGS_LABEL, node);
+
+        String POSTS_LABEL = "POSTS";
+        GroupNode postsGroup = new GroupNode(POSTS_LABEL, node);
+
+        batch.add(node, tagsGroup);
+        batch.add(node, postsGroup);
+
+        u.setPostsGroupNode(postsGroup);
+        u.setTagsGroupNode(tagsGroup);
+
+        for (String tag : u.getTags()) {
+            GraphNode<String> tagNode = new GraphNode<>(tag);
+            batch.add(tagsGroup, tagNode);
+        }
+
+        db.getTagIndex().add(u.getUsername(), u.getTags());
+    }
+
+    // viene caricato un post sse il suo autore esiste.
+    // Se il post è nella tabella, viene usato quello (contiene le interazioni), altrimenti quello del record.
+    // Viene creato un nodo post, i relativi likesGroup e commentsGroup
+    private void loadPost(Post record) {
+        UUID idPost = record.getId();
+        User u = db.getUser(record.getAuthor());
+        if (u == null || loadedPosts.contains(idPost)) return;
+
+        Post p = db.getTablePosts().get(idPost);
+        if (p == null) {
+            p = record;
+            db.getTablePosts().put(idPost, p);
+            db.postChanged(p);
+        }
+
+        GraphNode<UUID> postNode = new GraphNode<>(p.getId());
+        edges.add(u.getPostsGroupNode(), postNode);
+
+        String COMMENTS_LABEL = "COMMENTS";
+        GroupNode comments = new GroupNode(COMMENTS_LABEL, postNode);
+
+        String LIKES_LABEL = "LIKES";
+        GroupNode likes = new GroupNode(LIKES_LABEL, postNode);
+
+        edges.add(postNode, comments);
+        edges.add(postNode, likes);
+
+        p.setPostNode(postNode);
+        p.setCommentsGroupNode(comments);
+        p.setLikesGroupNode(likes);
+
+        u.getTimeline().add(p.getId(), postNode, p.getTimestamp());
+        loadedPosts.add(idPost);
+    }
+
+    // vengono tolti il post, i suoi like e commenti (come in Database.removePost()).
+    // I rewin non sono ancora stati applicati: quelli del post verranno scartati perché il post non esiste più
+    private void removePost(UUID idPost) {
+        Post p = db.getTablePosts().remove(idPost);
+        if (p == null) return;
+
+        db.postRemoved(idPost);
+        if (!loadedPosts.remove(idPost)) return;
+
+        flush(); // gli archi del post devono essere già nel grafo
+        for (Node node : graph.adjacentNodes(p.getCommentsGroupNode())) {
+            if (node instanceof GraphNode<?> g && g.getValue() instanceof UUID) continue;
+            graph.removeNode(node);
+        }
+
+        for (Node node : graph.adjacentNodes(p.getLikesGroupNode())) {
+            if (node instanceof GraphNode<?> g && g.getValue() instanceof UUID) continue;
+            graph.removeNode(node);
+        }
+
+        User author = db.getUser(p.getAuthor());
+        if (author != null) author.getTimeline().remove(idPost);
+
+        p.clearLikes();
+        p.clearComments();
+        graph.removeNode(p.getCommentsGroupNode());
+        graph.removeNode(p.getLikesGroupNode());
+        graph.removeNode(p.getPostNode());
+    }
+
+    // il commento viene appeso al post di riferimento. Finché non arriva il suo ENTRY_CONSUMED è una entry nuova.
+    // Come per i like, l ENTRY_CONSUMED può precedere il commento (nei log scritti prima che il Database scrivesse
+    // il COMMENT prima di rendere il commento visibile alle ricompense)
+    private void loadComment(Comment c) {
+        Post p = loadedPost(c.getIdPost());
+        if (p == null || db.getUser(c.getAuthor()) == null) return;
+
+        if (p.addComment(c)) {
+            edges.add(p.getCommentsGroupNode(), new GraphNode<>(c));
+            if (!consumed.remove(c.getId())) newEntries.put(c.getId(), c);
+        }
+    }
+
+    // un record VOTE con l id di un like già caricato è un cambio di tipo (like -> dislike o viceversa).
+    // Un utente può votare un post una volta sola: un eventuale secondo voto con un altro id non viene caricato.
+    // La compattazione tiene solo l ultimo VOTE di un like, che può trovarsi dopo il suo ENTRY_CONSUMED
+    private void loadVote(Like l) {
+        Post p = loadedPost(l.getIdPost());
+        if (p == null || db.getUser(l.getUsername()) == null) return;
+
+        Like old = p.getLikeOf(l.getUsername());
+        if (old != null) {
+            if (old.getId().equals(l.getId())) {
+                synchronized (old) {
+                    p.changeLikeType(old, l.getType());
+                }
+            }
+            return;
+        }
+
+        p.putLikeIfAbsent(l);
+        edges.add(p.getLikesGroupNode(), new GraphNode<>(l));
+        if (!consumed.remove(l.getId())) newEntries.put(l.getId(), l);
+    }
+
+    // un rewin esiste se esistono l utente e il post originale
+    private void loadRewin(Rewin r) {
+        User u = db.getUser(r.username);
+        Post p = loadedPost(r.idPost);
+        if (u == null || p == null) return;
+
+        edges.add(u.getPostsGroupNode(), p.getPostNode());
+        p.addRewinner(r.username);
+        u.getTimeline().add(r.idPost, p.getPostNode(), r.time);
+    }
+
+    // follow (o unfollow) di username verso followed, se esistono entrambi gli utenti
+    private void loadFollow(Follow f, boolean follow) {
+        User u = db.getUser(f.username);
+        User followed = db.getUser(f.followed);
+        if (u == null || followed == null) return;
+
+        boolean b1 = follow ? u.addFollow(f.followed) : u.removeFollow(f.followed);
+        boolean b2 = follow ? followed.addFollowers(f.username) : followed.removeFollowers(f.username);
+        if (b1) db.userChanged(u);
+        if (b2) db.userChanged(followed);
+    }
+
+    // le transazioni non hanno un id: la tabella salvata può contenere già una parte di quelle del log (quelle
+    // assegnate prima dell ultimo salvataggio dell utente), quindi di ogni (utente, data, importo) vengono aggiunte
+    // solo le copie che il portafoglio non ha ancora
+    private void loadTransactions() {
+        for (Map.Entry<Transaction, Integer> e : transactions.entrySet()) {
+            Transaction t = e.getKey();
+            User u = db.getUser(t.username());
+            if (u == null) continue;
+
+            int missing = e.getValue() - u.getWallet().count(t.time(), t.amount());
+            for (int i = 0; i < missing; i++) {
+                u.addTransaction(t.amount(), t.time());
+            }
+            if (missing > 0) db.userChanged(u);
+        }
+    }
+
+    private Post loadedPost(UUID idPost) {
+        return loadedPosts.contains(idPost) ? db.getPost(idPost) : null;
+    }
+
+    // record di un segmento decodificati da un thread del pool (vedi WriteAheadLog.replay()), in attesa di essere applicati
+    private static class Segment implements LogReader.Handler {
+        private final ArrayList<LogRecord.TYPE> types = new ArrayList<>();
+        private final ArrayList<Object> values = new ArrayList<>();
+
+        @Override
+        public void apply(LogRecord.TYPE type, DataInput in) throws IOException {
+            Object value = switch (type) {
+                case USER -> new User(in.readUTF(), in.readUTF(), LogRecord.readTags(in));
+                case POST -> new Post(LogRecord.readUUID(in), in.readUTF(), in.readUTF(), in.readUTF(), in.readLong());
+                case POST_REMOVED, ENTRY_CONSUMED -> LogRecord.readUUID(in);
+                case COMMENT -> new Comment(LogRecord.readUUID(in), LogRecord.readUUID(in), in.readUTF(), in.readUTF(), in.readLong());
+                case VOTE -> {
+                    UUID idLike = LogRecord.readUUID(in);
+                    UUID idPost = LogRecord.readUUID(in);
+                    String username = in.readUTF();
+                    yield new Like(idLike, idPost, LogRecord.readVoteType(in), username);
+                }
+                case REWIN -> new Rewin(in.readUTF(), LogRecord.readUUID(in), in.readLong());
+                case REWIN_REMOVED -> new Rewin(in.readUTF(), LogRecord.readUUID(in), 0);
+                case FOLLOW, UNFOLLOW -> new Follow(in.readUTF(), in.readUTF());
+                case TRANSACTION -> new Transaction(in.readUTF(), in.readLong(), in.readLong());
+            };
+
+            types.add(type);
+            values.add(value);
+        }
+    }
+
+    private static class Rewin {
+        private final String username;
+        private final UUID idPost;
+        private final long time;
+
+        Rewin(String username, UUID idPost, long time) {
+            this.username = username;
+            this.idPost = idPost;
+            this.time = time;
+        }
+
+        String key() {
+            return username + ";" + idPost;
+        }
+    }
+
+    private static class Follow {
+        private final String username;
+        private final String followed;
+
+        Follow(String username, String followed) {
+            this.username = username;
+            this.followed = followed;
+        }
+    }
+
+    private record Transaction(String username, long time, long amount) {
+    }
+}
@@ -0,0 +1,56 @@
+package winsome.database.log;
+
+/*
+    Statistiche del group commit del log:
+    - batch: numero di gruppi scritti e numero di record per gruppo
+    - flush: tempo per scrivere un gruppo (fsync compreso, se fatto)
+    - lag: da quando il record più vecchio del gruppo è stato aggiunto a quando il gruppo viene scritto
+
+    Viene aggiornato solo dal thread che scrive il log, mentre il report può essere chiesto da qualsiasi thread
+ */
+public class LogMetrics {
+    private long batches;
+    private long records;
+    private long bytes;
+    private long fsyncs;
+    private int maxBatch;
+    private long flushNanos;
+    private long maxFlushNanos;
+    private long lagNanos;
+    private long maxLagNanos;
+
+    synchronized void record(int batchSize, long batchBytes, long flush, long lag, boolean forced) {
+        batches++;
+        records += batchSize;
+        bytes += batchBytes;
+        if (forced) fsyncs++;
+
+        maxBatch = Math.max(maxBatch, batchSize);
+        flushNanos += flush;
+        maxFlushNanos = Math.max(maxFlushNanos, flush);
+        lagNanos += lag;
+        maxLagNanos = Math.max(maxLagNanos, lag);
+    }
+
+    synchronized void fsync() {
+        fsyncs++;
+    }
+
+    public synchronized long getBatches() {
+        return batches;
+    }
+
+    public synchronized long getRecords() {
+        return records;
+    }
+
+    // report delle statistiche dall avvio del database
+    public synchronized String report() {
+        if (batches == 0) return "Log: nessun record scritto";
+
+        return String.format("Log: %d record in %d batch (media %.1f, max %d), %d KB, %d fsync | " +
+                        "flush medio %.2f ms (max %.2f ms) | lag medio %.2f ms (max %.2f ms)",
+                records, batches, (double) records / batches, maxBatch, bytes / 1024, fsyncs,
+                flushNanos / 1e6 / batches, maxFlushNanos / 1e6, lagNanos / 1e6 / batches, maxLagNanos / 1e6);
+    }
+}
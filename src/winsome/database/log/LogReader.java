@@ -0,0 +1,148 @@
+package winsome.database.log;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/*
+    Lettore sequenziale di un segmento del write-ahead log.
+    Il segmento viene mappato in memoria (sola lettura): lunghezza e crc di ogni record vengono letti dalla
+    mappatura, il crc viene calcolato direttamente sui byte del file e il record viene decodificato senza copiarlo
+    in un array (vedi BufferInput). Non ci sono system call per la lettura, quindi la scansione di un segmento
+    è limitata solo dalla velocità della memoria (e del disco la prima volta che una pagina viene letta).
+
+    read() passa ogni record ad un Handler che lo decodifica, scan() passa solo tipo, posizione e dimensione
+    di ogni record (per chi deve solo sapere dove si trovano i record, senza decodificarli).
+    record() restituisce un solo record, di cui si conosce già la posizione (vedi LogIndex).
+
+    La lettura si ferma al primo record non valido (lunghezza fuori dai limiti, record troncato o crc sbagliato):
+    read() e scan() restituiscono la posizione in cui finisce l ultimo record valido, così chi apre il log in
+    scrittura può tagliare il segmento in quel punto (scrittura interrotta a metà da un crash)
+ */
+public class LogReader implements Closeable {
+    private static final int RECORD_HEADER = 8; // lunghezza e crc
+
+    private final File file;
+    private final MappedByteBuffer map;
+
+    public LogReader(File file) throws IOException {
+        this.file = file;
+        // la mappatura resta valida anche dopo aver chiuso il canale
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) throw new IOException("Segmento del log troppo grande: " + file.getName());
+
+            this.map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+    // legge tutti i record validi del segmento e li passa a handler.
+    // Restituisce la posizione (in byte) della fine dell ultimo record valido
+    public long read(Handler handler) throws IOException {
+        return records((type, position, payload) -> {
+            try {
+                handler.apply(type, new BufferInput(payload));
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Record del log non applicabile (" + type + ") in " + file.getName() + ": " + e);
+            }
+        });
+    }
+
+    // passa a scanner la posizione e la dimensione (header compreso) di ogni record valido, senza decodificarlo.
+    // Restituisce la posizione (in byte) della fine dell ultimo record valido
+    public long scan(Scanner scanner) throws IOException {
+        return records((type, position, payload) -> scanner.record(type, position, RECORD_HEADER + 1 + payload.remaining()));
+    }
+
+    // tipo e payload del record che inizia alla posizione passata (trovata con LogIndex), null se non è valido
+    ByteBuffer record(long position) {
+        if (position < WriteAheadLog.HEADER_SIZE || position > map.limit()) return null;
+
+        return recordAt((int) position, new CRC32());
+    }
+
+    // dimensione (header compreso) del record che inizia in position, 0 se non è tutto nella mappatura
+    int recordSize(int position) {
+        int limit = map.limit();
+        if (position < WriteAheadLog.HEADER_SIZE || limit - position < RECORD_HEADER) return 0;
+
+        int length = map.getInt(position);
+        if (length < 1 || length > limit - position - RECORD_HEADER) return 0;
+        return RECORD_HEADER + length;
+    }
+
+    File file() {
+        return file;
+    }
+
+    // byte mappati del segmento (la dimensione del file quando il lettore è stato aperto)
+    int size() {
+        return map.limit();
+    }
+
+    // i byte del segmento da position a position + size (ad esempio un record intero, header compreso)
+    ByteBuffer bytes(int position, int size) {
+        return map.slice(position, size);
+    }
+
+    long records(Visitor visitor) throws IOException {
+        if (map.limit() < WriteAheadLog.HEADER_SIZE || !WriteAheadLog.readHeader(new BufferInput(map.slice(0, WriteAheadLog.HEADER_SIZE)))) {
+            System.err.println("Segmento del log non valido: " + file.getName());
+            return 0;
+        }
+
+        int position = WriteAheadLog.HEADER_SIZE;
+        CRC32 crc = new CRC32();
+        ByteBuffer record;
+
+        while ((record = recordAt(position, crc)) != null) {
+            LogRecord.TYPE type = LogRecord.TYPE.of(record.get(0));
+            if (type != null) {
+                visitor.record(type, position, record.slice(1, record.limit() - 1));
+            }
+
+            position += RECORD_HEADER + record.limit();
+        }
+
+        return position;
+    }
+
+    // tipo e payload del record che inizia in position, null se il record non è valido (o se il segmento finisce lì)
+    private ByteBuffer recordAt(int position, CRC32 crc) {
+        int limit = map.limit();
+        if (limit - position < RECORD_HEADER) return null;
+
+        int length = map.getInt(position);
+        int checksum = map.getInt(position + 4);
+        if (length < 1 || length > LogRecord.MAX_SIZE || length > limit - position - RECORD_HEADER) return null;
+
+        ByteBuffer record = map.slice(position + RECORD_HEADER, length);
+        crc.reset();
+        crc.update(record);
+        if ((int) crc.getValue() != checksum) return null;
+
+        return record.rewind();
+    }
+
+    // la mappatura viene rilasciata dal garbage collector, quando il lettore (e ogni buffer restituito da record()
+    // e bytes()) non è più raggiungibile: non può essere tolta prima, perché quei buffer leggono direttamente il file.
+    // Per questo la compattazione non sovrascrive mai un segmento, ma ne ritira il file (vedi LogIndex.retire())
+    @Override
+    public void close() {
+    }
+
+    public interface Handler {
+        void apply(LogRecord.TYPE type, DataInput in) throws IOException;
+    }
+
+    public interface Scanner {
+        void record(LogRecord.TYPE type, long position, int size) throws IOException;
+    }
+
+    interface Visitor {
+        void record(LogRecord.TYPE type, int position, ByteBuffer payload) throws IOException;
+    }
+}
@@ -0,0 +1,231 @@
+package winsome.database.log;
+
+import winsome.database.tables.Comment;
+import winsome.database.tables.Like;
+import winsome.database.tables.Post;
+import winsome.database.tables.User;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/*
+    Formato dei record del write-ahead log.
+    Sul disco ogni record è: [lunghezza (int)] [crc32 (int)] [tipo (byte)] [payload],
+    dove la lunghezza conta tipo e payload e il crc32 è calcolato sugli stessi byte.
+
+    I payload sono scritti con DataOutputStream (UUID = 2 long, stringhe = writeUTF) e vengono letti dal LogLoader
+    nello stesso ordine. Ogni metodo di questa classe riporta il formato del payload che scrive
+ */
+public class LogRecord {
+    public static final int MAX_SIZE = 1 << 20; // un record più grande di così è sicuramente un record rovinato
+
+    public enum TYPE {
+        USER(1),                // creazione di un utente
+        POST(2, true),          // creazione di un post
+        POST_REMOVED(3, true),  // cancellazione di un post (con i suoi like e commenti)
+        COMMENT(4, true),       // nuovo commento
+        VOTE(5, true),          // nuovo like/dislike oppure cambio del tipo di un like già presente (stesso id)
+        REWIN(6, true),         // rewin di un post
+        REWIN_REMOVED(7, true), // rimozione di un rewin
+        ENTRY_CONSUMED(8),      // like o commento già usato per il calcolo delle ricompense
+        FOLLOW(9, true),        // un utente inizia a seguirne un altro
+        UNFOLLOW(10, true),     // un utente smette di seguirne un altro
+        TRANSACTION(11);        // ricompensa aggiunta al portafoglio di un utente
+
+        private final byte code;
+        private final boolean keyed; // il record ha una chiave nell indice del log (vedi key() e LogIndex)
+
+        TYPE(int code) {
+            this(code, false);
+        }
+
+        TYPE(int code, boolean keyed) {
+            this.code = (byte) code;
+            this.keyed = keyed;
+        }
+
+        public byte getCode() {
+            return code;
+        }
+
+        public boolean isKeyed() {
+            return keyed;
+        }
+
+        public static TYPE of(byte code) {
+            for (TYPE t : values()) {
+                if (t.code == code) return t;
+            }
+
+            return null;
+        }
+    }
+
+    // USER: username password numeroTags tag1 tag2 ...
+    public static byte[] user(User u) {
+        return encode(out -> {
+            out.writeUTF(u.getUsername());
+            out.writeUTF(u.getPassword());
+            out.writeInt(u.getTags().size());
+            for (String tag : u.getTags()) {
+                out.writeUTF(tag);
+            }
+        });
+    }
+
+    // POST: id autore titolo contenuto data
+    public static byte[] post(Post p) {
+        return encode(out -> {
+            writeUUID(out, p.getId());
+            out.writeUTF(p.getAuthor());
+            out.writeUTF(p.getTitle());
+            out.writeUTF(p.getContent());
+            out.writeLong(p.getTimestamp());
+        });
+    }
+
+    // POST_REMOVED / ENTRY_CONSUMED: id
+    public static byte[] id(UUID id) {
+        return encode(out -> writeUUID(out, id));
+    }
+
+    // COMMENT: id idPost autore contenuto data
+    public static byte[] comment(Comment c) {
+        return encode(out -> {
+            writeUUID(out, c.getId());
+            writeUUID(out, c.getIdPost());
+            out.writeUTF(c.getAuthor());
+            out.writeUTF(c.getContent());
+            out.writeLong(c.getTimestamp());
+        });
+    }
+
+    // VOTE: id idPost username tipo (0 = like, 1 = dislike)
+    public static byte[] vote(Like l) {
+        return encode(out -> {
+            writeUUID(out, l.getId());
+            writeUUID(out, l.getIdPost());
+            out.writeUTF(l.getUsername());
+            out.writeByte(l.getType() == Like.TYPE.LIKE ? 0 : 1);
+        });
+    }
+
+    // REWIN: username idPost data
+    public static byte[] rewin(String username, UUID idPost, long time) {
+        return encode(out -> {
+            out.writeUTF(username);
+            writeUUID(out, idPost);
+            out.writeLong(time);
+        });
+    }
+
+    // REWIN_REMOVED: username idPost
+    public static byte[] rewinRemoved(String username, UUID idPost) {
+        return encode(out -> {
+            out.writeUTF(username);
+            writeUUID(out, idPost);
+        });
+    }
+
+    // FOLLOW / UNFOLLOW: username (chi segue) followed (chi viene seguito)
+    public static byte[] follow(String username, String followed) {
+        return encode(out -> {
+            out.writeUTF(username);
+            out.writeUTF(followed);
+        });
+    }
+
+    // TRANSACTION: username data importo (in virgola fissa, vedi WalletLedger)
+    public static byte[] transaction(String username, long time, long amount) {
+        return encode(out -> {
+            out.writeUTF(username);
+            out.writeLong(time);
+            out.writeLong(amount);
+        });
+    }
+
+    // chiave del record nell indice del log, null se il record non ne ha una.
+    // Per post, commenti e like è l id con cui inizia il payload. Un rewin non ha un id: la chiave è ricavata dai byte
+    // di username e idPost, uguali in REWIN e REWIN_REMOVED, così l indice trova l ultimo record di ogni coppia.
+    // Lo stesso vale per FOLLOW e UNFOLLOW, con i byte dei 2 username preceduti dal codice di FOLLOW
+    // (così la chiave di una coppia non può coincidere con quella di un rewin)
+    static UUID key(TYPE type, ByteBuffer payload) {
+        if (type == null || !type.isKeyed()) return null;
+
+        if (type == TYPE.FOLLOW || type == TYPE.UNFOLLOW) {
+            byte[] bytes = new byte[1 + payload.limit()];
+            bytes[0] = TYPE.FOLLOW.getCode();
+            payload.get(0, bytes, 1, payload.limit());
+            return UUID.nameUUIDFromBytes(bytes);
+        }
+
+        if (type == TYPE.REWIN || type == TYPE.REWIN_REMOVED) {
+            if (payload.limit() < 2) return null;
+            int length = 2 + (payload.getShort(0) & 0xFFFF) + 16;
+            if (payload.limit() < length) return null;
+
+            byte[] bytes = new byte[length];
+            payload.get(0, bytes);
+            return UUID.nameUUIDFromBytes(bytes);
+        }
+
+        if (payload.limit() < 16) return null;
+        return new UUID(payload.getLong(0), payload.getLong(8));
+    }
+
+    // chiave dei record REWIN e REWIN_REMOVED di username su idPost (la stessa calcolata da key())
+    static UUID rewinKey(String username, UUID idPost) {
+        return UUID.nameUUIDFromBytes(rewinRemoved(username, idPost));
+    }
+
+    // idPost di un REWIN o REWIN_REMOVED, che segue lo username
+    static UUID rewinPost(ByteBuffer payload) {
+        int offset = 2 + (payload.getShort(0) & 0xFFFF);
+        return new UUID(payload.getLong(offset), payload.getLong(offset + 8));
+    }
+
+    public static UUID readUUID(DataInput in) throws IOException {
+        return new UUID(in.readLong(), in.readLong());
+    }
+
+    public static List<String> readTags(DataInput in) throws IOException {
+        int n = in.readInt();
+        ArrayList<String> tags = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            tags.add(in.readUTF());
+        }
+
+        return tags;
+    }
+
+    public static Like.TYPE readVoteType(DataInput in) throws IOException {
+        return in.readByte() == 0 ? Like.TYPE.LIKE : Like.TYPE.DISLIKE;
+    }
+
+    private static void writeUUID(DataOutputStream out, UUID id) throws IOException {
+        out.writeLong(id.getMostSignificantBits());
+        out.writeLong(id.getLeastSignificantBits());
+    }
+
+    private static byte[] encode(Writer writer) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writer.write(out);
+        } catch (IOException e) {
+            // su un ByteArrayOutputStream non può succedere
+            throw new IllegalStateException(e);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    private interface Writer {
+        void write(DataOutputStream out) throws IOException;
+    }
+}
@@ -0,0 +1,702 @@
+package winsome.database.log;
+
+import winsome.database.tables.Comment;
+import winsome.database.tables.Like;
+import winsome.database.tables.Post;
+import winsome.database.tables.User;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+/*
+    Write-ahead log del database: un unico log binario, in sola aggiunta, in cui viene scritta ogni modifica
+    al grafo (utenti, post, commenti, like, rewin), ai follow e ai portafogli (le ricompense assegnate), insieme
+    ai like e commenti già usati per le ricompense. Al riavvio il LogLoader rilegge il log dall inizio e ricostruisce
+    il grafo, i follow e le transazioni che le tabelle non avevano ancora salvato.
+    Nel log non c'è il numero di interazioni dei post, che viene salvato solo con le tabelle. Inoltre i like e i commenti
+    vengono segnati come usati quando il calcolo delle ricompense li prende, non quando assegna le ricompense:
+    un crash tra i 2 momenti perde le ricompense di quel giro
+
+    Il log è diviso in segmenti (file <numero>.log nella cartella del log): quando un segmento supera SEGMENT_SIZE
+    se ne apre uno nuovo. Ogni segmento inizia con un header (MAGIC e VERSION) e contiene i record
+    nel formato descritto in LogRecord, ognuno con il suo crc32.
+    Accanto ai segmenti chiusi c'è il loro indice per id (<numero>.idx, vedi LogIndex): post, commenti e like possono
+    essere riletti dal log con read() senza scorrere i segmenti.
+    Un segmento compattato diventa <numero>.<generazione>.log (vedi LogCompactor): dei file con lo stesso numero vale
+    quello con la generazione più alta, gli altri vengono cancellati all avvio se non è stato possibile prima.
+
+    I record vengono scritti nell ordine in cui arrivano (append prende un lock), quindi chi modifica un oggetto
+    deve scrivere il record mentre tiene il lock che ordina le modifiche di quell oggetto.
+
+    Group commit: dopo startGroupCommit() i record non vengono più scritti da chi li aggiunge, ma messi in coda.
+    Un solo thread (LOG-WRITER) prende tutta la coda, la scrive con una sola write sul segmento corrente
+    e, a seconda della FsyncPolicy, la forza sul disco una volta per gruppo. Con la politica BATCH chi aggiunge
+    un record aspetta che il suo gruppo sia sul disco: i thread che scrivono nello stesso momento
+    condividono la stessa fsync. Prima di startGroupCommit() (caricamento e conversione del vecchio formato)
+    i record vengono scritti subito, senza fsync
+
+    Un errore di scrittura o di fsync ferma il log (vedi fail()): il segmento viene riportato alla fine dell ultimo
+    record scritto per intero, così un record a metà non nasconde al LogLoader quelli scritti dopo, e da lì in poi
+    ogni record aggiunto (o non ancora sul disco, per chi aspetta con BATCH) fa lanciare UncheckedIOException:
+    nessuno crede salvata una modifica che non è nel log
+ */
+public class WriteAheadLog implements Closeable {
+    private static final int MAGIC = 0x57534C47; // "WSLG"
+    private static final int VERSION = 1;
+    static final int HEADER_SIZE = 8;
+    public static final long SEGMENT_SIZE = 64L << 20; // 64MB
+
+    private final File dir;
+    private FileChannel channel; // segmento in cui vengono aggiunti i record
+    private long segment; // numero del segmento corrente
+    private long size; // dimensione del segmento corrente
+    private boolean sealed; // l ultimo segmento non può essere tagliato: i nuovi record vanno in un segmento nuovo
+
+    private final ReentrantLock lock;
+    private final Condition newRecords; // il writer aspetta che ci siano record in coda
+    private final Condition durable; // chi scrive aspetta che il suo record sia sul disco (solo con BATCH)
+    private ArrayList<ByteBuffer> pending; // record in coda, nell ordine in cui sono stati aggiunti
+    private long pendingSince; // istante (nanosecondi) in cui è stato aggiunto il record più vecchio in coda
+    private long lastLsn; // numero dell ultimo record aggiunto
+    private long durableLsn; // numero dell ultimo record scritto (e forzato, se la politica lo prevede)
+    private volatile FsyncPolicy policy;
+    private Thread writer; // thread del group commit, null se i record vengono scritti subito
+    private volatile boolean running;
+    private boolean stopped; // LOG-WRITER è terminato: i record non ancora scritti non lo saranno più
+    private IOException failure; // errore che ha fermato il log, null finché il log funziona
+    private final LogMetrics metrics;
+    private final LogIndex index; // posizione dei record per id (vedi read())
+    private volatile ConcurrentLinkedQueue<Garbage> garbage; // record diventati inutili, null se non c'è compattazione
+
+    public WriteAheadLog(String path) throws IOException {
+        this.dir = new File(path);
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Impossibile creare la cartella del log: " + path);
+        }
+
+        this.lock = new ReentrantLock();
+        this.newRecords = lock.newCondition();
+        this.durable = lock.newCondition();
+        this.pending = new ArrayList<>();
+        this.policy = FsyncPolicy.NEVER;
+        this.metrics = new LogMetrics();
+        this.index = new LogIndex(dir);
+
+        // file temporanei di una compattazione o di un indice interrotti da un crash, e indici di segmenti che non
+        // esistono più (scritti da una ricerca che ha letto il segmento mentre veniva ritirato)
+        File[] leftovers = dir.listFiles(f -> f.getName().endsWith(".tmp") || f.getName().endsWith(".compact")
+                || f.getName().endsWith(".idx") && !new File(dir, f.getName().replaceFirst("\\.idx$", ".log")).exists());
+        if (leftovers != null) {
+            for (File f : leftovers) {
+                if (!f.delete()) System.err.println("Impossibile cancellare " + f.getName());
+            }
+        }
+
+        // generazioni vecchie di segmenti compattati, non cancellate prima del riavvio (ancora mappate o crash)
+        HashMap<Long, File> latest = new HashMap<>();
+        for (File f : segmentFiles()) {
+            File other = latest.get(numberOf(f));
+            if (other == null) {
+                latest.put(numberOf(f), f);
+                continue;
+            }
+
+            File old = generationOf(other) < generationOf(f) ? other : f;
+            latest.put(numberOf(f), old == other ? f : other);
+            for (File stale : new File[]{old, LogIndex.indexFile(old)}) {
+                if (stale.exists() && !stale.delete()) System.err.println("Impossibile cancellare " + stale.getName());
+            }
+        }
+    }
+
+    // da qui in poi i record vengono scritti a gruppi dal thread LOG-WRITER
+    public void startGroupCommit(FsyncPolicy policy) {
+        lock.lock();
+        try {
+            if (writer != null) return;
+
+            this.policy = policy;
+            running = true;
+            writer = new Thread(this::writeLoopUntilStopped, "LOG-WRITER");
+            writer.start();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public LogMetrics getMetrics() {
+        return metrics;
+    }
+
+    public FsyncPolicy getPolicy() {
+        return policy;
+    }
+
+    // true se il log non contiene nessun segmento (database nuovo o salvato con il vecchio formato)
+    public boolean isEmpty() {
+        return segments().length == 0;
+    }
+
+    // rilegge tutti i segmenti, dal più vecchio al più recente, e passa ogni record valido a handler.
+    // Se l ultimo segmento finisce con un record rovinato (crash durante la scrittura), viene tagliato
+    // in quel punto: i record successivi verranno scritti subito dopo l ultimo record valido
+    public void replay(LogReader.Handler handler) throws IOException {
+        File[] files = segments();
+        for (int i = 0; i < files.length; i++) {
+            long end;
+            try (LogReader reader = new LogReader(files[i])) {
+                end = reader.read(handler);
+            }
+
+            checkTail(files[i], end, i == files.length - 1);
+        }
+    }
+
+    // come replay(), ma i segmenti vengono letti in parallelo dai thread di pool: ogni segmento viene passato ad
+    // un suo handler (creato da handlers, di solito decodifica i record senza applicarli) e gli handler vengono
+    // consegnati a consumer uno alla volta, nell ordine del log, sul thread che chiama replay.
+    // Vengono letti al più window segmenti in anticipo, così in memoria non c'è mai tutto il log
+    public <H extends LogReader.Handler> void replay(ExecutorService pool, int window, Supplier<H> handlers, Consumer<H> consumer) throws IOException {
+        File[] files = segments();
+        ArrayDeque<Future<Long>> reads = new ArrayDeque<>();
+        ArrayDeque<H> results = new ArrayDeque<>();
+        int next = 0;
+
+        try {
+            for (int i = 0; i < files.length; i++) {
+                for (; next < files.length && next < i + Math.max(window, 1); next++) {
+                    File f = files[next];
+                    H handler = handlers.get();
+                    results.add(handler);
+                    reads.add(pool.submit(() -> {
+                        try (LogReader reader = new LogReader(f)) {
+                            return reader.read(handler);
+                        }
+                    }));
+                }
+
+                long end = await(reads.poll());
+                consumer.accept(results.poll());
+                checkTail(files[i], end, i == files.length - 1);
+            }
+        } finally {
+            for (Future<Long> f : reads) f.cancel(true);
+        }
+    }
+
+    private static long await(Future<Long> read) throws IOException {
+        try {
+            return read.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Lettura del log interrotta");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) throw io;
+            if (e.getCause() instanceof RuntimeException r) throw r;
+            throw new IOException(e.getCause());
+        }
+    }
+
+    // se il segmento finisce prima della fine del file, l ultimo record è rovinato. Se è l ultimo segmento
+    // (crash durante la scrittura) il file viene tagliato in quel punto: i record successivi verranno scritti
+    // subito dopo l ultimo record valido
+    private void checkTail(File f, long end, boolean last) throws IOException {
+        if (end >= f.length()) return;
+
+        System.err.printf("Segmento %s rovinato a partire dal byte %d%s%n", f.getName(), end,
+                last ? ": i record successivi vengono scartati" : "");
+        if (!last || channel != null) return;
+
+        // senza un header valido il segmento non contiene niente di utile
+        if (end == 0) {
+            if (!f.delete()) throw new IOException("Impossibile cancellare il segmento " + f.getName());
+            return;
+        }
+
+        // alcuni sistemi (Windows) non permettono di tagliare un file ancora mappato da un LogReader: in quel caso il
+        // segmento resta com è e non viene più usato per scrivere, alla prossima lettura i byte rovinati verranno saltati
+        try (FileChannel c = FileChannel.open(f.toPath(), StandardOpenOption.WRITE)) {
+            c.truncate(end);
+        } catch (IOException e) {
+            System.err.println("Impossibile tagliare il segmento " + f.getName() + ": " + e.getMessage());
+            sealed = true;
+        }
+    }
+
+    // rilegge l ultimo record scritto con quell id (post, commento o like) e lo passa a handler.
+    // Restituisce false se nel log non c'è nessun record con quell id
+    public boolean read(UUID id, LogReader.Handler handler) throws IOException {
+        ByteBuffer record = index.find(id, segments());
+        if (record == null) return false;
+
+        handler.apply(LogRecord.TYPE.of(record.get(0)), new BufferInput(record.slice(1, record.limit() - 1)));
+        return true;
+    }
+
+    public void logUser(User u) {
+        commit(append(LogRecord.TYPE.USER, LogRecord.user(u)));
+    }
+
+    public void logPost(Post p) {
+        commit(append(LogRecord.TYPE.POST, LogRecord.post(p)));
+    }
+
+    // interactions sono gli id dei commenti e dei like del post, rewinners chi lo aveva rewinnato:
+    // i loro record diventano inutili insieme al post (vedi LogCompactor)
+    public void logPostRemoved(UUID idPost, Collection<UUID> interactions, Collection<String> rewinners) {
+        ConcurrentLinkedQueue<Garbage> g = garbage;
+        if (g != null) {
+            for (UUID id : interactions) g.add(new Garbage(id, Long.MAX_VALUE, -1));
+            for (String username : rewinners) g.add(new Garbage(LogRecord.rewinKey(username, idPost), Long.MAX_VALUE, -1));
+        }
+
+        commit(append(LogRecord.TYPE.POST_REMOVED, LogRecord.id(idPost)));
+    }
+
+    public void logComment(Comment c) {
+        commit(append(LogRecord.TYPE.COMMENT, LogRecord.comment(c)));
+    }
+
+    public void logVote(Like l) {
+        commit(append(LogRecord.TYPE.VOTE, LogRecord.vote(l)));
+    }
+
+    public void logRewin(String username, UUID idPost, long time) {
+        commit(append(LogRecord.TYPE.REWIN, LogRecord.rewin(username, idPost, time)));
+    }
+
+    public void logRewinRemoved(String username, UUID idPost) {
+        commit(append(LogRecord.TYPE.REWIN_REMOVED, LogRecord.rewinRemoved(username, idPost)));
+    }
+
+    public void logFollow(String username, String followed) {
+        commit(append(LogRecord.TYPE.FOLLOW, LogRecord.follow(username, followed)));
+    }
+
+    public void logUnfollow(String username, String followed) {
+        commit(append(LogRecord.TYPE.UNFOLLOW, LogRecord.follow(username, followed)));
+    }
+
+    public void logTransaction(String username, long time, long amount) {
+        commit(append(LogRecord.TYPE.TRANSACTION, LogRecord.transaction(username, time, amount)));
+    }
+
+    public void logEntryConsumed(UUID id) {
+        commit(append(LogRecord.TYPE.ENTRY_CONSUMED, LogRecord.id(id)));
+    }
+
+    // i record vengono aggiunti tutti insieme e si aspetta una volta sola
+    public void logEntriesConsumed(Collection<UUID> ids) {
+        long lsn = 0;
+        for (UUID id : ids) {
+            lsn = append(LogRecord.TYPE.ENTRY_CONSUMED, LogRecord.id(id));
+        }
+
+        commit(lsn);
+    }
+
+    // il record viene preparato (lunghezza, crc e payload) fuori dal lock, dentro il lock viene solo messo in coda
+    // (oppure scritto, se il group commit non è attivo). Restituisce il numero del record
+    private long append(LogRecord.TYPE type, byte[] payload) {
+        int length = payload.length + 1;
+        CRC32 crc = new CRC32();
+        crc.update(type.getCode());
+        crc.update(payload);
+
+        ByteBuffer record = ByteBuffer.allocate(8 + length);
+        record.putInt(length).putInt((int) crc.getValue()).put(type.getCode()).put(payload).flip();
+
+        lock.lock();
+        try {
+            if (failure != null) throw new UncheckedIOException("Il log non accetta più record", failure);
+            if (writer != null && !running) throw new UncheckedIOException("Il log è stato chiuso", new ClosedChannelException());
+
+            long lsn = ++lastLsn;
+            if (writer == null) {
+                write(new ByteBuffer[]{record});
+                durableLsn = lsn;
+                return lsn;
+            }
+
+            if (pending.isEmpty()) {
+                pendingSince = System.nanoTime();
+                newRecords.signal();
+            }
+            pending.add(record);
+            return lsn;
+        } catch (IOException e) {
+            fail(e);
+            throw new UncheckedIOException("Impossibile scrivere il record nel log", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // con la politica BATCH aspetta che il record lsn sia sul disco. Durante la chiusura LOG-WRITER scrive ancora
+    // i record in coda, quindi si aspetta finché il thread non termina.
+    // Se il log si è fermato (errore o chiusura) prima di scrivere il record viene lanciata UncheckedIOException
+    private void commit(long lsn) {
+        if (policy.getType() != FsyncPolicy.TYPE.BATCH) return;
+
+        lock.lock();
+        try {
+            while (durableLsn < lsn && !stopped && failure == null) {
+                durable.awaitUninterruptibly();
+            }
+
+            if (durableLsn < lsn && failure != null) {
+                throw new UncheckedIOException("Il record non è stato scritto nel log", failure);
+            }
+            if (durableLsn < lsn) {
+                throw new UncheckedIOException("Il log è stato chiuso prima che il record fosse scritto", new ClosedChannelException());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // quando LOG-WRITER termina (chiusura, errore o interruzione) sveglia chi aspetta ancora un record
+    private void writeLoopUntilStopped() {
+        try {
+            writeLoop();
+        } finally {
+            lock.lock();
+            try {
+                stopped = true;
+                durable.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // ciclo del thread LOG-WRITER: prende tutti i record in coda e li scrive come un unico gruppo
+    private void writeLoop() {
+        long lastForce = System.nanoTime();
+        boolean dirty = false; // ci sono record scritti ma non ancora forzati (solo con INTERVAL)
+
+        while (true) {
+            ArrayList<ByteBuffer> batch;
+            long batchLsn;
+            long since;
+
+            lock.lock();
+            try {
+                while (pending.isEmpty() && running) {
+                    if (dirty) {
+                        long wait = policy.getInterval() - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastForce);
+                        if (wait <= 0) break;
+                        newRecords.await(wait, TimeUnit.MILLISECONDS);
+                    } else {
+                        newRecords.await();
+                    }
+                }
+
+                if (pending.isEmpty() && !running) return;
+
+                batch = pending;
+                pending = new ArrayList<>(Math.max(16, batch.size()));
+                batchLsn = lastLsn;
+                since = pendingSince;
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            long start = System.nanoTime();
+            boolean forced = false;
+            long bytes = 0;
+            try {
+                if (!batch.isEmpty()) {
+                    for (ByteBuffer b : batch) bytes += b.remaining();
+                    write(batch.toArray(new ByteBuffer[0]));
+                    dirty = true;
+                }
+
+                if (dirty && (policy.getType() == FsyncPolicy.TYPE.BATCH || policy.getType() == FsyncPolicy.TYPE.INTERVAL
+                        && TimeUnit.NANOSECONDS.toMillis(start - lastForce) >= policy.getInterval())) {
+                    channel.force(false);
+                    lastForce = System.nanoTime();
+                    forced = true;
+                }
+                if (policy.getType() != FsyncPolicy.TYPE.INTERVAL || forced) dirty = false;
+            } catch (IOException e) {
+                // durableLsn non avanza: chi aspetta i record del gruppo riceve l errore
+                lock.lock();
+                try {
+                    fail(e);
+                } finally {
+                    lock.unlock();
+                }
+                return;
+            }
+
+            if (batch.isEmpty()) {
+                if (forced) metrics.fsync();
+                continue;
+            }
+
+            long end = System.nanoTime();
+            metrics.record(batch.size(), bytes, end - start, start - since, forced);
+
+            lock.lock();
+            try {
+                durableLsn = batchLsn;
+                durable.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // chiamato con il lock preso, dopo un errore di scrittura o di fsync. I byte scritti dopo l ultimo record completo
+    // (size) vengono tagliati; se non si può, il segmento non viene più usato. Il log poi si ferma: il prossimo avvio
+    // rileggerà tutti i record scritti per intero
+    private void fail(IOException e) {
+        System.err.println("Errore di scrittura del log, il log viene fermato: " + e.getMessage());
+        e.printStackTrace();
+        failure = e;
+        running = false;
+        pending.clear();
+
+        if (channel != null) {
+            try {
+                channel.truncate(size);
+            } catch (IOException t) {
+                System.err.println("Impossibile tagliare il segmento " + segment + ": " + t.getMessage());
+                sealed = true;
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+                channel = null;
+            }
+        }
+
+        newRecords.signalAll();
+        durable.signalAll();
+    }
+
+    // scrive i record sul segmento corrente (con una sola write se ci stanno tutti),
+    // aprendo un nuovo segmento quando quello corrente è pieno. Il segmento chiuso viene forzato sul disco
+    private void write(ByteBuffer[] records) throws IOException {
+        int from = 0;
+        while (from < records.length) {
+            if (channel == null) nextSegment();
+
+            long free = SEGMENT_SIZE - size;
+            int to = from;
+            long bytes = 0;
+            while (to < records.length && (bytes + records[to].remaining() <= free || size == HEADER_SIZE && to == from)) {
+                bytes += records[to].remaining();
+                to++;
+            }
+
+            if (to == from) {
+                if (policy.getType() != FsyncPolicy.TYPE.NEVER) channel.force(false);
+                nextSegment();
+                continue;
+            }
+
+            long written = 0;
+            while (written < bytes) {
+                written += channel.write(records, from, to - from);
+            }
+
+            long position = size;
+            for (int i = from; i < to; i++) {
+                indexRecord(records[i], (int) position);
+                position += records[i].limit();
+            }
+            size += written;
+            from = to;
+        }
+    }
+
+    // aggiorna l indice con il record appena scritto in position. Se la compattazione è attiva, segnala il record
+    // che questo rende inutile: il precedente con la stessa chiave (un like cambiato, un rewin tolto o rifatto,
+    // il POST di un post cancellato). La posizione è nota se il precedente è nel segmento corrente, altrimenti
+    // lo cercherà la compattazione negli indici dei segmenti chiusi
+    private void indexRecord(ByteBuffer record, int position) {
+        LogRecord.TYPE type = LogRecord.TYPE.of(record.get(8));
+        UUID key = LogRecord.key(type, record.slice(9, record.limit() - 9));
+        if (key == null) return;
+
+        Integer previous = index.add(key, position);
+        ConcurrentLinkedQueue<Garbage> g = garbage;
+        if (g == null || type == LogRecord.TYPE.POST || type == LogRecord.TYPE.COMMENT) return;
+
+        g.add(new Garbage(key, segment, previous != null ? previous : -1));
+    }
+
+    // apre il segmento in cui scrivere: l ultimo segmento esistente (se non è pieno) oppure uno nuovo
+    private void nextSegment() throws IOException {
+        if (channel == null) {
+            File[] files = segments();
+            if (files.length > 0) {
+                File last = files[files.length - 1];
+                segment = numberOf(last);
+                if (last.length() < SEGMENT_SIZE && !sealed) {
+                    index.open(segment, last);
+                    channel = FileChannel.open(last.toPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                    size = channel.size();
+                    return;
+                }
+            }
+        } else {
+            channel.close();
+        }
+
+        segment++;
+        File f = segmentFile(dir, segment);
+        channel = FileChannel.open(f.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+
+        ByteBuffer header = header();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        size = HEADER_SIZE;
+        index.create(segment);
+    }
+
+    static ByteBuffer header() {
+        return ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION).flip();
+    }
+
+    static boolean readHeader(DataInput in) throws IOException {
+        try {
+            return in.readInt() == MAGIC && in.readInt() == VERSION;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    // segmenti che non riceveranno più record (tutti tranne l ultimo), usati dalla compattazione
+    File[] sealedSegments() {
+        File[] files = segments();
+        return Arrays.copyOf(files, Math.max(files.length - 1, 0));
+    }
+
+    LogIndex getIndex() {
+        return index;
+    }
+
+    // da qui in poi i record resi inutili vengono segnalati alla compattazione (vedi pollGarbage())
+    void trackGarbage() {
+        if (garbage == null) garbage = new ConcurrentLinkedQueue<>();
+    }
+
+    // prossimo record diventato inutile, null se non ce ne sono altri
+    Garbage pollGarbage() {
+        ConcurrentLinkedQueue<Garbage> g = garbage;
+        return g == null ? null : g.poll();
+    }
+
+    // segmenti del log ordinati per numero, per ogni numero la generazione più alta.
+    // I file ritirati dalla compattazione ma non ancora cancellati non fanno più parte del log
+    File[] segments() {
+        HashMap<Long, File> latest = new HashMap<>();
+        for (File f : segmentFiles()) {
+            if (index.isRetired(f)) continue;
+
+            latest.merge(numberOf(f), f, (a, b) -> generationOf(a) >= generationOf(b) ? a : b);
+        }
+
+        File[] files = latest.values().toArray(new File[0]);
+        Arrays.sort(files, Comparator.comparingLong(WriteAheadLog::numberOf));
+        return files;
+    }
+
+    private File[] segmentFiles() {
+        File[] files = dir.listFiles(f -> f.isFile() && f.getName().matches("^[0-9]{20}(\\.[0-9]+)?\\.log$"));
+        return files == null ? new File[0] : files;
+    }
+
+    void clearGarbage() {
+        ConcurrentLinkedQueue<Garbage> g = garbage;
+        if (g != null) g.clear();
+    }
+
+    // record diventato inutile: se position >= 0 è il record in (segment, position), altrimenti è l ultimo record
+    // con quella chiave nei segmenti con numero minore di segment (tutti, se segment è Long.MAX_VALUE)
+    record Garbage(UUID key, long segment, int position) {
+    }
+
+    static File segmentFile(File dir, long segment) {
+        return segmentFile(dir, segment, 0);
+    }
+
+    // la generazione 0 è il segmento scritto dal log, le successive sono le sue versioni compattate
+    static File segmentFile(File dir, long segment, int generation) {
+        if (generation == 0) return new File(dir, String.format("%020d.log", segment));
+
+        return new File(dir, String.format("%020d.%d.log", segment, generation));
+    }
+
+    static long numberOf(File segment) {
+        String name = segment.getName();
+        return Long.parseLong(name.substring(0, name.indexOf('.')));
+    }
+
+    static int generationOf(File segment) {
+        String name = segment.getName();
+        int first = name.indexOf('.');
+        int last = name.lastIndexOf('.');
+        return first == last ? 0 : Integer.parseInt(name.substring(first + 1, last));
+    }
+
+    // il thread LOG-WRITER scrive i record ancora in coda prima di terminare, poi il segmento viene forzato e chiuso
+    @Override
+    public void close() throws IOException {
+        Thread w;
+        lock.lock();
+        try {
+            w = writer;
+            running = false;
+            newRecords.signal();
+        } finally {
+            lock.unlock();
+        }
+
+        if (w != null) {
+            try {
+                w.join();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+
+        lock.lock();
+        try {
+            durable.signalAll();
+            if (channel != null) {
+                if (failure == null) channel.force(false);
+                channel.close();
+                channel = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}
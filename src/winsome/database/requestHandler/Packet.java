@@ -55,6 +55,7 @@ public class Packet {
         CREATE_USER,
         VIEW_POST,
         OPEN_REWIN,
+        POST_SUMMARY,
         GET_ALL_POSTS,
         FRIENDS_POSTS,
         REWIN,
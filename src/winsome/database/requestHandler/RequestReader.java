@@ -5,6 +5,7 @@ import com.google.gson.Gson;
 import com.google.gson.JsonSyntaxException;
 import winsome.common.Console;
 import winsome.common.SimpleComment;
+import winsome.common.SimplePost;
 import winsome.database.Database;
 import winsome.database.DatabaseMain;
 import winsome.database.graph.graphNodes.Node;
@@ -12,16 +13,19 @@ import winsome.database.tables.Comment;
 import winsome.database.tables.Post;
 import winsome.database.tables.User;
 import winsome.database.utility.EntriesStorage;
+import winsome.database.utility.FeedEntry;
+import winsome.database.utility.Page;
+import winsome.database.utility.WalletLedger;
 import winsome.utility.ThreadWorker;
 import winsome.utility.channelsio.ConcurrentChannelLineReceiver;
 import winsome.utility.channelsio.PipedSelector;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.lang.reflect.Type;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 import java.nio.charset.StandardCharsets;
-import java.text.ParseException;
 import java.util.*;
 
 /*
@@ -68,6 +72,14 @@ public class RequestReader implements Runnable {
                 processRequest(message);
 
             selector.enqueue(socket, SelectionKey.OP_WRITE, response);
+        } catch (UncheckedIOException e) {
+            // il log si è fermato (vedi WriteAheadLog.fail()): la modifica non è salvata, quindi al Server
+            // non viene mandata nessuna risposta e la connessione viene chiusa
+            System.err.println("Richiesta non completata: " + e.getMessage());
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -89,6 +101,7 @@ public class RequestReader implements Runnable {
             case "GET POST" -> getPost(record[1]); // Vedere un Post
             case "OPEN REWIN" ->
                     getRewin(record[1]); // Se il post che voglio vedere è un Rewin, allora viene invocata questa per un maggior controllo
+            case "GET POST SUMMARY" -> getPostSummary(record[1]); // Contatori di un Post, senza like e commenti
             case "GET ALL POSTS OF" -> getAllPostsOf(record[1]); // Reperire tutti i Post di un utente
             case "GET FRIENDS POSTS OF" ->
                     getAllFriendsPosts(record[1]); // Reperire tutti i Post di tutti i follow di un utente (in pratica i Post che stanno nella Home)
@@ -134,11 +147,17 @@ public class RequestReader implements Runnable {
         response = new Packet(Packet.FUNCTION.CHECK_IF_EXIST, set != null ? set : "206");
     }
 
-    //GET FRIENDS BY TAG: USERNAME
-    public void discoverFriendsByTag(String username) {
-        Set<Node> set = database.getUsersByTag(username);
+    //GET FRIENDS BY TAG: USERNAME LIMIT CURSOR
+    public void discoverFriendsByTag(String record) {
+        String[] data = record.trim().split(" ");
+        String username = data[0];
 
-        response = new Packet(Packet.FUNCTION.DISCOVER, set != null ? set : "207");
+        try {
+            Page<String> users = database.getUsersByTag(username, pageLimit(data, 1), pageCursor(data, 2));
+            response = new Packet(Packet.FUNCTION.DISCOVER, users != null ? users : "207");
+        } catch (IllegalArgumentException e) {
+            response = new Packet(Packet.FUNCTION.DISCOVER, "218");
+        }
     }
 
     //GET FOLLOWERS OF: USERNAME
@@ -193,54 +212,85 @@ public class RequestReader implements Runnable {
         response = new Packet(Packet.FUNCTION.CREATE_POST, p != null ? p : "207");
     }
 
-    //GET POST: USERNAME IDPOST
+    //GET POST: USERNAME IDPOST LIMIT CURSOR
     public void getPost(String record) {
-        String[] data = record.trim().split(" ", 2);
+        String[] data = record.trim().split(" ");
         String whoWantToView = data[0].trim();
         String idPost = data[1].trim();
 
-        HashMap<String, Object> map = database.viewFriendPost(whoWantToView, UUID.fromString(idPost));
+        try {
+            HashMap<String, Object> map = database.viewFriendPost(whoWantToView, UUID.fromString(idPost), pageLimit(data, 2), pageCursor(data, 3));
+            response = new Packet(Packet.FUNCTION.VIEW_POST, map != null ? (map.isEmpty() ? "215" : map) : "208");
+        } catch (IllegalArgumentException e) {
+            response = new Packet(Packet.FUNCTION.VIEW_POST, "218");
+        }
+    }
 
-        response = new Packet(Packet.FUNCTION.VIEW_POST, map != null ? (map.isEmpty() ? "215" : map) : "208");
+    //GET POST SUMMARY: USERNAME IDPOST
+    public void getPostSummary(String record) {
+        String[] data = record.trim().split(" ", 2);
+        String username = data[0].trim();
+
+        try {
+            SimplePost summary = database.getPostSummary(username, UUID.fromString(data[1].trim()));
+            response = new Packet(Packet.FUNCTION.POST_SUMMARY, summary != null ? summary : "208");
+        } catch (IllegalArgumentException e) {
+            response = new Packet(Packet.FUNCTION.POST_SUMMARY, "208");
+        }
     }
 
-    //OPEN REWIN: AUTHOR IDPOST
+    //OPEN REWIN: AUTHOR IDPOST LIMIT CURSOR
     public void getRewin(String record) {
-        String[] data = record.trim().split(" ", 2);
+        String[] data = record.trim().split(" ");
         String author = data[0].trim();
         String idPost = data[1].trim();
 
-        HashMap<String, Object> map = database.openRewin(author, UUID.fromString(idPost));
-
-        response = new Packet(Packet.FUNCTION.OPEN_REWIN, map != null ? (map.isEmpty() ? "216" : map) : "208");
+        try {
+            HashMap<String, Object> map = database.openRewin(author, UUID.fromString(idPost), pageLimit(data, 2), pageCursor(data, 3));
+            response = new Packet(Packet.FUNCTION.OPEN_REWIN, map != null ? (map.isEmpty() ? "216" : map) : "208");
+        } catch (IllegalArgumentException e) {
+            response = new Packet(Packet.FUNCTION.OPEN_REWIN, "218");
+        }
     }
 
-    //GET ALL POSTS OF: USERNAME
-    public void getAllPostsOf(String username) {
-        Set<Node> set = database.getAllPostsOf(username);
+    //GET ALL POSTS OF: USERNAME LIMIT CURSOR
+    public void getAllPostsOf(String record) {
+        String[] data = record.trim().split(" ");
+        String username = data[0];
 
-        response = new Packet(Packet.FUNCTION.GET_ALL_POSTS, set != null ? set : "207");
+        try {
+            Page<FeedEntry> page = database.getAllPostsOf(username, pageLimit(data, 1), pageCursor(data, 2));
+            response = new Packet(Packet.FUNCTION.GET_ALL_POSTS, page != null ? page : "207");
+        } catch (IllegalArgumentException e) {
+            response = new Packet(Packet.FUNCTION.GET_ALL_POSTS, "218");
+        }
     }
 
-    //GET COMMENTS FROM DATE: IDPOST DATE
+    //GET COMMENTS FROM DATE: IDPOST DATE (DATE in millisecondi)
     public void getLatestComments(String record) {
         String[] data = record.split(" ", 2);
         UUID idPost = UUID.fromString(data[0]);
-        String date = data[1];
 
         try {
+            long date = Long.parseLong(data[1].trim());
             Set<SimpleComment> set = database.getCommentsFromDate(idPost, date);
             response = new Packet(Packet.FUNCTION.GET_LATEST_COMMENTS, set != null ? set : "207");
-        } catch (ParseException e) {
+        } catch (NumberFormatException e) {
             response = new Packet(Packet.FUNCTION.GET_LATEST_COMMENTS, "204");
         }
     }
 
-    //GET FRIENDS POSTS OF: USERNAME
-    public void getAllFriendsPosts(String username) {
-        Map<String, Set<Node>> map = database.getFriendsPostsOf(username);
+    //GET FRIENDS POSTS OF: USERNAME LIMIT CURSOR
+    public void getAllFriendsPosts(String record) {
+        String[] data = record.trim().split(" ");
+        String username = data[0];
 
-        response = new Packet(Packet.FUNCTION.FRIENDS_POSTS, map != null ? map : "207");
+        try {
+            Page<FeedEntry> page = database.getFriendsPostsOf(username, pageLimit(data, 1), pageCursor(data, 2));
+            response = new Packet(Packet.FUNCTION.FRIENDS_POSTS, page != null ? page : "207");
+        } catch (IllegalArgumentException e) {
+            response = new Packet(Packet.FUNCTION.FRIENDS_POSTS, "218");
+        }
     }
 
     //GET FRIENDS POST FROM DATE: USERNAME DATEMAP
@@ -249,17 +299,18 @@ public class RequestReader implements Runnable {
         String username = data[0];
         String json = data[1];
 
-        Type mapType = new TypeToken<HashMap<String, String>>() {
+        Type mapType = new TypeToken<HashMap<String, Long>>() {
         }.getType();
-        HashMap<String, String> dateMap = new Gson().fromJson(json, mapType);
-        Map<String, Set<Node>> posts;
+        HashMap<String, Long> dateMap;
         try {
-            posts = database.getLatestFriendsPostsOf(username, dateMap);
+            dateMap = new Gson().fromJson(json, mapType);
         } catch (JsonSyntaxException e) {
             response = new Packet(Packet.FUNCTION.GET_LATEST_POST, "204");
             return;
         }
 
+        Map<String, Set<Node>> posts = database.getLatestFriendsPostsOf(username, dateMap);
+
         response = new Packet(Packet.FUNCTION.GET_LATEST_POST, posts != null ? posts : "207");
     }
 
@@ -358,13 +409,14 @@ public class RequestReader implements Runnable {
             String array = s.substring(0, s.indexOf(']') + 1);  // [a, b, c ...]
             String[] data = s.substring(s.indexOf(']') + 1).trim().split(" ", 2); //[coins, date]
 
-            String coins = data[0];
-            String date = data[1];
+            long amount;
+            long date;
             try {
-                Database.getDateFormat().getSimpleDateFormat().parse(date);
-            } catch (ParseException e) {
+                amount = WalletLedger.toAmount(data[0]);
+                date = Long.parseLong(data[1].trim());
+            } catch (NumberFormatException e) {
                 e.printStackTrace();
-                response = new Packet(Packet.FUNCTION.UPDATE_USER, "204"); // date format error
+                response = new Packet(Packet.FUNCTION.UPDATE_USER, "204"); // coins or date format error
                 return;
             }
 
@@ -375,7 +427,7 @@ public class RequestReader implements Runnable {
             for (String user : users) {
                 User u = database.getUser(user.trim());
                 if (u != null) {
-                    u.addTransaction(coins, date);
+                    database.addTransaction(u, amount, date);
                     continue;
                 }
 
@@ -393,26 +445,28 @@ public class RequestReader implements Runnable {
 
         String[] data = s.split(" ", 3);
         String user = data[0];
-        String coins = data[1];
         String dateAndIdPost = data[2];
         int index = dateAndIdPost.lastIndexOf(' ');
-        String date = dateAndIdPost.substring(0, index);
         UUID idPost = UUID.fromString(dateAndIdPost.substring(index + 1));
 
-        Post p = database.getPost(idPost);
-        p.incrementInteractions();
-
+        long amount;
+        long date;
         try {
-            Database.getDateFormat().getSimpleDateFormat().parse(date);
-        } catch (ParseException e) {
+            amount = WalletLedger.toAmount(data[1]);
+            date = Long.parseLong(dateAndIdPost.substring(0, index).trim());
+        } catch (NumberFormatException e) {
             e.printStackTrace();
-            response = new Packet(Packet.FUNCTION.UPDATE_USER, "204");  //date format error
+            response = new Packet(Packet.FUNCTION.UPDATE_USER, "204");  //coins or date format error
             return;
         }
 
+        Post p = database.getPost(idPost);
+        p.incrementInteractions();
+        database.postChanged(p);
+
         User u = database.getUser(user);
         if (u != null) {
-            u.addTransaction(coins, date);
+            database.addTransaction(u, amount, date);
             response = new Packet(Packet.FUNCTION.UPDATE_USER, "200"); //success
             return;
         }
@@ -420,14 +474,53 @@ public class RequestReader implements Runnable {
         response = new Packet(Packet.FUNCTION.UPDATE_USER, "207");
     }
 
-    //GET TRANSACTIONS: user
+    //GET TRANSACTIONS: user [since seen limit]
+    // restituisce { BALANCE: saldo, TRANSACTIONS: [...] } con al più limit transazioni successive al cursore (since, seen)
+    // (vedi WalletLedger.since), dalla più vecchia alla più recente. Se mancano, vengono restituite tutte le transazioni
     private void getTransactions(String s) {
-        User u = database.getUser(s);
+        String[] data = s.trim().split(" ");
+        long since = 0;
+        int seen = 0;
+        int limit = 0;
+        if (data.length == 4) {
+            try {
+                since = Long.parseLong(data[1]);
+                seen = Integer.parseInt(data[2]);
+                limit = Integer.parseInt(data[3]);
+            } catch (NumberFormatException e) {
+                response = new Packet(Packet.FUNCTION.GET_TRANSACTIONS, "204");
+                return;
+            }
+        }
+
+        User u = database.getUser(data[0]);
         if (u != null) {
-            response = new Packet(Packet.FUNCTION.GET_TRANSACTIONS, u.getTransactions());
+            WalletLedger wallet = u.getWallet();
+            HashMap<String, Object> map = new HashMap<>();
+            map.put("BALANCE", WalletLedger.toCoins(wallet.getBalance()));
+            map.put("TRANSACTIONS", wallet.since(since, seen, limit));
+
+            response = new Packet(Packet.FUNCTION.GET_TRANSACTIONS, map);
             return;
         }
 
         response = new Packet(Packet.FUNCTION.GET_TRANSACTIONS, "207"); //user not found
     }
+
+    // LIMIT e CURSOR sono opzionali: se mancano, viene restituita la prima pagina con la dimensione di default
+    private static int pageLimit(String[] data, int index) {
+        if (data.length <= index) return Database.PAGE_SIZE;
+
+        try {
+            return Integer.parseInt(data[index].trim());
+        } catch (NumberFormatException e) {
+            return Database.PAGE_SIZE;
+        }
+    }
+
+    private static String pageCursor(String[] data, int index) {
+        if (data.length <= index) return Page.FIRST;
+
+        return data[index].trim();
+    }
 }
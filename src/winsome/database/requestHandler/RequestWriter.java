@@ -1,18 +1,17 @@
 package winsome.database.requestHandler;
 
 import winsome.common.SimpleComment;
-import winsome.common.SimpleLike;
 import winsome.common.SimplePost;
 import winsome.database.DBResponse;
 import winsome.database.Database;
 import winsome.database.DatabaseMain;
 import winsome.database.graph.graphNodes.GraphNode;
-import winsome.database.graph.graphNodes.GroupNode;
 import winsome.database.graph.graphNodes.Node;
 import winsome.database.tables.Comment;
-import winsome.database.tables.Like;
 import winsome.database.tables.Post;
 import winsome.database.utility.EntriesStorage;
+import winsome.database.utility.FeedEntry;
+import winsome.database.utility.Page;
 import winsome.utility.ThreadWorker;
 import winsome.utility.channelsio.ChannelLineSender;
 import winsome.utility.channelsio.PipedSelector;
@@ -67,6 +66,7 @@ public class RequestWriter implements Runnable {
             case CREATE_USER -> createUser();
             case VIEW_POST -> viewPost();
             case OPEN_REWIN -> getRewin();
+            case POST_SUMMARY -> postSummary();
             case GET_ALL_POSTS -> getAllPosts();
             case GET_LATEST_COMMENTS -> getLatestComments();
             case FRIENDS_POSTS -> friendsPosts();
@@ -110,6 +110,19 @@ public class RequestWriter implements Runnable {
         viewPost();
     }
 
+    private void postSummary() {
+        try {
+            if (packet.getMessage() instanceof String code) {
+                out.sendObject(new DBResponse(code));
+                return;
+            }
+
+            out.sendObject(new DBResponse("200", packet.getMessage()));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
     private void createUser() {
         String message = (String) packet.getMessage();
         try {
@@ -156,16 +169,13 @@ public class RequestWriter implements Runnable {
         }
 
         try {
-            if (packet.getMessage() instanceof Set<?> set) {
-                ArrayList<String> users = new ArrayList<>(set.size());
-                for (Object o : set) {
-                    if (o instanceof Node n && n instanceof GroupNode g1) {
-                        if (g1.getParent() instanceof GraphNode<?> g2 && g2.getValue() instanceof String s) {
-                            users.add(s);
-                        }
-                    }
-                }
-                out.sendObject(new DBResponse("200", users));
+            // gli utenti arrivano già come username, ordinati per numero di tag in comune
+            if (packet.getMessage() instanceof Page<?> page) {
+                HashMap<String, Object> map = new HashMap<>();
+                map.put("USERS", new ArrayList<>(page.getItems()));
+                map.put("CURSOR", page.getCursor());
+
+                out.sendObject(new DBResponse("200", map));
             }
         } catch (IOException e) {
             e.printStackTrace();
@@ -266,27 +276,16 @@ public class RequestWriter implements Runnable {
         try {
             if (!(packet.getMessage() instanceof HashMap<?, ?> message)) return;
 
+            // i like arrivano già contati, mentre i commenti (una pagina) vanno convertiti
             HashMap<String, Object> map = (HashMap<String, Object>) message;
-            Set<Node> commentNodes = (Set<Node>) map.get("COMMENTS");
-            Set<Node> likeNodes = (Set<Node>) map.get("LIKES");
+            List<Comment> commentsPage = (List<Comment>) map.get("COMMENTS");
 
-            ArrayList<SimpleComment> comments = new ArrayList<>(commentNodes.size());
-            ArrayList<SimpleLike> likes = new ArrayList<>(likeNodes.size());
-
-            for (Node n : commentNodes) {
-                if (n instanceof GraphNode<?> g && g.getValue() instanceof Comment c) {
-                    comments.add(c.toSimpleComment());
-                }
-            }
-
-            for (Node n : likeNodes) {
-                if (n instanceof GraphNode<?> g && g.getValue() instanceof Like l) {
-                    likes.add(l.toSimpleLike());
-                }
+            ArrayList<SimpleComment> comments = new ArrayList<>(commentsPage.size());
+            for (Comment c : commentsPage) {
+                comments.add(c.toSimpleComment());
             }
 
             map.put("COMMENTS", comments);
-            map.put("LIKES", likes);
 
             out.sendObject(new DBResponse("200", map));
         } catch (IOException e) {
@@ -295,36 +294,16 @@ public class RequestWriter implements Runnable {
     }
 
     private void getAllPosts() {
-        if (packet.getMessage() instanceof String code) {
-            try {
-                out.sendObject(new DBResponse(code));
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-
-            return;
-        }
-
-        try {
-            LinkedList<SimplePost> posts = new LinkedList<>();
-
-            if (packet.getMessage() instanceof Set<?> set) {
-                for (Object o : set) {
-                    if (o instanceof Node n && n instanceof GraphNode<?> g && g.getValue() instanceof UUID id) {
-                        Post p = database.getPost(id);
-                        posts.add(p.toSimplePost());
-                    }
-                }
-            }
-
-            out.sendObject(new DBResponse("200", posts));
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        sendFeedPage();
     }
 
-    @SuppressWarnings("unchecked")
     private void friendsPosts() {
+        sendFeedPage();
+    }
+
+    // invia una pagina della home o del profilo: i post vengono convertiti in SimplePost mantenendo l ordine
+    // (dal più recente al più vecchio). Se il post compare tramite un utente diverso dall autore, è un rewin
+    private void sendFeedPage() {
         if (packet.getMessage() instanceof String code) {
             try {
                 out.sendObject(new DBResponse(code));
@@ -335,31 +314,28 @@ public class RequestWriter implements Runnable {
             return;
         }
 
-        if (!(packet.getMessage() instanceof Map<?, ?> m)) return;
-
-        Map<String, Set<Node>> map = (Map<String, Set<Node>>) m;
-        HashMap<String, LinkedList<SimplePost>> unpackedMap = new HashMap<>(map.size());
-        for (Map.Entry<String, Set<Node>> entry : map.entrySet()) {
-            String friends = entry.getKey();
-            LinkedList<SimplePost> posts = new LinkedList<>();
+        if (!(packet.getMessage() instanceof Page<?> page)) return;
 
-            for (Node n : entry.getValue()) {
-                if (n instanceof GraphNode<?> g && g.getValue() instanceof UUID id) {
-                    Post p = database.getPost(id);
-                    SimplePost simplePost = p.toSimplePost();
+        LinkedList<SimplePost> posts = new LinkedList<>();
+        for (Object o : page.getItems()) {
+            if (o instanceof FeedEntry entry) {
+                Post p = database.getPost(entry.getIdPost());
+                if (p == null) continue; // post cancellato nel frattempo
 
-                    if (!p.getAuthor().equals(friends))
-                        simplePost.setRewin(friends);
+                SimplePost simplePost = p.toSimplePost();
+                if (!p.getAuthor().equals(entry.getFollow()))
+                    simplePost.setRewin(entry.getFollow());
 
-                    posts.add(simplePost);
-                }
+                posts.add(simplePost);
             }
-
-            unpackedMap.put(friends, posts);
         }
 
+        HashMap<String, Object> map = new HashMap<>();
+        map.put("POSTS", posts);
+        map.put("CURSOR", page.getCursor());
+
         try {
-            out.sendObject(new DBResponse("200", unpackedMap));
+            out.sendObject(new DBResponse("200", map));
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -487,9 +463,9 @@ public class RequestWriter implements Runnable {
             return;
         }
 
-        if (packet.getMessage() instanceof List<?> transactions) {
+        if (packet.getMessage() instanceof HashMap<?, ?> wallet) {
             try {
-                out.sendObject(new DBResponse("200", transactions));
+                out.sendObject(new DBResponse("200", wallet));
             } catch (IOException e) {
                 e.printStackTrace();
             }
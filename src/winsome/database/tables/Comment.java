@@ -1,11 +1,9 @@
 package winsome.database.tables;
 
 import winsome.common.SimpleComment;
-import winsome.database.Database;
+import winsome.common.WinsomeDate;
 
 import java.io.Serializable;
-import java.text.ParseException;
-import java.util.Date;
 import java.util.Objects;
 import java.util.UUID;
 
@@ -13,18 +11,21 @@ public class Comment implements Comparable<Comment>, Serializable {
     private final UUID idComment;
     private final UUID idPost;
     private final String author;
-    private final String date;
+    private String date; // data nel vecchio formato, presente solo nei commenti letti da file salvati prima dei timestamp
     private final String content;
-    private transient long linePosition;
+    private long timestamp; // data del commento in millisecondi
 
     public Comment(UUID idPost, String author, String content) {
+        this(UUID.randomUUID(), idPost, author, content, System.currentTimeMillis());
+    }
+
+    // usato dal LogLoader per ricreare un commento letto dal log
+    public Comment(UUID idComment, UUID idPost, String author, String content, long timestamp) {
+        this.idComment = idComment;
         this.idPost = idPost;
         this.author = author;
         this.content = content;
-        this.date = Database.getDateFormat().getSimpleDateFormat().format(new Date());
-
-        this.idComment = UUID.randomUUID();
-        linePosition = -1;
+        this.timestamp = timestamp;
     }
 
     public UUID getIdPost() {
@@ -39,24 +40,22 @@ public class Comment implements Comparable<Comment>, Serializable {
         return content;
     }
 
-    public String getDate() {
-        return date;
-    }
-
     public UUID getId() {
         return idComment;
     }
 
-    public long getLinePosition() {
-        return linePosition;
-    }
+    // i commenti letti da un file vecchio hanno solo la data in formato stringa, che viene convertita una sola volta
+    public long getTimestamp() {
+        if (timestamp == 0 && date != null) {
+            timestamp = WinsomeDate.parseLegacy(date);
+            date = null;
+        }
 
-    public void setLinePosition(long linePosition) {
-        this.linePosition = linePosition;
+        return timestamp;
     }
 
     public SimpleComment toSimpleComment() {
-        return new SimpleComment(idComment.toString(), author, content, date);
+        return new SimpleComment(idComment.toString(), author, content, getTimestamp());
     }
 
     @Override
@@ -73,25 +72,18 @@ public class Comment implements Comparable<Comment>, Serializable {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Comment comment = (Comment) o;
-        return getIdPost().equals(comment.getIdPost()) && getAuthor().equals(comment.getAuthor()) && getDate().equals(comment.getDate()) && getContent().equals(comment.getContent());
+        return getIdPost().equals(comment.getIdPost()) && getAuthor().equals(comment.getAuthor()) && getTimestamp() == comment.getTimestamp() && getContent().equals(comment.getContent());
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(idComment, idPost, author, date, content);
+        return Objects.hash(idComment, idPost, author, content);
     }
 
+    // a parità di data si confronta l id, così in un TreeSet due commenti dello stesso millisecondo non si sovrappongono
     @Override
     public int compareTo(Comment o) {
-        try {
-            Date d1 = Database.getDateFormat().getSimpleDateFormat().parse(date);
-            Date d2 = Database.getDateFormat().getSimpleDateFormat().parse(o.getDate());
-
-            return d1.compareTo(d2);
-        } catch (ParseException e) {
-            e.printStackTrace();
-        }
-
-        return -1;
+        int compare = Long.compare(getTimestamp(), o.getTimestamp());
+        return compare != 0 ? compare : idComment.compareTo(o.getId());
     }
 }
@@ -3,7 +3,6 @@ package winsome.database.tables;
 import winsome.common.SimpleLike;
 
 import java.io.Serializable;
-import java.util.Objects;
 import java.util.UUID;
 
 public class Like implements Serializable {
@@ -11,15 +10,17 @@ public class Like implements Serializable {
     private final UUID idPost;
     private final String username; //chi ha messo il like
     private TYPE type;
-    private transient long linePosition;
 
     public Like(UUID idPost, TYPE type, String username) {
+        this(UUID.randomUUID(), idPost, type, username);
+    }
+
+    // usato dal LogLoader per ricreare un like letto dal log
+    public Like(UUID idLike, UUID idPost, TYPE type, String username) {
+        this.idLike = idLike;
         this.idPost = idPost;
         this.type = type;
         this.username = username;
-
-        this.idLike = UUID.randomUUID();
-        linePosition = -1;
     }
 
     public UUID getIdPost() {
@@ -42,14 +43,6 @@ public class Like implements Serializable {
         return idLike;
     }
 
-    public long getLinePosition() {
-        return linePosition;
-    }
-
-    public void setLinePosition(long linePosition) {
-        this.linePosition = linePosition;
-    }
-
     public SimpleLike toSimpleLike() {
         return new SimpleLike(type);
     }
@@ -72,7 +65,7 @@ public class Like implements Serializable {
 
     @Override
     public int hashCode() {
-        return Objects.hash(idLike);
+        return idLike.hashCode();
     }
 
     public enum TYPE {
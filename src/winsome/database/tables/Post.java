@@ -1,35 +1,48 @@
 package winsome.database.tables;
 
 import winsome.common.SimplePost;
+import winsome.common.WinsomeDate;
+import winsome.database.graph.graphNodes.GraphNode;
 import winsome.database.graph.graphNodes.GroupNode;
+import winsome.database.utility.PostCounters;
+import winsome.database.utility.Timeline;
 
 import java.io.Serializable;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.util.Collections;
 import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class Post implements Comparable<Post>, Serializable {
     private final UUID id;
     private String author;
     private String title;
     private String content;
-    private DatePair date;
+    private long timestamp; // data di pubblicazione in millisecondi
+    private LegacyDate date; // data nel vecchio formato, presente solo nei post letti da file salvati prima dei timestamp
     private int interactions;
+    private transient GraphNode<UUID> postNode;
     private transient GroupNode comments;
     private transient GroupNode likes;
-    private transient long linePosition;
+    private transient volatile ConcurrentHashMap<String, Like> likesByUser; // username -> like/dislike messo al post
+    private transient volatile Timeline<Comment> commentsTimeline; // commenti del post ordinati per data
+    private transient volatile Set<String> rewinners; // utenti che hanno rewinnato il post
+    private transient volatile PostCounters counters; // numero di like, dislike, commenti e rewin
+    private transient volatile boolean dirty; // modificato dopo l ultimo salvataggio
 
     public Post(String author, String title, String content) {
+        this(UUID.randomUUID(), author, title, content, System.currentTimeMillis());
+    }
+
+    // usato dal LogLoader per ricreare un post salvato nel log ma non ancora nella tabella dei post
+    public Post(UUID id, String author, String title, String content, long timestamp) {
+        this.id = id;
         this.author = author;
         this.title = title;
         this.content = content;
+        this.timestamp = timestamp;
         this.interactions = 1;
-
-        id = UUID.randomUUID();
-        date = new DatePair();
-        linePosition = -1;
     }
 
     public UUID getId() {
@@ -48,8 +61,23 @@ public class Post implements Comparable<Post>, Serializable {
         return content;
     }
 
-    public DatePair date() {
-        return date;
+    // i post caricati con Gson da un file vecchio hanno solo la data in formato stringa:
+    // viene convertita una sola volta e al salvataggio successivo il post viene scritto con il timestamp
+    public long getTimestamp() {
+        if (timestamp == 0 && date != null) {
+            timestamp = WinsomeDate.parseLegacy(date.dateS);
+            date = null;
+        }
+
+        return timestamp;
+    }
+
+    public GraphNode<UUID> getPostNode() {
+        return postNode;
+    }
+
+    public void setPostNode(GraphNode<UUID> postNode) {
+        this.postNode = postNode;
     }
 
     public GroupNode getCommentsGroupNode() {
@@ -68,12 +96,138 @@ public class Post implements Comparable<Post>, Serializable {
         this.likes = likes;
     }
 
-    public long getLinePosition() {
-        return linePosition;
+    // restituisce il like (o dislike) messo da username, null se l utente non ha ancora votato il post
+    public Like getLikeOf(String username) {
+        return likesIndex().get(username);
     }
 
-    public void setLinePosition(long linePosition) {
-        this.linePosition = linePosition;
+    // aggiunge il like all indice, se l utente non ha già votato.
+    // Restituisce il like già presente oppure null se l inserimento è avvenuto.
+    // Il lock su l fa sì che un cambio di voto (vedi changeLikeType) venga contato dopo l inserimento
+    public Like putLikeIfAbsent(Like l) {
+        synchronized (l) {
+            Like previous = likesIndex().putIfAbsent(l.getUsername(), l);
+            if (previous == null) {
+                getCounters().addVote(l.getType());
+            }
+
+            return previous;
+        }
+    }
+
+    // cambia il tipo del like l (da like a dislike o viceversa) aggiornando i contatori.
+    // Chi lo chiama deve tenere il lock su l, così 2 cambi contemporanei dello stesso voto non si sovrappongono
+    public void changeLikeType(Like l, Like.TYPE type) {
+        if (l.getType() == type) return;
+
+        l.setType(type);
+        getCounters().changeVote(type);
+    }
+
+    public void clearLikes() {
+        likesIndex().clear();
+        getCounters().clearVotes();
+    }
+
+    // l indice non viene salvato su disco (viene ricostruito dal LogLoader), quindi i Post caricati con Gson
+    // non passano dal costruttore e l indice va creato al primo utilizzo
+    private ConcurrentHashMap<String, Like> likesIndex() {
+        ConcurrentHashMap<String, Like> index = likesByUser;
+        if (index == null) {
+            synchronized (this) {
+                index = likesByUser;
+                if (index == null) {
+                    index = new ConcurrentHashMap<>();
+                    likesByUser = index;
+                }
+            }
+        }
+
+        return index;
+    }
+
+    // come per i like, la timeline dei commenti viene ricostruita dal LogLoader e creata al primo utilizzo
+    public Timeline<Comment> getCommentsTimeline() {
+        Timeline<Comment> t = commentsTimeline;
+        if (t == null) {
+            synchronized (this) {
+                t = commentsTimeline;
+                if (t == null) {
+                    t = new Timeline<>();
+                    commentsTimeline = t;
+                }
+            }
+        }
+
+        return t;
+    }
+
+    // aggiunge il commento alla timeline del post. Se il commento è già presente, non viene contato di nuovo
+    public boolean addComment(Comment c) {
+        boolean added = getCommentsTimeline().add(c.getId(), c, c.getTimestamp());
+        if (added) {
+            getCounters().addComment();
+        }
+
+        return added;
+    }
+
+    public void clearComments() {
+        getCommentsTimeline().clear();
+        getCounters().clearComments();
+    }
+
+    public boolean addRewinner(String username) {
+        boolean added = rewinnersSet().add(username);
+        if (added) {
+            getCounters().addRewin();
+        }
+
+        return added;
+    }
+
+    public boolean removeRewinner(String username) {
+        boolean removed = rewinnersSet().remove(username);
+        if (removed) {
+            getCounters().removeRewin();
+        }
+
+        return removed;
+    }
+
+    public Set<String> getRewinners() {
+        return Collections.unmodifiableSet(rewinnersSet());
+    }
+
+    private Set<String> rewinnersSet() {
+        Set<String> set = rewinners;
+        if (set == null) {
+            synchronized (this) {
+                set = rewinners;
+                if (set == null) {
+                    set = ConcurrentHashMap.newKeySet();
+                    rewinners = set;
+                }
+            }
+        }
+
+        return set;
+    }
+
+    // come gli indici, i contatori vengono ricostruiti dal LogLoader e creati al primo utilizzo
+    public PostCounters getCounters() {
+        PostCounters c = counters;
+        if (c == null) {
+            synchronized (this) {
+                c = counters;
+                if (c == null) {
+                    c = new PostCounters();
+                    counters = c;
+                }
+            }
+        }
+
+        return c;
     }
 
     public int getInteractions() {
@@ -84,14 +238,29 @@ public class Post implements Comparable<Post>, Serializable {
         this.interactions++;
     }
 
+    // true se la riga è cambiata dopo l ultimo salvataggio delle tabelle (vedi TableStore).
+    // Restituisce true solo alla prima modifica: solo in quel caso la riga va messa tra quelle da salvare
+    public boolean markDirty() {
+        if (dirty) return false;
+
+        synchronized (this) {
+            if (dirty) return false;
+
+            dirty = true;
+            return true;
+        }
+    }
+
+    // chiamato da TableStore prima di scrivere la riga: una modifica successiva la rimette tra quelle da salvare
+    public void clearDirty() {
+        dirty = false;
+    }
+
     @Override
     public int compareTo(Post p) {
-        if (p.getId().equals(id)) return 0;
+        int compare = Long.compare(getTimestamp(), p.getTimestamp());
 
-        Date date1 = date.dateD;
-        Date date2 = p.date.dateD;
-        if (date1.after(date2)) return 1;
-        else return -1;
+        return compare != 0 ? compare : id.compareTo(p.getId());
     }
 
     @Override
@@ -116,33 +285,18 @@ public class Post implements Comparable<Post>, Serializable {
         return Objects.hash(id, author, title, content);
     }
 
+    // il SimplePost contiene anche i contatori del post (è il riepilogo usato da home, profilo e GET POST SUMMARY)
     public SimplePost toSimplePost() {
-        return new SimplePost(id.toString(), author, title, content, date.toString());
+        PostCounters c = getCounters();
+        int[] votes = c.getVotes();
+
+        SimplePost post = new SimplePost(id.toString(), author, title, content, getTimestamp());
+        post.setCounters(votes[0], votes[1], c.getComments(), c.getRewins());
+        return post;
     }
 
-    public static class DatePair implements Serializable {
-        private Date dateD;
+    // vecchio formato della data: {dateD, dateS}. Serve solo la stringa, dateD viene ignorato da Gson
+    private static class LegacyDate implements Serializable {
         private String dateS;
-
-        public DatePair() {
-            SimpleDateFormat format = new SimpleDateFormat("dd/MM/yy - HH:mm:ss");
-
-            //converto prima in String e poi parso perchè voglio fermarmi ai secondi
-            dateS = format.format(new Date());
-            try {
-                dateD = format.parse(dateS);
-            } catch (ParseException e) {
-                e.printStackTrace();
-            }
-        }
-
-        @Override
-        public String toString() {
-            return dateS;
-        }
-
-        public Date toDate() {
-            return dateD;
-        }
     }
 }
@@ -0,0 +1,294 @@
+package winsome.database.tables;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/*
+    Salvataggio incrementale delle tabelle degli utenti e dei post.
+    Nella cartella ci sono una base (snapshot completo delle 2 tabelle) e i delta scritti dopo di essa:
+    %020d.base.json  -> { "users": {username: User, ...}, "posts": {id: Post, ...} }
+    %020d.delta.json -> { "users": {...}, "posts": {...}, "removedPosts": [id, ...] }
+    Il numero nel nome cresce ad ogni file scritto, quindi al caricamento si legge l ultima base e poi,
+    in ordine, i delta successivi.
+
+    Ad ogni salvataggio vengono scritte solo le righe modificate: chi modifica un utente o un post lo segnala
+    (userChanged, postChanged e postRemoved) e la riga viene messa in coda una volta sola, finché non viene scritta
+    (vedi User.markDirty()). Il flag viene tolto prima di scrivere la riga, così una modifica fatta durante il
+    salvataggio finisce nel delta successivo.
+    Quando i delta sono troppi (MAX_DELTAS) o contengono più righe delle tabelle, viene scritta una nuova base
+    e i file precedenti vengono cancellati.
+
+    Ogni file viene scritto un oggetto alla volta (niente stringa con tutta la tabella in memoria) in un file
+    temporaneo, forzato sul disco e poi rinominato: un file .json nella cartella è sempre completo
+ */
+public class TableStore {
+    private static final int MAX_DELTAS = 32;
+    private static final String BASE = ".base.json";
+    private static final String DELTA = ".delta.json";
+
+    private final File dir;
+    private final Gson gson;
+    private final ConcurrentLinkedQueue<User> dirtyUsers;
+    private final ConcurrentLinkedQueue<Post> dirtyPosts;
+    private final ConcurrentLinkedQueue<UUID> removedPosts;
+    private long seq; // numero dell ultimo file letto o scritto
+    private int deltas; // delta scritti dopo l ultima base
+    private long deltaRows; // righe contenute nei delta scritti dopo l ultima base
+    private boolean fullNeeded; // il prossimo salvataggio deve scrivere una base
+
+    public TableStore(String path, Gson gson) {
+        this.dir = new File(path);
+        this.gson = gson;
+        this.dirtyUsers = new ConcurrentLinkedQueue<>();
+        this.dirtyPosts = new ConcurrentLinkedQueue<>();
+        this.removedPosts = new ConcurrentLinkedQueue<>();
+        this.fullNeeded = true;
+    }
+
+    public void userChanged(User u) {
+        if (u.markDirty()) dirtyUsers.add(u);
+    }
+
+    public void postChanged(Post p) {
+        if (p.markDirty()) dirtyPosts.add(p);
+    }
+
+    public void postRemoved(UUID idPost) {
+        removedPosts.add(idPost);
+    }
+
+    // legge l ultima base e i delta successivi nelle 2 tabelle.
+    // Restituisce false se non c è nessuna base (database nuovo o salvato con il vecchio formato)
+    public synchronized boolean load(Map<String, User> users, Map<UUID, Post> posts) throws IOException {
+        File[] files = files();
+        long base = -1;
+        for (File f : files) {
+            if (f.getName().endsWith(BASE)) base = seqOf(f);
+        }
+        if (base < 0) return false;
+
+        for (File f : files) {
+            long n = seqOf(f);
+            if (n < base) continue;
+
+            long rows = read(f, users, posts);
+            if (n > base) {
+                deltas++;
+                deltaRows += rows;
+            }
+            seq = n;
+        }
+
+        fullNeeded = false;
+        return true;
+    }
+
+    // restituisce una riga di riepilogo da stampare
+    public synchronized String save(Map<String, User> users, Map<UUID, Post> posts) throws IOException {
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Impossibile creare la cartella delle tabelle: " + dir);
+        }
+
+        long t1 = System.currentTimeMillis();
+        // se la scrittura fallisce, le righe già tolte dalla coda non sono più tracciate: si riparte da una base
+        boolean full = fullNeeded || deltas >= MAX_DELTAS || deltaRows >= users.size() + posts.size();
+        fullNeeded = true;
+
+        if (full) {
+            long rows = writeBase(users, posts);
+            fullNeeded = false;
+            return "Tabelle: base completa, " + rows + " righe (" + (System.currentTimeMillis() - t1) + "ms)";
+        }
+
+        long rows = writeDelta(users, posts);
+        fullNeeded = false;
+        if (rows < 0) return "Tabelle: nessuna modifica";
+
+        return "Tabelle: delta " + deltas + "/" + MAX_DELTAS + ", " + rows + " righe (" + (System.currentTimeMillis() - t1) + "ms)";
+    }
+
+    // restituisce il numero di righe scritte, -1 se non c era niente da scrivere
+    private long writeDelta(Map<String, User> users, Map<UUID, Post> posts) throws IOException {
+        List<User> u = drain(dirtyUsers);
+        List<Post> p = drain(dirtyPosts);
+        List<UUID> removed = drain(removedPosts);
+        if (u.isEmpty() && p.isEmpty() && removed.isEmpty()) return -1;
+
+        long[] rows = new long[1];
+        write(new File(dir, name(seq + 1, DELTA)), out -> {
+            out.name("users").beginObject();
+            for (User user : u) {
+                user.clearDirty();
+                if (users.get(user.getUsername()) != user) continue;
+
+                out.name(user.getUsername());
+                gson.toJson(user, User.class, out);
+                rows[0]++;
+            }
+            out.endObject();
+
+            out.name("posts").beginObject();
+            for (Post post : p) {
+                post.clearDirty();
+                if (posts.get(post.getId()) != post) continue; // cancellato dopo la modifica
+
+                out.name(post.getId().toString());
+                gson.toJson(post, Post.class, out);
+                rows[0]++;
+            }
+            out.endObject();
+
+            out.name("removedPosts").beginArray();
+            for (UUID id : removed) {
+                out.value(id.toString());
+                rows[0]++;
+            }
+            out.endArray();
+        });
+
+        seq++;
+        deltas++;
+        deltaRows += rows[0];
+        return rows[0];
+    }
+
+    // la base contiene tutte le righe, quindi le code vengono svuotate e i flag tolti prima di scriverla
+    private long writeBase(Map<String, User> users, Map<UUID, Post> posts) throws IOException {
+        for (User user : drain(dirtyUsers)) user.clearDirty();
+        for (Post post : drain(dirtyPosts)) post.clearDirty();
+        drain(removedPosts);
+
+        long[] rows = new long[1];
+        write(new File(dir, name(seq + 1, BASE)), out -> {
+            out.name("users").beginObject();
+            for (Map.Entry<String, User> e : users.entrySet()) {
+                out.name(e.getKey());
+                gson.toJson(e.getValue(), User.class, out);
+                rows[0]++;
+            }
+            out.endObject();
+
+            out.name("posts").beginObject();
+            for (Map.Entry<UUID, Post> e : posts.entrySet()) {
+                out.name(e.getKey().toString());
+                gson.toJson(e.getValue(), Post.class, out);
+                rows[0]++;
+            }
+            out.endObject();
+        });
+
+        seq++;
+        deltas = 0;
+        deltaRows = 0;
+
+        // la nuova base sostituisce tutti i file precedenti
+        for (File f : files()) {
+            if (seqOf(f) < seq && !f.delete()) {
+                System.err.println("Impossibile cancellare " + f.getName());
+            }
+        }
+
+        return rows[0];
+    }
+
+    // restituisce il numero di righe lette
+    private long read(File f, Map<String, User> users, Map<UUID, Post> posts) throws IOException {
+        long rows = 0;
+        try (JsonReader in = gson.newJsonReader(new BufferedReader(new InputStreamReader(new FileInputStream(f), StandardCharsets.UTF_8)))) {
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "users" -> {
+                        in.beginObject();
+                        while (in.hasNext()) {
+                            String username = in.nextName();
+                            users.put(username, gson.fromJson(in, User.class));
+                            rows++;
+                        }
+                        in.endObject();
+                    }
+                    case "posts" -> {
+                        in.beginObject();
+                        while (in.hasNext()) {
+                            UUID id = UUID.fromString(in.nextName());
+                            posts.put(id, gson.fromJson(in, Post.class));
+                            rows++;
+                        }
+                        in.endObject();
+                    }
+                    case "removedPosts" -> {
+                        in.beginArray();
+                        while (in.hasNext()) {
+                            posts.remove(UUID.fromString(in.nextString()));
+                            rows++;
+                        }
+                        in.endArray();
+                    }
+                    default -> in.skipValue();
+                }
+            }
+            in.endObject();
+        } catch (JsonParseException | IllegalStateException | IllegalArgumentException e) {
+            throw new IOException("File delle tabelle non valido: " + f.getName(), e);
+        }
+
+        return rows;
+    }
+
+    private void write(File f, Section body) throws IOException {
+        File tmp = new File(dir, f.getName() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp);
+             JsonWriter out = gson.newJsonWriter(new BufferedWriter(new OutputStreamWriter(fos, StandardCharsets.UTF_8)))) {
+            out.beginObject();
+            body.write(out);
+            out.endObject();
+            out.flush();
+            fos.getFD().sync();
+        }
+
+        Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // basi e delta ordinati per numero
+    private File[] files() {
+        File[] files = dir.listFiles(f -> f.isFile() && (f.getName().endsWith(BASE) || f.getName().endsWith(DELTA)));
+        if (files == null) return new File[0];
+
+        Arrays.sort(files, Comparator.comparingLong(TableStore::seqOf));
+        return files;
+    }
+
+    // vengono tolti al più gli elementi presenti all inizio: quelli aggiunti nel frattempo restano per il prossimo salvataggio
+    private static <T> List<T> drain(Queue<T> queue) {
+        ArrayList<T> list = new ArrayList<>();
+        for (int n = queue.size(); n > 0; n--) {
+            T t = queue.poll();
+            if (t == null) break;
+            list.add(t);
+        }
+
+        return list;
+    }
+
+    private static String name(long seq, String suffix) {
+        return String.format("%020d", seq) + suffix;
+    }
+
+    private static long seqOf(File f) {
+        String name = f.getName();
+        return Long.parseLong(name.substring(0, name.indexOf('.')));
+    }
+
+    private interface Section {
+        void write(JsonWriter out) throws IOException;
+    }
+}
@@ -1,7 +1,12 @@
 package winsome.database.tables;
 
 import winsome.common.WinsomeTransaction;
+import winsome.database.graph.graphNodes.GraphNode;
 import winsome.database.graph.graphNodes.GroupNode;
+import winsome.database.utility.FollowSet;
+import winsome.database.utility.HomeTimeline;
+import winsome.database.utility.Timeline;
+import winsome.database.utility.WalletLedger;
 
 import java.util.*;
 
@@ -9,20 +14,25 @@ public class User {
     private final String username;
     private String password;
     private List<String> tags;
-    private HashSet<String> following;
-    private HashSet<String> followers;
-    private List<WinsomeTransaction> transactions;
+    // follow e followers sono insiemi di id interi (vedi FollowSet): vengono modificati e letti da più worker del db
+    private volatile FollowSet following;
+    private volatile FollowSet followers;
+    private volatile WalletLedger wallet; // transazioni e saldo dell utente
+    private List<WinsomeTransaction> transactions; // vecchio formato delle transazioni, presente solo negli utenti letti da file vecchi
     private transient GroupNode tagsGroupNode;
     private transient GroupNode postsGroupNode;
+    private transient volatile Timeline<GraphNode<UUID>> timeline; // post e rewin dell utente ordinati per data
+    private transient volatile HomeTimeline home; // home materializzata, null finché non viene richiesta
+    private transient volatile boolean dirty; // modificato dopo l ultimo salvataggio
 
     public User(String username, String password, List<String> tags) {
         this.username = username;
         this.password = password;
         this.tags = tags;
-        this.transactions = new LinkedList<>();
+        this.wallet = new WalletLedger();
 
-        followers = new HashSet<>();
-        following = new HashSet<>();
+        followers = new FollowSet();
+        following = new FollowSet();
     }
 
     public String getUsername() {
@@ -38,27 +48,61 @@ public class User {
     }
 
     public boolean addFollow(String username) {
-        return following.add(username);
+        return followingSet().add(username);
     }
 
     public boolean addFollowers(String username) {
-        return followers.add(username);
+        return followersSet().add(username);
     }
 
     public boolean removeFollow(String username) {
-        return following.remove(username);
+        return followingSet().remove(username);
     }
 
     public boolean removeFollowers(String username) {
-        return followers.remove(username);
+        return followersSet().remove(username);
     }
 
+    // le viste restituite sono in sola lettura e si possono scorrere mentre altri thread seguono o smettono di seguire:
+    // l iterazione non prende lock, non lancia eccezioni ed è debolmente consistente (vedi FollowSet)
     public Set<String> getFollowing() {
-        return following;
+        return followingSet().view();
     }
 
     public Set<String> getFollowers() {
-        return followers;
+        return followersSet().view();
+    }
+
+    // gli utenti caricati con Gson da un file senza follow o followers non passano dal costruttore:
+    // l insieme vuoto viene creato al primo utilizzo
+    private FollowSet followingSet() {
+        FollowSet set = following;
+        if (set == null) {
+            synchronized (this) {
+                set = following;
+                if (set == null) {
+                    set = new FollowSet();
+                    following = set;
+                }
+            }
+        }
+
+        return set;
+    }
+
+    private FollowSet followersSet() {
+        FollowSet set = followers;
+        if (set == null) {
+            synchronized (this) {
+                set = followers;
+                if (set == null) {
+                    set = new FollowSet();
+                    followers = set;
+                }
+            }
+        }
+
+        return set;
     }
 
     public GroupNode getTagsGroupNode() {
@@ -77,12 +121,84 @@ public class User {
         this.postsGroupNode = postsGroupNode;
     }
 
-    public void addTransaction(String coins, String date) {
-        transactions.add(new WinsomeTransaction(coins, date));
+    // la timeline non viene salvata su disco (viene ricostruita dal LogLoader) e gli utenti caricati con Gson
+    // non passano dal costruttore, quindi viene creata al primo utilizzo
+    public Timeline<GraphNode<UUID>> getTimeline() {
+        Timeline<GraphNode<UUID>> t = timeline;
+        if (t == null) {
+            synchronized (this) {
+                t = timeline;
+                if (t == null) {
+                    t = new Timeline<>();
+                    timeline = t;
+                }
+            }
+        }
+
+        return t;
+    }
+
+    public HomeTimeline getHome() {
+        return home;
+    }
+
+    // imposta la home solo se non è già stata creata da un altro thread
+    public synchronized boolean setHomeIfAbsent(HomeTimeline home) {
+        if (this.home != null) return false;
+
+        this.home = home;
+        return true;
+    }
+
+    // amount è in virgola fissa (vedi WalletLedger)
+    public void addTransaction(long amount, long timestamp) {
+        getWallet().append(timestamp, amount);
+    }
+
+    // gli utenti letti da un file vecchio hanno la lista di transazioni con i coins in formato stringa:
+    // al primo utilizzo vengono spostate nel portafoglio e al salvataggio successivo viene scritto solo il portafoglio
+    public WalletLedger getWallet() {
+        WalletLedger w = wallet;
+        if (w == null) {
+            synchronized (this) {
+                w = wallet;
+                if (w == null) {
+                    w = new WalletLedger();
+                    if (transactions != null) {
+                        for (WinsomeTransaction t : transactions) {
+                            try {
+                                w.append(t.getTimestamp(), WalletLedger.toAmount(t.getCoins()));
+                            } catch (NumberFormatException e) {
+                                e.printStackTrace();
+                            }
+                        }
+                        transactions = null;
+                    }
+
+                    wallet = w;
+                }
+            }
+        }
+
+        return w;
+    }
+
+    // true se la riga è cambiata dopo l ultimo salvataggio delle tabelle (vedi TableStore).
+    // Restituisce true solo alla prima modifica: solo in quel caso la riga va messa tra quelle da salvare
+    public boolean markDirty() {
+        if (dirty) return false;
+
+        synchronized (this) {
+            if (dirty) return false;
+
+            dirty = true;
+            return true;
+        }
     }
 
-    public List<WinsomeTransaction> getTransactions() {
-        return transactions;
+    // chiamato da TableStore prima di scrivere la riga: una modifica successiva la rimette tra quelle da salvare
+    public void clearDirty() {
+        dirty = false;
     }
 
     @Override
@@ -7,18 +7,28 @@ import winsome.database.tables.Like;
 import winsome.database.tables.Post;
 
 import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.UUID;
+import java.util.*;
 
+/*
+    Raccoglie i like, i dislike e i commenti arrivati dall ultimo calcolo delle ricompense, raggruppati per post.
+
+    Le entry stanno in un buffer attivo diviso in STRIPES parti (in base all id del post), ognuna con il suo lock:
+    interazioni su post diversi non si contendono lo stesso lock.
+    Quando il RewardCalculator chiede le nuove entry, pull() sostituisce il buffer attivo con uno vuoto (un solo
+    scambio di riferimento) e poi chiude una alla volta le parti del vecchio buffer. Chi stava scrivendo sul vecchio
+    buffer e trova la sua parte chiusa riprova su quello nuovo, quindi nessuna interazione viene persa
+    e nessuna interazione aspetta la copia delle entry, che viene fatta sul vecchio buffer ormai fermo.
+ */
 public class EntriesStorage {
-    private HashMap<UUID, Entry> map;   //tabella con tutte le entry
+    private static final int STRIPES = 32; // potenza di 2
+
+    private volatile Buffer active; // buffer su cui vengono scritte le nuove interazioni
+    private final Object pullLock = new Object(); // un solo pull alla volta
     private Database database;
 
     public EntriesStorage(Database database) {
         this.database = database;
-        this.map = new HashMap<>();
+        this.active = new Buffer();
     }
 
     public void add(Like l) {
@@ -32,119 +42,236 @@ public class EntriesStorage {
     // metodo che aggiunge un like all entries storage
     // Se nell entries storage è già presente il post, viene aggiunto un like nel suo Set
     // altrimenti viene creata ex-nova la entry
-    private synchronized void addLike(Like l) {
-        // Se il post già sta nell entries storage, aggiungo il like al Set
-        if (map.containsKey(l.getIdPost())) {
-            map.get(l.getIdPost()).LIKES.add(l);
-            map.get(l.getIdPost()).HEADER.addCurator(l.getUsername());
-            return;
-        }
+    private void addLike(Like l) {
+        while (true) {
+            Stripe stripe = active.stripeOf(l.getIdPost());
+            synchronized (stripe) {
+                if (stripe.closed) continue;
 
-        // Se il post non esiste, allora lo aggiungo come entry e poi metto il like nel Set
-        Post post = database.getPost(l.getIdPost());
-        HeaderPost headerPost = new HeaderPost(l.getIdPost(), post.getAuthor(), post.getInteractions());
-        HashSet<Like> likes = new HashSet<>();
-        likes.add(l);
+                Entry entry = stripe.entryOf(l.getIdPost(), database);
+                if (entry == null) return;
 
-        map.put(l.getIdPost(), new Entry(headerPost, likes, new HashSet<>(), new HashMap<>()));
+                entry.addVote(l, true);
+                return;
+            }
+        }
     }
 
-    private synchronized void addDislike(Like l) {
-        if (map.containsKey(l.getIdPost())) {
-            map.get(l.getIdPost()).DISLIKES.add(l);
-            map.get(l.getIdPost()).HEADER.addCurator(l.getUsername());
-            return;
-        }
+    private void addDislike(Like l) {
+        while (true) {
+            Stripe stripe = active.stripeOf(l.getIdPost());
+            synchronized (stripe) {
+                if (stripe.closed) continue;
 
-        Post post = database.getPost(l.getIdPost());
-        HeaderPost headerPost = new HeaderPost(l.getIdPost(), post.getAuthor(), post.getInteractions());
-        HashSet<Like> dislikes = new HashSet<>();
-        dislikes.add(l);
+                Entry entry = stripe.entryOf(l.getIdPost(), database);
+                if (entry == null) return;
 
-        map.put(l.getIdPost(), new Entry(headerPost, new HashSet<>(), dislikes, new HashMap<>()));
+                entry.addVote(l, false);
+                return;
+            }
+        }
     }
 
     // metodo per aggiungere un commento all entries storage
     // Il procedimento è simile a quello adottato per i like,
     // cambia solo che se l autore del commento non è presente nella tabella dei comments, viene aggiunto
-    public synchronized void add(Comment c) {
-        if (map.containsKey(c.getIdPost())) {
-            map.get(c.getIdPost()).COMMENTS.putIfAbsent(c.getAuthor(), new ArrayList<>());
-            map.get(c.getIdPost()).COMMENTS.get(c.getAuthor()).add(c);
-            map.get(c.getIdPost()).HEADER.addCurator(c.getAuthor());
-            return;
-        }
-
-        Post post = database.getPost(c.getIdPost());
-        HeaderPost headerPost = new HeaderPost(c.getIdPost(), post.getAuthor(), post.getInteractions());
+    public void add(Comment c) {
+        while (true) {
+            Stripe stripe = active.stripeOf(c.getIdPost());
+            synchronized (stripe) {
+                if (stripe.closed) continue;
 
-        HashMap<String, ArrayList<Comment>> comments = new HashMap<>();
-        comments.put(c.getAuthor(), new ArrayList<>());
-        comments.get(c.getAuthor()).add(c);
+                Entry entry = stripe.entryOf(c.getIdPost(), database);
+                if (entry == null) return;
 
-        map.put(c.getIdPost(), new Entry(headerPost, new HashSet<>(), new HashSet<>(), comments));
+                entry.addComment(c);
+                return;
+            }
+        }
     }
 
-    public synchronized ArrayList<Entry> pull() {
-        ArrayList<Entry> array = new ArrayList<>(map.values());
+    // restituisce le entry raccolte dall ultimo pull e riparte con un buffer vuoto
+    public ArrayList<Entry> pull() {
+        synchronized (pullLock) {
+            Buffer old = active;
+            active = new Buffer();
 
-        map.clear();
+            // dopo la chiusura di una parte nessuno può più scriverci, quindi le entry si possono leggere senza lock
+            int size = 0;
+            for (Stripe stripe : old.stripes) {
+                synchronized (stripe) {
+                    stripe.closed = true;
+                }
+                size += stripe.entries.size();
+            }
+
+            ArrayList<Entry> array = new ArrayList<>(size);
+            for (Stripe stripe : old.stripes) {
+                array.addAll(stripe.entries.values());
+            }
 
-        return array;
+            return array;
+        }
     }
 
     // metodo per cambiare da like a dislike
-    // Il vecchio like viene trasformato in dislike spostandolo nel Set corrispondente
+    // Il vecchio like viene trasformato in dislike spostandolo nel Set corrispondente.
+    // Se il like è già stato preso da un pull, le ricompense sono state calcolate con il vecchio voto e non si fa niente
     public void changeLikeToDislike(Like l) {
-        if (map.containsKey(l.getIdPost())) {
-            if (!map.get(l.getIdPost()).LIKES.remove(l)) {
-                System.out.println("Errore nel tentativo di cambio da like a dislike");
+        while (true) {
+            Stripe stripe = active.stripeOf(l.getIdPost());
+            synchronized (stripe) {
+                if (stripe.closed) continue;
+
+                Entry entry = stripe.entries.get(l.getIdPost());
+                if (entry == null) {
+                    System.out.println("Errore: Tentato cambio di like a dislike su un post inesistente");
+                    return;
+                }
+
+                if (!entry.changeVote(l, false)) {
+                    System.out.println("Errore nel tentativo di cambio da like a dislike");
+                }
                 return;
             }
-
-            map.get(l.getIdPost()).DISLIKES.add(l);
-            return;
         }
-
-        System.out.println("Errore: Tentato cambio di like a dislike su un post inesistente");
     }
 
     public void chageDislikeToLike(Like l) {
-        if (map.containsKey(l.getIdPost())) {
-            if (!map.get(l.getIdPost()).DISLIKES.remove(l)) {
-                System.out.println("Errore: Tentato cambio di dislike a like");
+        while (true) {
+            Stripe stripe = active.stripeOf(l.getIdPost());
+            synchronized (stripe) {
+                if (stripe.closed) continue;
+
+                Entry entry = stripe.entries.get(l.getIdPost());
+                if (entry == null || !entry.changeVote(l, true)) {
+                    System.out.println("Errore: Tentato cambio di dislike a like");
+                }
                 return;
             }
-
-            map.get(l.getIdPost()).LIKES.add(l);
-            return;
         }
-
-        System.out.println("Errore: Tentato cambio di dislike a like");
     }
 
     public void remove(UUID id) {
-        map.remove(id);
+        while (true) {
+            Stripe stripe = active.stripeOf(id);
+            synchronized (stripe) {
+                if (stripe.closed) continue;
+
+                stripe.entries.remove(id);
+                return;
+            }
+        }
     }
 
+    private static class Buffer {
+        private final Stripe[] stripes;
 
-    // Classe di appoggio che rappresenta una Entry nell entry storage
+        private Buffer() {
+            this.stripes = new Stripe[STRIPES];
+            for (int i = 0; i < STRIPES; i++) {
+                stripes[i] = new Stripe();
+            }
+        }
+
+        private Stripe stripeOf(UUID idPost) {
+            int h = idPost.hashCode();
+            return stripes[(h ^ (h >>> 16)) & (STRIPES - 1)];
+        }
+    }
+
+    // una parte del buffer: va usata solo tenendo il suo lock
+    private static class Stripe {
+        private final HashMap<UUID, Entry> entries = new HashMap<>();
+        private boolean closed; // true dopo il pull: le scritture vanno rifatte sul nuovo buffer
+
+        // restituisce la entry del post, creandola se non c'è. Restituisce null se il post non esiste più
+        private Entry entryOf(UUID idPost, Database database) {
+            Entry entry = entries.get(idPost);
+            if (entry != null) return entry;
+
+            Post post = database.getPost(idPost);
+            if (post == null) return null;
+
+            HeaderPost headerPost = new HeaderPost(idPost, post.getAuthor(), post.getInteractions());
+            entry = new Entry(headerPost);
+            entries.put(idPost, entry);
+            return entry;
+        }
+    }
+
+    // Classe di appoggio che rappresenta una Entry nell entries storage.
+    // Al RewardCalculator servono solo i conteggi: numero di like e di dislike, numero di commenti di ogni utente
+    // e i curatori (nell header), quindi vengono inviati solo quelli.
+    // I like e i commenti veri restano nel database (campi transient) perchè, dopo il pull,
+    // vanno marcati sul file come già usati per le ricompense
     public static class Entry implements Serializable {
         public final HeaderPost HEADER;
-        public final HashSet<Like> LIKES;
-        public final HashSet<Like> DISLIKES;
-        public final HashMap<String, ArrayList<Comment>> COMMENTS;
+        public final HashMap<String, Integer> COMMENTS; // autore -> numero di commenti nuovi
+        private int likes;
+        private int dislikes;
 
-        public Entry(HeaderPost HEADER, HashSet<Like> LIKES, HashSet<Like> DISLIKES, HashMap<String, ArrayList<Comment>> COMMENTS) {
+        private transient HashMap<Like, Boolean> votes; // like nuovi -> true se like, false se dislike
+        private transient ArrayList<Comment> comments; // commenti nuovi
+
+        public Entry(HeaderPost HEADER) {
             this.HEADER = HEADER;
-            this.LIKES = LIKES;
-            this.DISLIKES = DISLIKES;
-            this.COMMENTS = COMMENTS;
+            this.COMMENTS = new HashMap<>();
+            this.votes = new HashMap<>();
+            this.comments = new ArrayList<>();
+        }
+
+        private void addVote(Like l, boolean like) {
+            if (votes.putIfAbsent(l, like) != null) return;
+
+            if (like) likes++;
+            else dislikes++;
+            HEADER.addCurator(l.getUsername());
+        }
+
+        // sposta un voto già presente nella entry da like a dislike (o viceversa)
+        private boolean changeVote(Like l, boolean like) {
+            Boolean old = votes.get(l);
+            if (old == null || old == like) return false;
+
+            votes.put(l, like);
+            if (like) {
+                likes++;
+                dislikes--;
+            } else {
+                likes--;
+                dislikes++;
+            }
+            return true;
+        }
+
+        private void addComment(Comment c) {
+            comments.add(c);
+            COMMENTS.merge(c.getAuthor(), 1, Integer::sum);
+            HEADER.addCurator(c.getAuthor());
+        }
+
+        public int getLikes() {
+            return likes;
+        }
+
+        public int getDislikes() {
+            return dislikes;
+        }
+
+        // like e dislike nuovi, disponibili solo nel database
+        public Set<Like> getNewVotes() {
+            return votes == null ? Collections.emptySet() : votes.keySet();
+        }
+
+        // commenti nuovi, disponibili solo nel database
+        public List<Comment> getNewComments() {
+            return comments == null ? Collections.emptyList() : comments;
         }
 
         @Override
         public String toString() {
-            return String.format("IdPost: %s, LIKES: %d, DISLIKES: %d, Numero di Persone che hanno commentato: %d", HEADER.getIdPost(), LIKES.size(), DISLIKES.size(), COMMENTS.size());
+            return String.format("IdPost: %s, LIKES: %d, DISLIKES: %d, Numero di Persone che hanno commentato: %d", HEADER.getIdPost(), likes, dislikes, COMMENTS.size());
         }
     }
-}
\ No newline at end of file
+}
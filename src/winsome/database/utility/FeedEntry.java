@@ -0,0 +1,74 @@
+package winsome.database.utility;
+
+import winsome.database.graph.graphNodes.GraphNode;
+
+import java.util.UUID;
+
+/*
+    Elemento di una home o di un profilo: il post (o rewin) e l utente tramite il quale compare (follow),
+    cioè l autore oppure chi lo ha rewinnato. time è la data del post o del rewin.
+
+    L ordine naturale va dal più recente al più vecchio; a parità di data si confrontano id del post e follow,
+    così 2 elementi diversi non sono mai uguali e il cursore individua sempre una posizione precisa
+ */
+public class FeedEntry implements Comparable<FeedEntry> {
+    private final String follow;
+    private final GraphNode<UUID> postNode;
+    private final long time;
+
+    public FeedEntry(String follow, GraphNode<UUID> postNode, long time) {
+        this.follow = follow;
+        this.postNode = postNode;
+        this.time = time;
+    }
+
+    public String getFollow() {
+        return follow;
+    }
+
+    public GraphNode<UUID> getPostNode() {
+        return postNode;
+    }
+
+    public UUID getIdPost() {
+        return postNode.getValue();
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public String toCursor() {
+        return Page.encodeCursor(String.valueOf(time), getIdPost().toString(), follow);
+    }
+
+    // restituisce l elemento da cui riprendere, null se il cursore è quello della prima pagina.
+    // Se il cursore non è valido, viene lanciata una IllegalArgumentException
+    public static FeedEntry fromCursor(String cursor) {
+        String[] parts = Page.decodeCursor(cursor, 3);
+        if (parts == null) return null;
+
+        return new FeedEntry(parts[2], new GraphNode<>(UUID.fromString(parts[1])), Long.parseLong(parts[0]));
+    }
+
+    @Override
+    public int compareTo(FeedEntry e) {
+        int c = Long.compare(e.time, time);
+        if (c != 0) return c;
+
+        c = e.getIdPost().compareTo(getIdPost());
+        return c != 0 ? c : e.follow.compareTo(follow);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof FeedEntry e)) return false;
+        return time == e.time && follow.equals(e.follow) && postNode.equals(e.postNode);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * postNode.hashCode() + follow.hashCode();
+    }
+}
@@ -0,0 +1,250 @@
+package winsome.database.utility;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+    Insieme di username (i follow o i followers di un utente) salvato come insieme di id interi.
+    Ogni username viene internato una sola volta in un id denso, con una tabella globale condivisa da tutti gli insiemi:
+    un utente seguito da milioni di utenti costa 4 byte (più lo spazio libero della tabella) per ogni follower,
+    invece di un nodo di ConcurrentHashMap e di un riferimento alla stringa.
+    Gli id non vengono mai liberati: gli utenti non vengono cancellati, quindi la tabella cresce solo con le registrazioni.
+
+    Gli id stanno in una tabella ad indirizzamento aperto (scansione lineare, nella cella c'è id + 1, 0 = cella vuota)
+    letta senza lock: fanOut, trimHomes e la home scorrono i followers ad ogni post, quindi la lettura non deve
+    né bloccare né copiare l insieme. Per questo:
+    - le celle vengono scritte con semantica release e lette con semantica acquire (come i block del grafo)
+    - una rimozione non sposta gli altri id ma lascia un segnaposto (TOMBSTONE): una ricerca in corso non perde
+      mai un id presente, perché una cella non torna mai vuota nella stessa tabella
+    - quando le celle occupate (id e segnaposto) superano metà della tabella, ne viene creata una nuova, pubblicata
+      tramite il campo volatile
+    Le scritture (follow e unfollow, molto più rare delle letture) sono sincronizzate sull insieme.
+    L iterazione è debolmente consistente, come quella di ConcurrentHashMap: non lancia eccezioni, vede gli id
+    presenti all inizio e non ancora rimossi, e può vedere o no quelli aggiunti nel frattempo
+    (uno rimosso e aggiunto di nuovo durante l iterazione può comparire 2 volte).
+
+    Su disco l insieme viene scritto come array di username (vedi Adapter), lo stesso formato del vecchio Set<String>
+ */
+@JsonAdapter(FollowSet.Adapter.class)
+public class FollowSet {
+    private static final int TOMBSTONE = -1;
+    private static final VarHandle INTS = MethodHandles.arrayElementVarHandle(int[].class);
+
+    private static final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>(); // username -> id
+    private static volatile String[] names = new String[1024]; // id -> username
+    private static int nextId;
+
+    private volatile int[] table;
+    private volatile int size;
+    private int used; // celle non vuote (id e segnaposto), modificato solo con il lock
+
+    public FollowSet() {
+        table = new int[8];
+    }
+
+    public synchronized boolean add(String username) {
+        int key = idOf(username) + 1;
+        int[] t = table;
+        int mask = t.length - 1;
+
+        int free = -1;
+        int i = slotOf(key, mask);
+        for (int k = t[i]; k != 0; k = t[i]) {
+            if (k == key) return false;
+            if (k == TOMBSTONE && free < 0) free = i;
+            i = (i + 1) & mask;
+        }
+
+        if (free < 0) {
+            free = i;
+            used++;
+        }
+        INTS.setRelease(t, free, key);
+        size++;
+
+        if (used * 2 > t.length) rehash();
+        return true;
+    }
+
+    public synchronized boolean remove(String username) {
+        Integer id = ids.get(username);
+        if (id == null) return false;
+
+        int[] t = table;
+        int i = find(t, id + 1);
+        if (i < 0) return false;
+
+        INTS.setRelease(t, i, TOMBSTONE);
+        size--;
+        return true;
+    }
+
+    // senza lock (vedi commento della classe)
+    public boolean contains(String username) {
+        Integer id = ids.get(username);
+        return id != null && find(table, id + 1) >= 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Set<String> view() {
+        return new View();
+    }
+
+    // posizione di key in t, -1 se non c'è
+    private static int find(int[] t, int key) {
+        int mask = t.length - 1;
+        int i = slotOf(key, mask);
+        for (int k = (int) INTS.getAcquire(t, i); k != 0; k = (int) INTS.getAcquire(t, i)) {
+            if (k == key) return i;
+            i = (i + 1) & mask;
+        }
+
+        return -1;
+    }
+
+    // nuova tabella senza segnaposto, con gli id al più in un quarto delle celle. Chiamato con il lock preso
+    private void rehash() {
+        int capacity = 8;
+        while (capacity < size * 4) capacity <<= 1;
+
+        int[] old = table;
+        int[] t = new int[capacity];
+        int mask = capacity - 1;
+        for (int key : old) {
+            if (key <= 0) continue;
+
+            int i = slotOf(key, mask);
+            while (t[i] != 0) i = (i + 1) & mask;
+            t[i] = key;
+        }
+
+        used = size;
+        table = t;
+    }
+
+    private static int slotOf(int key, int mask) {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    // restituisce l id dello username, creandolo se non esiste
+    private static int idOf(String username) {
+        Integer id = ids.get(username);
+        if (id != null) return id;
+
+        return ids.computeIfAbsent(username, FollowSet::allocate);
+    }
+
+    // la scrittura di names (anche se l array non cambia) pubblica lo username insieme all id
+    private static synchronized int allocate(String username) {
+        int id = nextId++;
+
+        String[] current = names;
+        if (id == current.length) current = Arrays.copyOf(current, current.length * 2);
+        current[id] = username;
+        names = current;
+
+        return id;
+    }
+
+    private static String nameOf(int id) {
+        return names[id];
+    }
+
+    // vista in sola lettura, scorre direttamente la tabella corrente.
+    // Viene inviata al server come un normale HashSet (vedi writeReplace)
+    private final class View extends AbstractSet<String> implements Serializable {
+        @Override
+        public Iterator<String> iterator() {
+            int[] t = table;
+
+            return new Iterator<>() {
+                private int i = 0;
+                private String next = advance();
+
+                private String advance() {
+                    while (i < t.length) {
+                        int key = (int) INTS.getAcquire(t, i++);
+                        if (key > 0) return nameOf(key - 1);
+                    }
+
+                    return null;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return next != null;
+                }
+
+                @Override
+                public String next() {
+                    if (next == null) throw new NoSuchElementException();
+
+                    String name = next;
+                    next = advance();
+                    return name;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return FollowSet.this.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return o instanceof String username && FollowSet.this.contains(username);
+        }
+
+        private Object writeReplace() {
+            return new HashSet<>(this);
+        }
+    }
+
+    public static class Adapter extends TypeAdapter<FollowSet> {
+        @Override
+        public void write(JsonWriter out, FollowSet followSet) throws IOException {
+            if (followSet == null) {
+                out.nullValue();
+                return;
+            }
+
+            out.beginArray();
+            for (String username : followSet.view()) {
+                out.value(username);
+            }
+            out.endArray();
+        }
+
+        @Override
+        public FollowSet read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+
+            FollowSet followSet = new FollowSet();
+            in.beginArray();
+            while (in.hasNext()) {
+                followSet.add(in.nextString());
+            }
+            in.endArray();
+
+            return followSet;
+        }
+    }
+}
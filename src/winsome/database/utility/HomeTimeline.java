@@ -0,0 +1,110 @@
+package winsome.database.utility;
+
+import java.util.*;
+
+/*
+    Home di un utente materializzata: contiene al più capacity post (o rewin) dei suoi follow, i più recenti.
+    Ogni entry è la coppia (follow, post), dove follow è l utente tramite il quale il post compare nella home
+    (l autore oppure chi lo ha rewinnato).
+
+    Le entry sono ordinate per data, quindi quando la home è piena viene scartata la più vecchia.
+    Se una entry viene rimossa (post cancellato, rewin rimosso, unfollow) la home non viene riempita di nuovo
+    con post più vecchi: la home è una cache delle entry più recenti e non tutta la storia dei follow.
+
+    La home è completa solo fino a floor: floor è l entry più recente che può mancare (scartata perché la home
+    era piena, oppure mai presa dalla timeline di un follow). Le entry successive a floor (più vecchie) possono
+    mancare, quindi una pagina che arriva a floor non può essere servita dalla home e page() restituisce null:
+    chi legge deve ricostruirla dalle timeline dei follow. Se floor è null la home contiene tutta la storia.
+
+    Tutti i metodi sono sincronizzati sull oggetto: le home vengono aggiornate da più thread (fan-out sui follower)
+    e la lettura è una singola copia limitata dalla dimensione della pagina.
+ */
+public class HomeTimeline {
+    private final int capacity;
+    private final TreeSet<FeedEntry> entries; // dalla più recente alla più vecchia
+    private final HashMap<EntryId, FeedEntry> index; // (follow, post) -> entry, serve per trovare le entry da rimuovere
+    private FeedEntry floor; // entry più recente che può mancare dalla home (null = nessuna)
+
+    public HomeTimeline(int capacity) {
+        this.capacity = capacity;
+        this.entries = new TreeSet<>();
+        this.index = new HashMap<>();
+    }
+
+    // aggiunge il post alla home. Se la home è piena e il post è più vecchio di tutti quelli presenti, viene ignorato
+    public synchronized boolean add(FeedEntry entry) {
+        EntryId id = new EntryId(entry.getFollow(), entry.getIdPost());
+        if (index.containsKey(id)) return false;
+        if (entries.size() >= capacity && entry.compareTo(entries.last()) > 0) {
+            raiseFloor(entry);
+            return false;
+        }
+
+        entries.add(entry);
+        index.put(id, entry);
+
+        if (entries.size() > capacity) {
+            FeedEntry oldest = entries.pollLast();
+            index.remove(new EntryId(oldest.getFollow(), oldest.getIdPost()));
+            raiseFloor(oldest);
+        }
+
+        return true;
+    }
+
+    // aggiunge le entry più recenti di un follow, prese dalla sua timeline con un limite: se il limite è stato
+    // raggiunto, le entry più vecchie del follow non sono nella home
+    public synchronized void addNewest(List<FeedEntry> newest, int limit) {
+        for (FeedEntry entry : newest) {
+            add(entry);
+        }
+
+        if (!newest.isEmpty() && newest.size() >= limit) raiseFloor(newest.get(newest.size() - 1));
+    }
+
+    public synchronized boolean remove(String follow, UUID idPost) {
+        FeedEntry entry = index.remove(new EntryId(follow, idPost));
+        if (entry == null) return false;
+
+        entries.remove(entry);
+        return true;
+    }
+
+    // rimuove tutte le entry che arrivano da follow (usato con l unfollow)
+    public synchronized void removeFollow(String follow) {
+        entries.removeIf(entry -> {
+            if (!entry.getFollow().equals(follow)) return false;
+
+            index.remove(new EntryId(follow, entry.getIdPost()));
+            return true;
+        });
+    }
+
+    // restituisce al più limit entry successive ad after (dalla più recente se after è null).
+    // Restituisce null se la pagina arriva oltre floor: le entry che seguono potrebbero mancare
+    public synchronized List<FeedEntry> page(FeedEntry after, int limit) {
+        SortedSet<FeedEntry> view = after == null ? entries : entries.tailSet(after, false);
+
+        ArrayList<FeedEntry> result = new ArrayList<>(Math.min(limit, view.size()));
+        for (FeedEntry entry : view) {
+            if (result.size() == limit) break;
+            if (floor != null && entry.compareTo(floor) >= 0) break;
+            result.add(entry);
+        }
+
+        if (result.size() < limit && floor != null) return null;
+
+        return result;
+    }
+
+    private void raiseFloor(FeedEntry entry) {
+        if (floor == null || entry.compareTo(floor) < 0) floor = entry;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private record EntryId(String follow, UUID idPost) {
+    }
+}
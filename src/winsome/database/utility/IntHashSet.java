@@ -0,0 +1,137 @@
+package winsome.database.utility;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/*
+    Insieme di interi non negativi senza boxing (open addressing con scansione lineare).
+    Nella tabella viene salvato il valore + 1, in modo che lo 0 indichi una cella vuota.
+    Le rimozioni spostano indietro gli elementi successivi (backward shift), quindi non servono marcatori di cancellazione.
+
+    La classe non è thread safe: la sincronizzazione è a carico di chi la usa.
+ */
+public class IntHashSet {
+    private int[] table;
+    private int size;
+
+    public IntHashSet() {
+        this(8);
+    }
+
+    public IntHashSet(int expectedSize) {
+        int capacity = 8;
+        while (capacity < expectedSize * 2) capacity <<= 1;
+
+        table = new int[capacity];
+    }
+
+    public boolean add(int value) {
+        if (value < 0) throw new IllegalArgumentException("Valore negativo: " + value);
+        if ((size + 1) * 2 > table.length) rehash(table.length * 2);
+
+        int key = value + 1;
+        int mask = table.length - 1;
+        int i = slotOf(key, mask);
+        while (table[i] != 0) {
+            if (table[i] == key) return false;
+            i = (i + 1) & mask;
+        }
+
+        table[i] = key;
+        size++;
+        return true;
+    }
+
+    public boolean contains(int value) {
+        if (value < 0) return false;
+
+        int key = value + 1;
+        int mask = table.length - 1;
+        int i = slotOf(key, mask);
+        while (table[i] != 0) {
+            if (table[i] == key) return true;
+            i = (i + 1) & mask;
+        }
+
+        return false;
+    }
+
+    public boolean remove(int value) {
+        if (value < 0) return false;
+
+        int key = value + 1;
+        int mask = table.length - 1;
+        int i = slotOf(key, mask);
+        while (table[i] != key) {
+            if (table[i] == 0) return false;
+            i = (i + 1) & mask;
+        }
+
+        // sposto indietro gli elementi che, a causa di collisioni, si trovano dopo la cella liberata
+        int gap = i;
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (table[j] == 0) break;
+
+            int home = slotOf(table[j], mask);
+            boolean stays = gap <= j ? (gap < home && home <= j) : (gap < home || home <= j);
+            if (!stays) {
+                table[gap] = table[j];
+                gap = j;
+            }
+        }
+
+        table[gap] = 0;
+        size--;
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void forEach(IntConsumer action) {
+        for (int key : table) {
+            if (key != 0) action.accept(key - 1);
+        }
+    }
+
+    public int[] toArray() {
+        int[] array = new int[size];
+        int n = 0;
+        for (int key : table) {
+            if (key != 0) array[n++] = key - 1;
+        }
+
+        return array;
+    }
+
+    public void clear() {
+        Arrays.fill(table, 0);
+        size = 0;
+    }
+
+    private void rehash(int capacity) {
+        int[] old = table;
+        table = new int[capacity];
+
+        int mask = capacity - 1;
+        for (int key : old) {
+            if (key == 0) continue;
+
+            int i = slotOf(key, mask);
+            while (table[i] != 0) i = (i + 1) & mask;
+            table[i] = key;
+        }
+    }
+
+    private static int slotOf(int key, int mask) {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
@@ -0,0 +1,64 @@
+package winsome.database.utility;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+/*
+    Pagina di risultati restituita dalle query paginate del Database (home, profilo, commenti, discover).
+    cursor è la stringa da passare alla query per ottenere la pagina successiva ed è null se non ci sono altre pagine.
+
+    Per il client il cursore è opaco: internamente è la posizione dell ultimo elemento restituito,
+    codificata in Base64 (senza spazi, così può viaggiare dentro i comandi testuali del Database)
+ */
+public class Page<T> {
+    public static final String FIRST = "0"; // cursore della prima pagina
+
+    private final List<T> items;
+    private final String cursor;
+
+    public Page(List<T> items, String cursor) {
+        this.items = items;
+        this.cursor = cursor;
+    }
+
+    // costruisce la pagina a partire da al più limit + 1 elementi già ordinati.
+    // Se gli elementi sono più di limit, esiste una pagina successiva che parte dopo l ultimo elemento restituito
+    public static <T> Page<T> of(List<T> items, int limit, Function<T, String> cursorOf) {
+        if (items.size() <= limit) return new Page<>(items, null);
+
+        List<T> page = items.subList(0, limit);
+        return new Page<>(page, cursorOf.apply(page.get(limit - 1)));
+    }
+
+    public static <T> Page<T> empty() {
+        return new Page<>(Collections.emptyList(), null);
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    public static String encodeCursor(String... parts) {
+        byte[] bytes = String.join(";", parts).getBytes(StandardCharsets.UTF_8);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    // restituisce le parti del cursore oppure null se il cursore è quello della prima pagina.
+    // Se il cursore non è valido, viene lanciata una IllegalArgumentException
+    public static String[] decodeCursor(String cursor, int parts) {
+        if (cursor == null || cursor.equals(FIRST)) return null;
+
+        String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        String[] split = decoded.split(";", parts);
+        if (split.length != parts) throw new IllegalArgumentException("Cursore non valido: " + cursor);
+
+        return split;
+    }
+}
@@ -0,0 +1,79 @@
+package winsome.database.utility;
+
+import winsome.database.tables.Like;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+    Contatori di un post (like, dislike, commenti e rewin), aggiornati ad ogni operazione sul post.
+    Servono per restituire i numeri del post senza scorrere i like e i commenti.
+
+    Like e dislike stanno nello stesso AtomicLong (like nei 32 bit alti, dislike nei 32 bit bassi): il cambio da like
+    a dislike (o viceversa) è una sola addAndGet, quindi chi legge non vede mai il voto contato 2 volte o per niente
+ */
+public class PostCounters {
+    private static final long LIKE = 1L << 32;
+    private static final long DISLIKE = 1L;
+
+    private final AtomicLong votes;
+    private final AtomicInteger comments;
+    private final AtomicInteger rewins;
+
+    public PostCounters() {
+        this.votes = new AtomicLong();
+        this.comments = new AtomicInteger();
+        this.rewins = new AtomicInteger();
+    }
+
+    public void addVote(Like.TYPE type) {
+        votes.addAndGet(type == Like.TYPE.LIKE ? LIKE : DISLIKE);
+    }
+
+    // il voto passa al tipo type (da dislike a like o viceversa)
+    public void changeVote(Like.TYPE type) {
+        votes.addAndGet(type == Like.TYPE.LIKE ? LIKE - DISLIKE : DISLIKE - LIKE);
+    }
+
+    public void clearVotes() {
+        votes.set(0);
+    }
+
+    public void addComment() {
+        comments.incrementAndGet();
+    }
+
+    public void clearComments() {
+        comments.set(0);
+    }
+
+    public void addRewin() {
+        rewins.incrementAndGet();
+    }
+
+    public void removeRewin() {
+        rewins.decrementAndGet();
+    }
+
+    public int getLikes() {
+        return (int) (votes.get() >>> 32);
+    }
+
+    public int getDislikes() {
+        return (int) votes.get();
+    }
+
+    public int getComments() {
+        return comments.get();
+    }
+
+    public int getRewins() {
+        return rewins.get();
+    }
+
+    // restituisce {like, dislike} letti insieme
+    public int[] getVotes() {
+        long v = votes.get();
+        return new int[]{(int) (v >>> 32), (int) v};
+    }
+}
@@ -3,21 +3,17 @@ package winsome.database.utility;
 import winsome.common.Console;
 import winsome.database.Database;
 import winsome.database.DatabaseMain;
-import winsome.utility.StandardPriority;
 
-import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
 /*
-    Classe che permette il salvataggio asincrono sul disco.
-    Viene fatto uso di questa classe per fare in modo che sia un thread solo ad accedere sul disco
-    e che i thread worker possano occuparsi delle richieste.
-
-    Viene fatto uso di una PriorityBlockingQueue per gestire i salvataggi asincroni.
+    Classe che permette il salvataggio asincrono delle tabelle sul disco.
     Il tempo di attesa tra un salvataggio e l'altro è definibile nel file di configurazione del database.
-    Se la queue è troppo piena, il thread worker segnalerà la cosa al PriorityAsyncSaver e lui comincierà subito a svuotarla (svegliandosi prematuramente).
+
+    Le modifiche al grafo non passano più da qui: vengono scritte nel write-ahead log, a gruppi, dal thread
+    del log (vedi WriteAheadLog). Ad ogni salvataggio vengono stampate le statistiche del log
  */
 
 public class PriorityAsyncSaver extends Thread {
@@ -25,17 +21,14 @@ public class PriorityAsyncSaver extends Thread {
     private char unit;
     private long timeout;
     private String delay;
-    private PriorityBlockingQueue<Entry> queue;
     private ReentrantLock lock;
     private Condition saver;
-    private Condition worker;
+
     public PriorityAsyncSaver(String delay) {
-        this.queue = new PriorityBlockingQueue<>();
         this.database = DatabaseMain.getDatabase();
         this.delay = delay;
         this.lock = new ReentrantLock();
         this.saver = lock.newCondition();
-        this.worker = lock.newCondition();
 
         try {
             initClock();
@@ -62,41 +55,11 @@ public class PriorityAsyncSaver extends Thread {
         System.out.println("Inizio salvataggio...");
         database.save();
 
-        while (!queue.isEmpty()) {
-            Entry e = queue.poll();
-
-            lock.lock();
-            if (lock.hasWaiters(worker)) {
-                worker.signal();    //Se ci sono dei thread in attesa, notifico che adesso c'è un posto libero
-            }
-            lock.unlock();
-
-            e.runnable.run();
-        }
-
         System.out.println("Salvataggio completato!");
+        System.out.println(database.getLogMetrics().report());
         System.out.println("\n===========================================================\n");
     }
 
-    public void asyncSave(Runnable runnable, StandardPriority priority) {
-        // se la queue è piena, mando un segnale, sveglio il PriorityAsyncSaver e attendo che ci sia posto nella queue
-        while (queue.size() == Integer.MAX_VALUE) {
-            try {
-                lock.lock();
-                saver.signal();
-                worker.await();
-
-            } catch (InterruptedException e) {
-                interrupt();
-                return;
-            } finally {
-                lock.unlock();
-            }
-        }
-
-        queue.add(new Entry(runnable, priority));
-    }
-
     private void sleep() throws InterruptedException {
         lock.lock();
         try {
@@ -127,22 +90,4 @@ public class PriorityAsyncSaver extends Thread {
             timeout = 5;
         }
     }
-
-    private static class Entry implements Comparable<Entry> {
-        Runnable runnable;
-        StandardPriority priority;
-
-        public Entry(Runnable runnable, StandardPriority priority) {
-            this.runnable = runnable;
-            this.priority = priority;
-        }
-
-        @Override
-        public int compareTo(Entry o) {
-            if (o == this) return 0;
-
-            int compare = priority.compareTo(o.priority);
-            return compare == 0 ? 1 : compare;
-        }
-    }
 }
@@ -0,0 +1,145 @@
+package winsome.database.utility;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+    Indice invertito tag -> utenti che hanno quel tag.
+    Ogni utente riceve un id intero crescente al momento dell inserimento e per ogni tag viene tenuta la lista
+    (posting list) degli id degli utenti che lo hanno. Gli id vengono assegnati in ordine crescente e un utente non
+    cambia mai i suoi tag, quindi le liste restano ordinate semplicemente aggiungendo in coda.
+
+    Le letture non prendono lock: ogni lista pubblica prima l array e poi la sua dimensione (entrambi volatile),
+    quindi chi legge la dimensione e poi l array vede sempre almeno quel numero di elementi validi.
+ */
+public class TagIndex {
+    private final ConcurrentHashMap<String, Postings> postings; // tag -> id degli utenti
+    private final ConcurrentHashMap<String, Integer> ids; // username -> id
+    private volatile String[] usernames; // id -> username
+    private int nextId;
+
+    public TagIndex() {
+        this.postings = new ConcurrentHashMap<>();
+        this.ids = new ConcurrentHashMap<>();
+        this.usernames = new String[64];
+    }
+
+    // aggiunge l utente alle liste dei suoi tag. Se l utente è già presente, non viene fatto niente
+    public synchronized boolean add(String username, Collection<String> tags) {
+        if (ids.containsKey(username)) return false;
+
+        int id = nextId++;
+        String[] names = usernames;
+        if (id == names.length) {
+            names = Arrays.copyOf(names, names.length * 2);
+        }
+        names[id] = username;
+        usernames = names;
+        ids.put(username, id);
+
+        for (String tag : tags) {
+            postings.computeIfAbsent(tag, t -> new Postings()).append(id);
+        }
+
+        return true;
+    }
+
+    // restituisce al più limit utenti che hanno almeno un tag in comune con tags, escluso username, a partire
+    // dalla posizione (shared, after) della classifica: la pagina successiva ricomincia dal Match restituito per ultimo.
+    // La classifica è per numero di tag in comune (decrescente) e, a parità, per id (ordine di registrazione).
+    // Per la prima pagina shared è Integer.MAX_VALUE e after è -1.
+    // Ogni livello (numero di tag in comune) viene letto fondendo le liste dei tag a partire da after: le liste sono
+    // ordinate per id, quindi si riparte con una ricerca binaria e il costo di una pagina non dipende da quante
+    // pagine la precedono
+    public List<Match> rankedUsers(String username, Collection<String> tags, int shared, int after, int limit) {
+        if (limit <= 0) return Collections.emptyList();
+
+        Integer me = ids.get(username);
+        int[][] lists = new int[tags.size()][];
+        int[] sizes = new int[tags.size()];
+        int k = 0;
+        for (String tag : tags) {
+            Postings p = postings.get(tag);
+            if (p == null) continue;
+
+            // prima la dimensione e poi l array (vedi Postings)
+            sizes[k] = p.size;
+            lists[k] = p.ids;
+            k++;
+        }
+
+        String[] names = usernames;
+        ArrayList<Match> result = new ArrayList<>(Math.min(limit, 64));
+        for (int level = Math.min(shared, k); level >= 1 && result.size() < limit; level--) {
+            int from = level == shared ? after + 1 : 0;
+            collectLevel(lists, sizes, k, level, from, me == null ? -1 : me, names, limit, result);
+        }
+
+        return result;
+    }
+
+    // aggiunge a result gli utenti (con id >= from) che compaiono esattamente in level liste, finché result non
+    // contiene limit utenti. Un id compare in almeno level liste solo se è maggiore o uguale della level-esima testa
+    // più piccola, quindi ad ogni passo le liste vengono portate direttamente a quell id (con level = numero di liste
+    // è un intersezione, con level = 1 un unione)
+    private static void collectLevel(int[][] lists, int[] sizes, int k, int level, int from, int me, String[] names,
+                                     int limit, List<Match> result) {
+        int[] cursors = new int[k];
+        for (int i = 0; i < k; i++) {
+            cursors[i] = lowerBound(lists[i], 0, sizes[i], from);
+        }
+
+        int[] heads = new int[k];
+        while (result.size() < limit) {
+            for (int i = 0; i < k; i++) {
+                heads[i] = cursors[i] < sizes[i] ? lists[i][cursors[i]] : Integer.MAX_VALUE;
+            }
+            Arrays.sort(heads);
+            int candidate = heads[level - 1];
+            if (candidate == Integer.MAX_VALUE) return;
+
+            int count = 0;
+            for (int i = 0; i < k; i++) {
+                cursors[i] = lowerBound(lists[i], cursors[i], sizes[i], candidate);
+                if (cursors[i] < sizes[i] && lists[i][cursors[i]] == candidate) {
+                    count++;
+                    cursors[i]++;
+                }
+            }
+
+            if (count == level && candidate != me) result.add(new Match(names[candidate], level, candidate));
+        }
+    }
+
+    // prima posizione in [low, high) con valore >= value
+    private static int lowerBound(int[] list, int low, int high, int value) {
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (list[mid] < value) low = mid + 1;
+            else high = mid;
+        }
+
+        return low;
+    }
+
+    // utente trovato, con la sua posizione nella classifica (usata come cursore della pagina successiva)
+    public record Match(String username, int shared, int id) {
+    }
+
+    private static class Postings {
+        private volatile int[] ids = new int[4];
+        private volatile int size;
+
+        // chiamato solo dentro TagIndex.add(), quindi un solo scrittore alla volta
+        private void append(int id) {
+            int[] array = ids;
+            if (size == array.length) {
+                array = Arrays.copyOf(array, array.length * 2);
+            }
+
+            array[size] = id;
+            ids = array;
+            size++;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package winsome.database.utility;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/*
+    Indice di oggetti (post, rewin, commenti..) ordinato per data.
+    Le entry sono ordinate per (istante in millisecondi, id dell oggetto): l id serve a distinguere 2 oggetti
+    inseriti nello stesso istante e permette di riprendere una lettura paginata da una posizione precisa.
+
+    Le letture non prendono lock (la skip list è concorrente), mentre inserimenti e rimozioni sono sincronizzati
+    per tenere allineate la skip list e la mappa id -> chiave.
+ */
+public class Timeline<V> {
+    private static final UUID MAX_ID = new UUID(Long.MAX_VALUE, Long.MAX_VALUE);
+
+    private final ConcurrentSkipListMap<Key, V> timeline;
+    private final ConcurrentHashMap<UUID, Key> keys; // id dell oggetto -> chiave nella timeline
+
+    public Timeline() {
+        this.timeline = new ConcurrentSkipListMap<>();
+        this.keys = new ConcurrentHashMap<>();
+    }
+
+    // aggiunge l oggetto alla timeline. Se l id è già presente, non viene fatto niente
+    public synchronized boolean add(UUID id, V value, long time) {
+        if (keys.containsKey(id)) return false;
+
+        Key key = new Key(time, id);
+        keys.put(id, key);
+        timeline.put(key, value);
+        return true;
+    }
+
+    public synchronized boolean remove(UUID id) {
+        Key key = keys.remove(id);
+        if (key == null) return false;
+
+        timeline.remove(key);
+        return true;
+    }
+
+    public synchronized void clear() {
+        keys.clear();
+        timeline.clear();
+    }
+
+    // restituisce gli oggetti con data strettamente successiva a time, dal più vecchio al più recente.
+    // Il costo è O(log n + k), dove k è il numero di oggetti restituiti
+    public List<V> since(long time) {
+        Collection<V> newer = timeline.tailMap(new Key(time, MAX_ID), false).values();
+        if (newer.isEmpty()) return Collections.emptyList();
+
+        return new ArrayList<>(newer);
+    }
+
+    public List<V> all() {
+        return new ArrayList<>(timeline.values());
+    }
+
+    // restituisce al più limit entry, dalla più recente alla più vecchia
+    public List<Entry<V>> newest(int limit) {
+        return collect(timeline.descendingMap(), limit);
+    }
+
+    // restituisce al più limit entry più vecchie della posizione (time, id), dalla più recente alla più vecchia.
+    // Se inclusive è true, viene restituita anche l entry che si trova esattamente in (time, id)
+    public List<Entry<V>> before(long time, UUID id, boolean inclusive, int limit) {
+        return collect(timeline.headMap(new Key(time, id), inclusive).descendingMap(), limit);
+    }
+
+    public int size() {
+        return keys.size();
+    }
+
+    private List<Entry<V>> collect(NavigableMap<Key, V> map, int limit) {
+        ArrayList<Entry<V>> result = new ArrayList<>(Math.min(limit, 64));
+        for (Map.Entry<Key, V> entry : map.entrySet()) {
+            if (result.size() == limit) break;
+
+            Key key = entry.getKey();
+            result.add(new Entry<>(key.time, key.id, entry.getValue()));
+        }
+
+        return result;
+    }
+
+    public record Entry<V>(long time, UUID id, V value) {
+    }
+
+    private record Key(long time, UUID id) implements Comparable<Key> {
+        @Override
+        public int compareTo(Key k) {
+            int c = Long.compare(time, k.time);
+            return c != 0 ? c : id.compareTo(k.id);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package winsome.database.utility;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import winsome.common.WinsomeTransaction;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+    Portafoglio di un utente: registro (solo in aggiunta) delle transazioni con il saldo sempre aggiornato.
+    Le transazioni sono salvate in 2 colonne di long ordinate per data:
+    - times: data della transazione in millisecondi
+    - amounts: importo in virgola fissa (coins * SCALE), così le somme non accumulano errori di arrotondamento
+
+    Il saldo viene aggiornato ad ogni aggiunta (lettura O(1)), le ultime n transazioni e quelle dopo un cursore
+    vengono trovate con una ricerca binaria sulle date (O(log n + k), dove k è il numero di transazioni restituite).
+
+    Più transazioni possono avere la stessa data (al millisecondo), quindi il cursore non è solo la data ma la coppia
+    (data, numero di transazioni con quella data già lette). Una nuova transazione con una data già presente viene
+    sempre messa dopo quelle con la stessa data, quindi le prime "seen" transazioni di una data non cambiano mai
+
+    Su disco il registro viene scritto come {balance, times, amounts} (vedi Adapter), senza la capacità non usata
+ */
+@JsonAdapter(WalletLedger.Adapter.class)
+public class WalletLedger {
+    private static final int DECIMALS = 4;
+    public static final long SCALE = 10_000; // 10^DECIMALS
+
+    private long[] times;
+    private long[] amounts;
+    private int size;
+    private volatile long balance;
+
+    public WalletLedger() {
+        this(8);
+    }
+
+    private WalletLedger(int capacity) {
+        this.times = new long[Math.max(capacity, 8)];
+        this.amounts = new long[times.length];
+    }
+
+    // aggiunge una transazione. Le transazioni arrivano (quasi sempre) in ordine di data: se una è più vecchia
+    // dell ultima, viene comunque inserita al suo posto così le colonne restano ordinate
+    public synchronized void append(long time, long amount) {
+        if (size == times.length) {
+            int capacity = times.length + (times.length >> 1);
+            times = Arrays.copyOf(times, capacity);
+            amounts = Arrays.copyOf(amounts, capacity);
+        }
+
+        int i = size;
+        while (i > 0 && times[i - 1] > time) i--;
+
+        if (i < size) {
+            System.arraycopy(times, i, times, i + 1, size - i);
+            System.arraycopy(amounts, i, amounts, i + 1, size - i);
+        }
+
+        times[i] = time;
+        amounts[i] = amount;
+        size++;
+        balance += amount;
+    }
+
+    public long getBalance() {
+        return balance;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    // restituisce le transazioni successive al cursore (time, seen), cioè quelle con data successiva a time e quelle
+    // con data time tranne le prime seen, dalla più vecchia alla più recente.
+    // Se limit è maggiore di 0 vengono restituite solo le ultime limit
+    public synchronized List<WinsomeTransaction> since(long time, int seen, int limit) {
+        int group = firstFrom(time);
+        int end = group;
+        while (end < size && times[end] == time) end++;
+
+        int from = group + Math.min(Math.max(seen, 0), end - group);
+        if (limit > 0) from = Math.max(from, size - limit);
+
+        ArrayList<WinsomeTransaction> result = new ArrayList<>(size - from);
+        for (int i = from; i < size; i++) {
+            result.add(new WinsomeTransaction(toCoins(amounts[i]), times[i]));
+        }
+
+        return result;
+    }
+
+    // restituisce le ultime n transazioni, dalla più vecchia alla più recente
+    public List<WinsomeTransaction> last(int n) {
+        return since(Long.MIN_VALUE, 0, n);
+    }
+
+    // numero di transazioni con quella data e quell importo
+    public synchronized int count(long time, long amount) {
+        int n = 0;
+        for (int i = firstFrom(time); i < size && times[i] == time; i++) {
+            if (amounts[i] == amount) n++;
+        }
+
+        return n;
+    }
+
+    // posizione della prima transazione con data maggiore o uguale a time (size se non ce ne sono)
+    private int firstFrom(long time) {
+        int low = 0, high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (times[mid] < time) low = mid + 1;
+            else high = mid;
+        }
+
+        return low;
+    }
+
+    // converte i coins (ad esempio "12.5") in virgola fissa
+    public static long toAmount(String coins) throws NumberFormatException {
+        try {
+            return new BigDecimal(coins.trim()).movePointRight(DECIMALS).setScale(0, RoundingMode.HALF_UP).longValueExact();
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException(coins);
+        }
+    }
+
+    public static String toCoins(long amount) {
+        return BigDecimal.valueOf(amount, DECIMALS).stripTrailingZeros().toPlainString();
+    }
+
+    public static class Adapter extends TypeAdapter<WalletLedger> {
+        @Override
+        public void write(JsonWriter out, WalletLedger wallet) throws IOException {
+            if (wallet == null) {
+                out.nullValue();
+                return;
+            }
+
+            synchronized (wallet) {
+                out.beginObject();
+                out.name("balance").value(wallet.balance);
+                out.name("times").beginArray();
+                for (int i = 0; i < wallet.size; i++) out.value(wallet.times[i]);
+                out.endArray();
+                out.name("amounts").beginArray();
+                for (int i = 0; i < wallet.size; i++) out.value(wallet.amounts[i]);
+                out.endArray();
+                out.endObject();
+            }
+        }
+
+        // il saldo viene ricalcolato dalle transazioni lette, quello salvato serve solo a chi legge il file
+        @Override
+        public WalletLedger read(JsonReader in) throws IOException {
+            long[] times = new long[0];
+            long[] amounts = new long[0];
+
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "times" -> times = readColumn(in);
+                    case "amounts" -> amounts = readColumn(in);
+                    default -> in.skipValue();
+                }
+            }
+            in.endObject();
+
+            int n = Math.min(times.length, amounts.length);
+            WalletLedger wallet = new WalletLedger(n);
+            for (int i = 0; i < n; i++) {
+                wallet.append(times[i], amounts[i]);
+            }
+
+            return wallet;
+        }
+
+        private static long[] readColumn(JsonReader in) throws IOException {
+            long[] column = new long[16];
+            int n = 0;
+
+            in.beginArray();
+            while (in.hasNext()) {
+                if (n == column.length) column = Arrays.copyOf(column, n * 2);
+                column[n++] = in.nextLong();
+            }
+            in.endArray();
+
+            return Arrays.copyOf(column, n);
+        }
+    }
+}
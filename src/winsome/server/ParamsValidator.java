@@ -11,6 +11,10 @@ public class ParamsValidator {
     private static final String uuidRegex = "^[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}$";
     private static final Pattern uuidPattern = Pattern.compile(uuidRegex);
     private static Pattern specialCharacter = Pattern.compile("[^a-z0-9 ]", Pattern.CASE_INSENSITIVE);
+    private static final Pattern cursorPattern = Pattern.compile("^[A-Za-z0-9_-]+$");
+
+    public static final int DEFAULT_PAGE_SIZE = 20; // dimensione della pagina se il client non la specifica
+    public static final int MAX_PAGE_SIZE = 100;
 
     public static String checkRegisterParams(Object... params) {
         if (params.length != 3) {
@@ -149,6 +153,23 @@ public class ParamsValidator {
         return "OK";
     }
 
+    // GET POST: ID del post seguito (opzionalmente) da LIMIT e CURSOR per i commenti
+    public static String checkGetPostParams(Object[] params) {
+        if (params.length != 1 && params.length != 3) {
+            return "Parametri passati non validi";
+        }
+        if (!(params[0] instanceof String s)) {
+            return "Valori inviati non corretti";
+        }
+
+        boolean ok = uuidPattern.matcher(s).matches();
+        if (!ok) {
+            return "ID Post non valido";
+        }
+
+        return checkPageParams(params, 1);
+    }
+
     public static String checkCommentParams(Object[] params) {
         if (params.length != 2) {
             return "Parametri inviati non validi";
@@ -169,8 +190,41 @@ public class ParamsValidator {
         return "OK";
     }
 
+    // i parametri di paginazione (LIMIT e CURSOR) sono opzionali e, se presenti, si trovano a partire da from.
+    // LIMIT arriva come numero (Gson lo converte in Double), mentre CURSOR è la stringa restituita
+    // dalla pagina precedente oppure "0" per la prima pagina
+    public static String checkPageParams(Object[] params, int from) {
+        if (params.length == from) {
+            return "OK";
+        }
+
+        if (params.length != from + 2) {
+            return "Parametri passati non validi";
+        }
+
+        if (!(params[from] instanceof Number limit) || limit.intValue() < 1 || limit.intValue() > MAX_PAGE_SIZE) {
+            return "Dimensione della pagina non valida";
+        }
+
+        if (!(params[from + 1] instanceof String cursor) || !cursorPattern.matcher(cursor).matches()) {
+            return "Cursore non valido";
+        }
+
+        return "OK";
+    }
+
+    // restituisce LIMIT e CURSOR nel formato dei comandi del Database: "LIMIT CURSOR".
+    // Da chiamare dopo checkPageParams()
+    public static String pageOf(Object[] params, int from) {
+        if (params.length == from) {
+            return DEFAULT_PAGE_SIZE + " 0";
+        }
+
+        return ((Number) params[from]).intValue() + " " + params[from + 1];
+    }
+
     public static String checkOpenRewinParams(Object[] params) {
-        if (params.length != 2) {
+        if (params.length != 2 && params.length != 4) {
             return "Parametri passati non validi";
         }
 
@@ -187,6 +241,33 @@ public class ParamsValidator {
             return "ID Post non valido";
         }
 
+        return checkPageParams(params, 2);
+    }
+
+    // GET TRANSACTIONS: senza parametri (tutte le transazioni) oppure SINCE, SEEN e LIMIT,
+    // cioè data in millisecondi dell ultima transazione ricevuta, numero di transazioni con quella data già ricevute
+    // e numero massimo di transazioni (0 = tutte)
+    public static String checkGetTransactionsParams(Object[] params) {
+        if (params.length == 0) {
+            return "OK";
+        }
+
+        if (params.length != 3) {
+            return "Parametri passati non validi";
+        }
+
+        if (!(params[0] instanceof Number since) || since.longValue() < 0) {
+            return "Data inviata non valida";
+        }
+
+        if (!(params[1] instanceof Number seen) || seen.intValue() < 0) {
+            return "Numero di transazioni ricevute non valido";
+        }
+
+        if (!(params[2] instanceof Number limit) || limit.intValue() < 0) {
+            return "Numero di transazioni non valido";
+        }
+
         return "OK";
     }
 
@@ -198,8 +279,8 @@ public class ParamsValidator {
             return "ID Post inviato non è del tipo giusto";
         }
 
-        if (!(params[1] instanceof String date)) {
-            return "Data inviata non valido";
+        if (!(params[1] instanceof Number date) || date.longValue() < 0) {
+            return "Data inviata non valida";
         }
 
         boolean ok = uuidPattern.matcher(idPost).matches();
@@ -2,7 +2,6 @@ package winsome.server;
 
 import winsome.common.Console;
 import winsome.database.DBResponse;
-import winsome.database.tables.Comment;
 import winsome.database.utility.EntriesStorage;
 import winsome.utility.channelsio.ChannelLineReceiver;
 import winsome.utility.channelsio.ChannelLineSender;
@@ -12,7 +11,6 @@ import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.net.InetSocketAddress;
 import java.nio.channels.SocketChannel;
-import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
 
@@ -24,7 +22,6 @@ public class RewardCalculator extends Thread {
     private long timeout;
     private ChannelLineSender out;
     private ChannelLineReceiver in;
-    private SimpleDateFormat sdf;
     private SocketChannel socket;
 
     public RewardCalculator() {
@@ -47,8 +44,6 @@ public class RewardCalculator extends Thread {
         } catch (IOException e) {
             e.printStackTrace();
         }
-
-        this.sdf = new SimpleDateFormat("dd/MM/yy - HH:mm:ss");
     }
 
     @Override
@@ -90,15 +85,12 @@ public class RewardCalculator extends Thread {
             HashSet<String> curatori = entry.HEADER.getCurators();
 
             // Calcolo dei like
-            n1 = Math.max(0, entry.LIKES.size() - entry.DISLIKES.size());
+            n1 = Math.max(0, entry.getLikes() - entry.getDislikes());
             n1 = round(Math.log(n1 + 1));
 
-            HashMap<String, ArrayList<Comment>> comments = entry.COMMENTS;
-
             // Calcolo dei commenti
             //Ciclo per new_people_commenting
-            for (ArrayList<Comment> newComments : comments.values()) {
-                int Cp = newComments.size();
+            for (int Cp : entry.COMMENTS.values()) {
                 n2 += (2 / (1 + Math.pow(Math.E, -(Cp - 1))));
             }
 
@@ -109,7 +101,7 @@ public class RewardCalculator extends Thread {
 
             // Assegno la ricompense al creatore
             double author_reward = round(reward * author_percentage / 100);
-            out.sendLine(String.format("UPDATE: %s %s %s %s", author, author_reward, sdf.format(new Date()), entry.HEADER.getIdPost().toString()));
+            out.sendLine(String.format("UPDATE: %s %s %s %s", author, author_reward, System.currentTimeMillis(), entry.HEADER.getIdPost().toString()));
             DBResponse response = (DBResponse) in.receiveObject();
             if (!response.getCode().equals(DBResponse.OK)) {
                 Console.err("Errore nel salvataggio delle ricompense per: " + author);
@@ -117,7 +109,7 @@ public class RewardCalculator extends Thread {
 
             //aggiorno le ricompense per i curatori
             double others = round((reward - author_reward) / curatori.size());
-            out.sendLine(String.format("UPDATE: %s %s %s", curatori, others, sdf.format(new Date())));
+            out.sendLine(String.format("UPDATE: %s %s %s", curatori, others, System.currentTimeMillis()));
             response = (DBResponse) in.receiveObject();
             if (!response.getCode().equals(DBResponse.OK)) {
                 Console.err(response);
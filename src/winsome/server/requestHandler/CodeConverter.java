@@ -82,6 +82,10 @@ public class CodeConverter {
                 return "Non puoi eseguire azioni su questo Post, in quanto non segui l autore e non è un rewin di un tuo follow";
             }
 
+            case "218" -> {
+                return "Cursore di paginazione non valido";
+            }
+
             case "300" -> {
                 return "Errore sconosciuto. Ci scusiamo per il disagio";
             }
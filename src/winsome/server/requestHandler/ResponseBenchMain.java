@@ -0,0 +1,112 @@
+package winsome.server.requestHandler;
+
+import com.google.gson.Gson;
+import winsome.common.SimplePost;
+import winsome.database.DBResponse;
+import winsome.utility.channelsio.ChannelLineSender;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.UUID;
+
+/*
+    Misura da avviare a mano (non fa parte del server) della memoria allocata per inviare una risposta grande:
+    java -cp WinsomeServer.jar winsome.server.requestHandler.ResponseBenchMain [post]
+
+    Viene inviata una pagina di post (20000 di default) su una connessione locale, sia come risposta del server
+    (WSResponse) sia come oggetto del database (DBResponse), una volta nel modo di prima e una volta in streaming:
+    - prima: gson.toJson del payload, gson.toJson della risposta, concat del separatore e getBytes, cioè più copie
+      dell intera risposta in memoria nello stesso momento (per i DBResponse: array serializzato e stringa base64)
+    - streaming: WSResponse.writeJson() su lineWriter() e sendObject(), che scrivono sul buffer del sender
+    Per ogni modo viene stampata la memoria allocata dal thread per una risposta (ThreadMXBean), che con
+    le risposte grandi è dominata dalle copie della risposta
+ */
+public class ResponseBenchMain {
+    private static final int ROUNDS = 10;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int posts = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+
+        ArrayList<SimplePost> page = new ArrayList<>(posts);
+        for (int i = 0; i < posts; i++) {
+            page.add(new SimplePost(UUID.randomUUID().toString(), "user" + i, "titolo \"" + i + "\"",
+                    "contenuto del post " + i + " con \"virgolette\" e \\ ".repeat(4), System.currentTimeMillis()));
+        }
+
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            SocketChannel client = SocketChannel.open(server.getLocalAddress());
+            SocketChannel socket = server.accept();
+
+            Thread reader = new Thread(() -> discard(client));
+            reader.setDaemon(true);
+            reader.start();
+
+            ChannelLineSender out = new ChannelLineSender(socket);
+            Gson gson = new Gson();
+            long size = gson.toJson(WSResponse.newSuccessResponse(gson.toJson(page))).length();
+            System.out.println("Pagina di " + posts + " post, risposta di " + (size >> 10) + " KB");
+
+            print("WSResponse, prima", measure(() -> {
+                WSResponse response = WSResponse.newSuccessResponse(gson.toJson(page));
+                out.sendLine(gson.toJson(response));
+            }), size);
+            print("WSResponse, streaming", measure(() -> {
+                try (Writer line = out.lineWriter()) {
+                    WSResponse.newJsonResponse(page).writeJson(gson, line);
+                }
+            }), size);
+
+            DBResponse dbResponse = new DBResponse("200", page);
+            print("DBResponse, prima", measure(() -> {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(bytes));
+                oos.writeObject(dbResponse);
+                oos.close();
+                out.sendLine(Base64.getEncoder().encodeToString(bytes.toByteArray()));
+            }), size);
+            print("DBResponse, streaming", measure(() -> out.sendObject(dbResponse)), size);
+
+            socket.close();
+            client.close();
+        }
+    }
+
+    // memoria allocata dal thread per un invio, come media dopo un riscaldamento
+    private static long measure(Send send) throws IOException {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long id = Thread.currentThread().getId();
+
+        for (int i = 0; i < ROUNDS; i++) send.run();
+
+        long before = threads.getThreadAllocatedBytes(id);
+        for (int i = 0; i < ROUNDS; i++) send.run();
+
+        return (threads.getThreadAllocatedBytes(id) - before) / ROUNDS;
+    }
+
+    private static void print(String name, long allocated, long size) {
+        System.out.printf("%-24s %,8d KB allocati per risposta (%.1f volte la risposta)%n", name, allocated >> 10,
+                (double) allocated / size);
+    }
+
+    // legge e scarta tutto quello che arriva, così il sender non si blocca
+    private static void discard(SocketChannel channel) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+        try {
+            while (channel.read(buffer) >= 0) buffer.clear();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private interface Send {
+        void run() throws IOException;
+    }
+}
@@ -1,11 +1,9 @@
 package winsome.server.requestHandler;
 
-import com.google.common.reflect.TypeToken;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonSyntaxException;
 import winsome.database.DBResponse;
-import winsome.database.tables.Like;
 import winsome.server.ParamsValidator;
 import winsome.server.RMI.FollowersDatabase;
 import winsome.server.ServerMain;
@@ -17,7 +15,6 @@ import winsome.utility.channelsio.PipedSelector;
 import winsome.common.*;
 
 import java.io.IOException;
-import java.lang.reflect.Type;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 import java.nio.charset.StandardCharsets;
@@ -52,7 +49,7 @@ public class ServerRequestReader implements Callable<String> {
         this.logTable = ServerMain.getUsersLoggedTable();
         this.username = logTable.get(socket);
 
-        gson = new GsonBuilder().setDateFormat("dd/MM/yy - HH:mm:ss").create();
+        gson = new GsonBuilder().create();
     }
 
     public ServerRequestReader(WSRequest request) {
@@ -115,7 +112,7 @@ public class ServerRequestReader implements Callable<String> {
             }
 
             case GET_FRIENDS_BY_TAG -> {
-                return performListUsers();
+                return performListUsers(request);
             }
 
             case GET_FOLLOWERS -> {
@@ -146,12 +143,16 @@ public class ServerRequestReader implements Callable<String> {
                 return performOpenRewin(request);
             }
 
+            case GET_POST_SUMMARY -> {
+                return performGetPostSummary(request);
+            }
+
             case GET_MY_POSTS -> {
-                return performGetAllPosts();
+                return performGetAllPosts(request);
             }
 
             case GET_FRIENDS_POSTS -> {
-                return performGetFeed();
+                return performGetFeed(request);
             }
 
             case GET_FRIENDS_POST_FROM_DATE -> {
@@ -191,7 +192,7 @@ public class ServerRequestReader implements Callable<String> {
             }
 
             case GET_TRANSACTIONS -> {
-                return performGetTransactions();
+                return performGetTransactions(request);
             }
 
             case LOGOUT -> {
@@ -220,7 +221,7 @@ public class ServerRequestReader implements Callable<String> {
         }
 
         String idPost = (String) request.getParams()[0];
-        String date = (String) request.getParams()[1];
+        long date = ((Number) request.getParams()[1]).longValue();
 
         String command = String.format("GET COMMENTS FROM DATE: %s %s", idPost, date);
         out.setChannel(db_connection);
@@ -239,7 +240,7 @@ public class ServerRequestReader implements Callable<String> {
             Set<SimpleComment> set = (Set<SimpleComment>) db_response.getMessage();
             TreeSet<SimpleComment> comments = new TreeSet<>(set);
 
-            response = WSResponse.newSuccessResponse(gson.toJson(comments));
+            response = WSResponse.newJsonResponse(comments);
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -341,7 +342,7 @@ public class ServerRequestReader implements Callable<String> {
             int multicastPort = (int) ServerProperties.getValue(ServerProperties.NAMES.MULTICAST_PORT);
             LoginResponse logResponse = new LoginResponse(tags, multicastAddress, multicastPort);
 
-            this.response = WSResponse.newSuccessResponse(gson.toJson(logResponse));
+            this.response = WSResponse.newJsonResponse(logResponse);
             logTable.put(socket, username);
         } catch (IOException e) {
             e.printStackTrace();
@@ -351,9 +352,15 @@ public class ServerRequestReader implements Callable<String> {
     }
 
     @SuppressWarnings("unchecked")
-    private String performListUsers() {
+    private String performListUsers(WSRequest request) {
         if (username != null) {
-            String command = String.format("GET FRIENDS BY TAG: %s", username);
+            String check = ParamsValidator.checkPageParams(request.getParams(), 0);
+            if (!check.equals("OK")) {
+                response = WSResponse.newErrorResponse(check);
+                return check;
+            }
+
+            String command = String.format("GET FRIENDS BY TAG: %s %s", username, ParamsValidator.pageOf(request.getParams(), 0));
             out.setChannel(db_connection);
             in.setChannel(db_connection);
 
@@ -368,14 +375,13 @@ public class ServerRequestReader implements Callable<String> {
                     return conv;
                 }
 
-                ArrayList<String> users = (ArrayList<String>) dbResponse.getMessage();
+                // la lista arriva già ordinata dal database (per numero di tag in comune), quindi non va riordinata.
+                // Il client riceve { USERS: [...], CURSOR: "..." }, dove CURSOR manca se non ci sono altre pagine
+                Map<String, Object> map = (Map<String, Object>) dbResponse.getMessage();
+                ArrayList<String> users = (ArrayList<String>) map.get("USERS");
                 users.remove(username);
 
-                Collections.sort(users);
-
-                String json = gson.toJson(users);
-
-                response = WSResponse.newSuccessResponse(json);
+                response = WSResponse.newJsonResponse(map);
                 return "OK";
             } catch (IOException e) {
                 e.printStackTrace();
@@ -407,10 +413,7 @@ public class ServerRequestReader implements Callable<String> {
 
                 Set<String> tree = (Set<String>) dbResponse.getMessage();
 
-                String json = gson.toJson(tree);
-
-                response.setStatus(WSResponse.CODES.OK);
-                response.setBody(json);
+                response = WSResponse.newJsonResponse(tree);
                 return "OK";
             } catch (Exception e) {
                 e.printStackTrace();
@@ -577,7 +580,7 @@ public class ServerRequestReader implements Callable<String> {
             }
 
             SimplePost post = (SimplePost) dbResponse.getMessage();
-            response = WSResponse.newSuccessResponse(gson.toJson(post));
+            response = WSResponse.newJsonResponse(post);
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -586,7 +589,7 @@ public class ServerRequestReader implements Callable<String> {
     }
 
     @SuppressWarnings("unchecked")
-    private String performGetAllPosts() {
+    private String performGetAllPosts(WSRequest request) {
         String username = ServerMain.getUsersLoggedTable().get(socket);
         if (username == null) {
             String s = "Utente non loggato";
@@ -594,10 +597,15 @@ public class ServerRequestReader implements Callable<String> {
             return s;
         }
 
-        String command = String.format("GET ALL POSTS OF: %s", username);
+        String check = ParamsValidator.checkPageParams(request.getParams(), 0);
+        if (!check.equals("OK")) {
+            response = WSResponse.newErrorResponse(check);
+            return check;
+        }
+
+        String command = String.format("GET ALL POSTS OF: %s %s", username, ParamsValidator.pageOf(request.getParams(), 0));
         out.setChannel(db_connection);
         in.setChannel(db_connection);
-        TreeSet<SimplePost> tree = new TreeSet<>(Comparator.reverseOrder());
 
         try {
             out.sendLine(command);
@@ -608,16 +616,15 @@ public class ServerRequestReader implements Callable<String> {
                 return conv;
             }
 
-            LinkedList<SimplePost> posts = (LinkedList<SimplePost>) dbResponse.getMessage();
+            // i post arrivano già ordinati dal più recente al più vecchio
+            Map<String, Object> map = (Map<String, Object>) dbResponse.getMessage();
+            LinkedList<SimplePost> posts = (LinkedList<SimplePost>) map.get("POSTS");
             for (SimplePost p : posts) {
                 if (!p.getAuthor().equals(username))
                     p.setRewin(username);
-
-                tree.add(p);
             }
 
-            String json = gson.toJson(tree);
-            response = WSResponse.newSuccessResponse(json);
+            response = WSResponse.newJsonResponse(map);
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -625,8 +632,9 @@ public class ServerRequestReader implements Callable<String> {
         return "OK";
     }
 
-    @SuppressWarnings("unchecked")
-    private String performGetFeed() {
+    // la home viene inviata a pagine: { POSTS: [...], CURSOR: "..." }, dove CURSOR manca se non ci sono altre pagine.
+    // I post arrivano dal database già ordinati dal più recente al più vecchio, quindi non vanno riordinati
+    private String performGetFeed(WSRequest request) {
         String username = ServerMain.getUsersLoggedTable().get(socket);
         if (username == null) {
             String s = "Utente non loggato";
@@ -634,10 +642,15 @@ public class ServerRequestReader implements Callable<String> {
             return s;
         }
 
-        String command = String.format("GET FRIENDS POSTS OF: %s", username);
+        String check = ParamsValidator.checkPageParams(request.getParams(), 0);
+        if (!check.equals("OK")) {
+            response = WSResponse.newErrorResponse(check);
+            return check;
+        }
+
+        String command = String.format("GET FRIENDS POSTS OF: %s %s", username, ParamsValidator.pageOf(request.getParams(), 0));
         out.setChannel(db_connection);
         in.setChannel(db_connection);
-        TreeSet<SimplePost> tree = new TreeSet<>(Comparator.reverseOrder());
 
         try {
             out.sendLine(command);
@@ -648,13 +661,7 @@ public class ServerRequestReader implements Callable<String> {
                 return conv;
             }
 
-            HashMap<String, LinkedList<SimplePost>> map = (HashMap<String, LinkedList<SimplePost>>) dbResponse.getMessage();
-            for (List<SimplePost> l : map.values()) {
-                tree.addAll(l);
-            }
-
-            String json = gson.toJson(tree);
-            response = WSResponse.newSuccessResponse(json);
+            response = WSResponse.newJsonResponse(dbResponse.getMessage());
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -700,8 +707,7 @@ public class ServerRequestReader implements Callable<String> {
 
             Console.log("LATEST POST", map);
 
-            String json = gson.toJson(tree);
-            response = WSResponse.newSuccessResponse(json);
+            response = WSResponse.newJsonResponse(tree);
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -770,7 +776,7 @@ public class ServerRequestReader implements Callable<String> {
                 return conv;
             }
 
-            response = WSResponse.newSuccessResponse(gson.toJson(dbResponse.getMessage()));
+            response = WSResponse.newJsonResponse(dbResponse.getMessage());
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -778,7 +784,6 @@ public class ServerRequestReader implements Callable<String> {
         return "OK";
     }
 
-    @SuppressWarnings("unchecked")
     private String performGetPost(WSRequest request) {
         String username = ServerMain.getUsersLoggedTable().get(socket);
         if (username == null) {
@@ -787,7 +792,7 @@ public class ServerRequestReader implements Callable<String> {
             return s;
         }
 
-        String check = ParamsValidator.checkPostActionParams(request.getParams());
+        String check = ParamsValidator.checkGetPostParams(request.getParams());
         if (!check.equals("OK")) {
             response = WSResponse.newErrorResponse(check);
             return check;
@@ -795,52 +800,29 @@ public class ServerRequestReader implements Callable<String> {
 
         String id = (String) request.getParams()[0];
 
-        String command = String.format("GET POST: %s %s", username, id);
-        out.setChannel(db_connection);
-        in.setChannel(db_connection);
-
-        try {
-            out.sendLine(command);
-            DBResponse dbResponse = (DBResponse) in.receiveObject();
-            String conv = CodeConverter.convert(dbResponse.getCode());
-            if (!conv.equals("OK")) {
-                response = WSResponse.newErrorResponse(conv);
-                return conv;
-            }
-
-            Map<String, Object> map = (Map<String, Object>) dbResponse.getMessage();
-
-            ArrayList<SimpleComment> comments = (ArrayList<SimpleComment>) map.get("COMMENTS");
-            ArrayList<SimpleLike> likes = (ArrayList<SimpleLike>) map.get("LIKES");
-
-            comments.sort(Comparator.reverseOrder());
-
-            long nLikes = 0;
-            long nDislikes = 0;
-
-            for (SimpleLike l : likes) {
-                if (l.getType() == Like.TYPE.LIKE) {
-                    nLikes++;
-                } else {
-                    nDislikes++;
-                }
-            }
+        String command = String.format("GET POST: %s %s %s", username, id, ParamsValidator.pageOf(request.getParams(), 1));
+        return sendPostCommand(command);
+    }
 
-            map.put("LIKES", nLikes);
-            map.put("DISLIKES", nDislikes);
+    // riepilogo di un post (SimplePost con i contatori di like, dislike, commenti e rewin), senza like e commenti
+    private String performGetPostSummary(WSRequest request) {
+        String username = ServerMain.getUsersLoggedTable().get(socket);
+        if (username == null) {
+            String s = "Utente non loggato";
+            response = WSResponse.newErrorResponse(s);
+            return s;
+        }
 
-            Type responseType = new TypeToken<HashMap<String, String>>() {
-            }.getType();
-            String json = gson.toJson(map, responseType);
-            response = WSResponse.newSuccessResponse(json);
-        } catch (IOException e) {
-            e.printStackTrace();
+        String check = ParamsValidator.checkPostActionParams(request.getParams());
+        if (!check.equals("OK")) {
+            response = WSResponse.newErrorResponse(check);
+            return check;
         }
 
-        return "OK";
+        String id = (String) request.getParams()[0];
+        return sendPostCommand(String.format("GET POST SUMMARY: %s %s", username, id));
     }
 
-    @SuppressWarnings("unchecked")
     private String performOpenRewin(WSRequest request) {
         String username = ServerMain.getUsersLoggedTable().get(socket);
         if (username == null) {
@@ -858,7 +840,14 @@ public class ServerRequestReader implements Callable<String> {
         String author = (String) request.getParams()[0];
         String id = (String) request.getParams()[1];
 
-        String command = String.format("OPEN REWIN: %s %s", author, id);
+        String command = String.format("OPEN REWIN: %s %s %s", author, id, ParamsValidator.pageOf(request.getParams(), 2));
+        return sendPostCommand(command);
+    }
+
+    // invia al database un comando GET POST, OPEN REWIN o GET POST SUMMARY e inoltra la risposta al client.
+    // Il database restituisce già il numero di like e dislike e una pagina di commenti, dal più recente al più vecchio,
+    // insieme al CURSOR per la pagina successiva
+    private String sendPostCommand(String command) {
         out.setChannel(db_connection);
         in.setChannel(db_connection);
 
@@ -871,32 +860,7 @@ public class ServerRequestReader implements Callable<String> {
                 return conv;
             }
 
-            Map<String, Object> map = (Map<String, Object>) dbResponse.getMessage();
-
-            ArrayList<SimpleComment> comments = (ArrayList<SimpleComment>) map.get("COMMENTS");
-            ArrayList<SimpleLike> likes = (ArrayList<SimpleLike>) map.get("LIKES");
-
-            comments.sort(Comparator.reverseOrder());
-
-            long nLikes = 0;
-            long nDislikes = 0;
-
-            for (SimpleLike l : likes) {
-                if (l.getType() == Like.TYPE.LIKE) {
-                    nLikes++;
-                } else {
-                    nDislikes++;
-                }
-            }
-
-            map.put("LIKES", nLikes);
-            map.put("DISLIKES", nDislikes);
-
-            Type responseType = new TypeToken<HashMap<String, String>>() {
-            }.getType();
-            String json = gson.toJson(map, responseType);
-
-            response = WSResponse.newSuccessResponse(json);
+            response = WSResponse.newJsonResponse(dbResponse.getMessage());
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -904,8 +868,9 @@ public class ServerRequestReader implements Callable<String> {
         return "OK";
     }
 
-    @SuppressWarnings("unchecked")
-    private String performGetTransactions() {
+    // il portafoglio viene inviato come { BALANCE: "...", TRANSACTIONS: [...] }: il saldo è calcolato dal database
+    // e le transazioni arrivano già ordinate dalla più vecchia alla più recente
+    private String performGetTransactions(WSRequest request) {
         String username = ServerMain.getUsersLoggedTable().get(socket);
         if (username == null) {
             String s = "Utente non loggato";
@@ -913,7 +878,17 @@ public class ServerRequestReader implements Callable<String> {
             return s;
         }
 
+        String check = ParamsValidator.checkGetTransactionsParams(request.getParams());
+        if (!check.equals("OK")) {
+            response = WSResponse.newErrorResponse(check);
+            return check;
+        }
+
+        Object[] params = request.getParams();
         String command = "GET TRANSACTIONS: " + username;
+        if (params.length == 3) {
+            command += " " + ((Number) params[0]).longValue() + " " + ((Number) params[1]).intValue() + " " + ((Number) params[2]).intValue();
+        }
         out.setChannel(db_connection);
         in.setChannel(db_connection);
 
@@ -926,10 +901,7 @@ public class ServerRequestReader implements Callable<String> {
                 return conv;
             }
 
-            List<WinsomeTransaction> transactions = (List<WinsomeTransaction>) dbResponse.getMessage();
-            Collections.sort(transactions);
-
-            response = WSResponse.newSuccessResponse(gson.toJson(transactions));
+            response = WSResponse.newJsonResponse(dbResponse.getMessage());
         } catch (IOException e) {
             e.printStackTrace();
         }
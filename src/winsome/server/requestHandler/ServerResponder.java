@@ -6,12 +6,14 @@ import winsome.utility.channelsio.ChannelLineSender;
 import winsome.utility.channelsio.PipedSelector;
 
 import java.io.IOException;
+import java.io.Writer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 
 /*
     Classe che gestisce le risposte del server
-    Semplicemente riceve i messaggi dalla classe ServerRequestReader e li invia al client in formato JSON
+    Semplicemente riceve i messaggi dalla classe ServerRequestReader e li invia al client in formato JSON.
+    La risposta viene convertita mentre viene inviata (vedi WSResponse.writeJson()), senza costruire la stringa JSON
  */
 public class ServerResponder implements Runnable {
     private SocketChannel socket;
@@ -32,9 +34,8 @@ public class ServerResponder implements Runnable {
         ChannelLineSender out = worker.getSender();
         out.setChannel(socket);
 
-        String responseJson = gson.toJson(response);
-        try {
-            out.sendLine(responseJson);
+        try (Writer line = out.lineWriter()) {
+            response.writeJson(gson, line);
         } catch (IOException e) {
             e.printStackTrace();
         } finally {
@@ -39,6 +39,7 @@ public class WSRequest implements Serializable {
         CREATE_POST,
         GET_POST,
         OPEN_REWIN,
+        GET_POST_SUMMARY,
         GET_MY_POSTS,
         GET_FRIENDS_POSTS,
         GET_FRIENDS_POST_FROM_DATE,
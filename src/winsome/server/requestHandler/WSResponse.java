@@ -1,15 +1,24 @@
 package winsome.server.requestHandler;
 
+import com.google.gson.Gson;
+
+import java.io.IOException;
 import java.io.Serializable;
+import java.io.Writer;
 
 /*
     Classe che simboleggia la risposta di una richiesta da parte di un client.
     status da informazioni sull esito dell operazione (se è andata a buon fine oppure no)
     body rappresenta la risposta in JSON vera e propria (tipo se è stato richiesto di vedere un post vero e proprio, body conterrà il post in JSON)
+
+    Le risposte grandi (pagine, liste, portafoglio) vengono create con newJsonResponse(): l oggetto viene tenuto
+    così com è e convertito in JSON solo da writeJson(), mentre la risposta viene inviata (vedi ServerResponder).
+    Sul canale la risposta è identica a quella con il body già convertito
  */
 public class WSResponse implements Serializable {
     private CODES status;
     private String body = "NONE";
+    private transient Object payload; // oggetto da inviare come body, convertito in JSON durante l invio
 
     public WSResponse() {
     }
@@ -27,6 +36,12 @@ public class WSResponse implements Serializable {
         return new WSResponse(CODES.OK, json);
     }
 
+    public static WSResponse newJsonResponse(Object payload) {
+        WSResponse response = new WSResponse(CODES.OK, payload == null ? "null" : null);
+        response.payload = payload;
+        return response;
+    }
+
     public static WSResponse newErrorResponse(String message) {
         return new WSResponse(CODES.ERROR, message);
     }
@@ -39,17 +54,36 @@ public class WSResponse implements Serializable {
         if (status == CODES.OK)
             body = "NONE";
 
+        payload = null;
         this.status = status;
     }
 
+    // con newJsonResponse() il body viene costruito qui, quindi va usato solo per i messaggi di log
     public String getBody() {
-        return body;
+        return payload != null ? new Gson().toJson(payload) : body;
     }
 
     public void setBody(String body) {
+        this.payload = null;
         this.body = body;
     }
 
+    // scrive la risposta in JSON su out. Se c è un payload, il body (una stringa JSON che contiene il payload in JSON)
+    // viene scritto mentre il payload viene convertito: le virgolette e i caratteri speciali vengono
+    // sostituiti al volo, senza costruire né il JSON del payload né quello della risposta in memoria
+    public void writeJson(Gson gson, Writer out) throws IOException {
+        if (payload == null) {
+            gson.toJson(this, out);
+            return;
+        }
+
+        out.write("{\"status\":");
+        gson.toJson(status, CODES.class, out);
+        out.write(",\"body\":\"");
+        gson.toJson(payload, new EscapingWriter(out));
+        out.write("\"}");
+    }
+
     @Override
     public String toString() {
         return "WSResponse{" +
@@ -62,4 +96,66 @@ public class WSResponse implements Serializable {
         OK,
         ERROR
     }
+
+    // Writer che scrive il testo come contenuto di una stringa JSON (senza le virgolette esterne)
+    private static class EscapingWriter extends Writer {
+        private static final char[] HEX = "0123456789abcdef".toCharArray();
+        private final Writer out;
+        private final char[] chunk = new char[1024];
+
+        EscapingWriter(Writer out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            int start = off;
+            int end = off + len;
+            for (int i = off; i < end; i++) {
+                char c = cbuf[i];
+                if (c >= 0x20 && c != '"' && c != '\\' && c != '\u2028' && c != '\u2029') continue;
+
+                out.write(cbuf, start, i - start);
+                switch (c) {
+                    case '"' -> out.write("\\\"");
+                    case '\\' -> out.write("\\\\");
+                    case '\n' -> out.write("\\n");
+                    case '\r' -> out.write("\\r");
+                    case '\t' -> out.write("\\t");
+                    default -> {
+                        out.write("\\u");
+                        out.write(HEX[c >> 12 & 0xf]);
+                        out.write(HEX[c >> 8 & 0xf]);
+                        out.write(HEX[c >> 4 & 0xf]);
+                        out.write(HEX[c & 0xf]);
+                    }
+                }
+                start = i + 1;
+            }
+
+            out.write(cbuf, start, end - start);
+        }
+
+        // JsonWriter scrive le stringhe lunghe a pezzi (str, off, len): viene copiato solo il pezzo, un blocco alla volta
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            while (len > 0) {
+                int n = Math.min(len, chunk.length);
+                str.getChars(off, off + n, chunk, 0);
+                write(chunk, 0, n);
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        // la chiusura non chiude out: dopo il payload va ancora chiusa la risposta
+        @Override
+        public void close() {
+        }
+    }
 }
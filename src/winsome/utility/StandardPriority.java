@@ -1,9 +0,0 @@
-package winsome.utility;
-
-public enum StandardPriority {
-    VERY_HIGH,    //Post
-    HIGH,        //Rewin
-    NORMAL,        //Commenti, Like
-    LOW,
-    VERY_LOW
-}
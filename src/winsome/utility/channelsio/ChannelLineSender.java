@@ -1,9 +1,6 @@
 package winsome.utility.channelsio;
 
-import java.io.BufferedOutputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.ObjectOutputStream;
+import java.io.*;
 import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
 import java.nio.charset.StandardCharsets;
@@ -134,13 +131,25 @@ public class ChannelLineSender implements ChannelSender {
     public void sendObject(Object obj) throws IOException {
         if (socket == null) return;
 
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(out));
+        // la serializzazione viene codificata in base64 mentre viene scritta sul canale:
+        // non viene mai costruita in memoria la riga intera
+        ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(Base64.getEncoder().wrap(new LineStream())));
         oos.writeObject(obj);
         oos.close();
+    }
 
-        String serial = Base64.getEncoder().encodeToString(out.toByteArray());
-        sendLine(serial);
+    /**
+     * Restituisce un {@link Writer} per inviare una riga di testo un pezzo alla volta sul canale settato.<br>
+     * Il testo viene inviato man mano che il buffer si riempie, quindi la riga non viene mai costruita in memoria.
+     * Alla chiusura del Writer viene inviato il separatore di riga: dall altra parte la riga viene ricevuta da
+     * {@link ChannelLineReceiver#receiveLine()} come se fosse stata inviata con {@link #sendLine(String)}.<br>
+     * La chiusura del Writer non chiude il canale.<br>
+     * Il testo non deve contenere il separatore di riga.
+     *
+     * @return il Writer della riga
+     */
+    public Writer lineWriter() {
+        return new BufferedWriter(new OutputStreamWriter(new LineStream(), StandardCharsets.UTF_8), 8192);
     }
 
     /**
@@ -158,4 +167,50 @@ public class ChannelLineSender implements ChannelSender {
     public void send(String s) throws IOException {
         sendLine(s);
     }
+
+    // scrive sul canale attraverso il buffer del sender: quando il buffer è pieno viene svuotato sul canale.
+    // Alla chiusura viene inviato il separatore di riga e il buffer viene svuotato
+    private class LineStream extends OutputStream {
+        private boolean closed;
+
+        @Override
+        public void write(int b) throws IOException {
+            if (!buffer.hasRemaining()) drain();
+            buffer.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (!buffer.hasRemaining()) drain();
+
+                int n = Math.min(len, buffer.remaining());
+                buffer.put(b, off, n);
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+
+            try {
+                write(System.lineSeparator().getBytes(StandardCharsets.UTF_8));
+                drain();
+            } finally {
+                buffer.clear();
+            }
+        }
+
+        private void drain() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                if (socket == null) break;
+                socket.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
 }